@@ -0,0 +1,136 @@
+package tributary.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import tributary.core.Topic;
+
+/**
+ * Progress of a parallel snapshot recovery. The Tributary is usable straight away; topics appear in it as soon as
+ * all of their partitions have been recovered.
+ */
+public class SnapshotRecovery {
+    private Tributary tributary;
+    private List<String> topicOrder;
+    private Set<String> registeredTopics = new HashSet<>();
+    private int totalTopics;
+    private int totalPartitions;
+    private AtomicInteger recoveredPartitions = new AtomicInteger();
+    private AtomicInteger truncatedSegments = new AtomicInteger();
+    private Set<String> readyTopics = ConcurrentHashMap.newKeySet();
+    private CountDownLatch remainingTopics;
+    private AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    SnapshotRecovery(Tributary tributary, List<String> topicOrder, int totalPartitions) {
+        this.tributary = tributary;
+        this.topicOrder = topicOrder;
+        this.totalTopics = topicOrder.size();
+        this.totalPartitions = totalPartitions;
+        this.remainingTopics = new CountDownLatch(totalTopics);
+    }
+
+    public Tributary getTributary() {
+        return tributary;
+    }
+
+    public boolean isTopicReady(String topicId) {
+        return readyTopics.contains(topicId);
+    }
+
+    public int getRecoveredPartitions() {
+        return recoveredPartitions.get();
+    }
+
+    public int getTotalPartitions() {
+        return totalPartitions;
+    }
+
+    public int getTruncatedSegments() {
+        return truncatedSegments.get();
+    }
+
+    public double getProgress() {
+        return totalPartitions == 0 ? 1.0 : (double) recoveredPartitions.get() / totalPartitions;
+    }
+
+    public boolean isComplete() {
+        return remainingTopics.getCount() == 0;
+    }
+
+    /**
+     * Waits until every topic has been recovered. Called from a fork-join worker, the pool is told the thread is
+     * blocked so it can start another in its place.
+     *
+     * @return the recovered Tributary
+     * @throws IOException if any topic could not be recovered
+     */
+    public Tributary awaitCompletion() throws IOException {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    remainingTopics.await();
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return remainingTopics.getCount() == 0;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for recovery", e);
+        }
+        RuntimeException e = failure.get();
+        if (e != null) {
+            throw new IOException("Snapshot recovery failed", e.getCause() != null ? e.getCause() : e);
+        }
+        return tributary;
+    }
+
+    /**
+     * Adds a recovered topic to the Tributary after every topic saved before it that is already there, so topics
+     * keep their saved order however recovery is scheduled.
+     */
+    synchronized void register(Topic<?> topic) {
+        int position = 0;
+        for (String id : topicOrder.subList(0, topicOrder.indexOf(topic.getId()))) {
+            if (registeredTopics.contains(id)) {
+                position++;
+            }
+        }
+        tributary.registerTopic(position, topic);
+        registeredTopics.add(topic.getId());
+    }
+
+    void partitionRecovered() {
+        int done = recoveredPartitions.incrementAndGet();
+        System.out.println("Recovery: " + done + "/" + totalPartitions + " partitions");
+    }
+
+    void segmentTruncated(Path logFile) {
+        truncatedSegments.incrementAndGet();
+        System.err.println("Recovery: truncated " + logFile + " at a torn or corrupt segment");
+    }
+
+    void topicRecovered(String topicId) {
+        readyTopics.add(topicId);
+        System.out.println("Recovery: topic " + topicId + " ready (" + readyTopics.size() + "/" + totalTopics + ")");
+        remainingTopics.countDown();
+    }
+
+    void topicFailed(String topicId, RuntimeException e) {
+        failure.compareAndSet(null, e);
+        System.err.println("Recovery: topic " + topicId + " failed: " + e.getMessage());
+        remainingTopics.countDown();
+    }
+}
@@ -1,7 +1,13 @@
 package tributary.api;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import tributary.core.Consumer;
 
 import tributary.core.*;
@@ -9,10 +15,17 @@ import tributary.core.*;
 /**
  * The {@code Tributary} class manages topics, producers, and consumer groups within a messaging system.
  */
-public class Tributary {
-    private List<Topic<?>> topics = new ArrayList<>();
-    private List<Producer<?>> producers = new ArrayList<>();
-    private List<ConsumerGroup> consumerGroups = new ArrayList<>();
+public class Tributary implements AutoCloseable {
+    private List<Topic<?>> topics = new CopyOnWriteArrayList<>();
+    private List<Producer<?>> producers = new CopyOnWriteArrayList<>();
+    private List<ConsumerGroup> consumerGroups = new CopyOnWriteArrayList<>();
+    private DelayScheduler scheduler = new DelayScheduler();
+    private SchemaRegistry schemas = new SchemaRegistry();
+    private GroupCoordinator coordinator = new GroupCoordinator(scheduler);
+    private volatile PartitionExecutor executor;
+    private IngestRing ingest;
+    private MemoryManager memory;
+    private volatile boolean quiet = false;
 
     /**
     * Retrieves a topic by its ID.
@@ -29,13 +42,85 @@ public class Tributary {
         return null;
     }
 
+    List<Topic<?>> getTopics() {
+        return topics;
+    }
+
+    List<Producer<?>> getProducers() {
+        return producers;
+    }
+
+    Producer<?> getProducer(String producerId) {
+        for (Producer<?> producer : producers) {
+            if (producer.getId().equals(producerId)) {
+                return producer;
+            }
+        }
+        return null;
+    }
+
+    List<ConsumerGroup> getConsumerGroups() {
+        return consumerGroups;
+    }
+
+    /**
+    * Writes a snapshot of every topic, partition, producer, consumer group and committed offset to a directory.
+    * Partition data is written as segment logs next to a compact binary metadata file.
+    *
+    * @param directory The directory to write the snapshot to.
+    * @throws IOException If the snapshot cannot be written.
+    */
+    public void saveSnapshot(Path directory) throws IOException {
+        TributarySnapshot.save(this, directory);
+    }
+
+    /**
+    * Restores a Tributary from a snapshot directory. Partition logs are memory-mapped and only their segment index
+    * is read, so events are decoded lazily when they are first fetched.
+    *
+    * @param directory The directory a snapshot was saved to.
+    * @return The restored Tributary.
+    * @throws IOException If the snapshot cannot be read.
+    */
+    public static Tributary restoreSnapshot(Path directory) throws IOException {
+        return TributarySnapshot.restore(directory);
+    }
+
+    /**
+    * Starts recovering a snapshot on a fork-join pool and returns immediately. Every partition log is scanned and
+    * its tail checksum-validated in parallel; each topic is served as soon as its own partitions are recovered.
+    *
+    * @param directory The directory a snapshot was saved to.
+    * @param pool      The pool recovery tasks run on.
+    * @return A handle reporting recovery progress and giving access to the Tributary being recovered.
+    * @throws IOException If the snapshot metadata cannot be read.
+    */
+    public static SnapshotRecovery recoverSnapshot(Path directory, ForkJoinPool pool) throws IOException {
+        return TributarySnapshot.recover(directory, pool);
+    }
+
+    /**
+    * Retrieves the consumer group a consumer belongs to.
+    *
+    * @param consumerId The ID of the consumer.
+    * @return The consumer's group, or null if no group has such a consumer.
+    */
+    private ConsumerGroup getGroupOf(String consumerId) {
+        for (ConsumerGroup group : consumerGroups) {
+            if (group.getConsumer(consumerId) != null) {
+                return group;
+            }
+        }
+        return null;
+    }
+
     /**
     * Retrieves a consumer group by its ID.
     *
     * @param groupId The ID of the consumer group to retrieve.
     * @return The consumer group with the specified ID, or null if no such group exists.
     */
-    private ConsumerGroup getGroup(String groupId) {
+    ConsumerGroup getGroup(String groupId) {
         for (ConsumerGroup group : consumerGroups) {
             if (group.getId().equals(groupId)) {
                 return group;
@@ -44,25 +129,73 @@ public class Tributary {
         return null;
     }
 
+    /**
+    * Registers a record schema that topics and producers can then use as their type. Events of that type carry a
+    * {@link RecordValue} value and are stored with the schema's binary codec.
+    *
+    * @param name   The schema name, used as the topic/producer type.
+    * @param fields The field names and types, in encoding order.
+    * @return The registered schema, or null if a different schema already has that name.
+    */
+    public Schema registerSchema(String name, Map<String, FieldType> fields) {
+        Schema schema = new Schema(name, fields);
+        if (!schemas.register(schema)) {
+            return null;
+        }
+        System.out.println("Schema " + schema + " registered with id " + schema.getId());
+        return schemas.get(name);
+    }
+
+    /**
+    * Retrieves a registered schema by name.
+    *
+    * @param name The schema name.
+    * @return The schema, or null if none is registered under that name.
+    */
+    public Schema getSchema(String name) {
+        return schemas.get(name);
+    }
+
+    List<Schema> getSchemas() {
+        return schemas.getSchemas();
+    }
+
     /**
     * Creates a new topic with the specified ID and type.
     *
     * @param id   The ID of the new topic.
-    * @param type The type of the new topic (e.g., "string" or "integer").
+    * @param type The type of the new topic ("string", "integer" or the name of a registered schema).
     */
     public void createTopic(String id, String type) {
+        Topic<?> topic = buildTopic(id, type);
+        if (topic != null) {
+            if (memory != null) {
+                topic.setMemoryManager(memory);
+            }
+            topics.add(topic);
+        }
+    }
+
+    Topic<?> buildTopic(String id, String type) {
         switch (type) {
         case "string":
-            topics.add(new Topic<String>(id, type));
-            break;
+            return new Topic<String>(id, type);
         case "integer":
-            topics.add(new Topic<Integer>(id, type));
-            break;
+            return new Topic<Integer>(id, type);
         default:
+            Schema schema = schemas.get(type);
+            if (schema != null) {
+                Topic<RecordValue> topic = new Topic<>(id, schema);
+                topic.setSchemaRegistry(schemas);
+                return topic;
+            }
             System.err.println("invalid type: " + type);
-            return;
+            return null;
         }
-        return;
+    }
+
+    void registerTopic(int position, Topic<?> topic) {
+        topics.add(position, topic);
     }
 
     /**
@@ -98,6 +231,38 @@ public class Tributary {
         topic.createPartition(id);
     }
 
+    /**
+    * Adds a partition to a topic online. Key-hashed producers move only a minimal share of keys onto it, consumer
+    * groups are rebalanced, and the new partition's events wait until each group has drained the keys' old partitions.
+    *
+    * @param topicId The ID of the topic to expand.
+    * @param id      The ID for the new partition.
+    */
+    public void expandPartitions(String topicId, String id) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return;
+        }
+        topic.expandPartitions(id);
+    }
+
+    /**
+    * Splits a hot partition, moving about half of its keys to a new partition while keeping per-key order.
+    *
+    * @param topicId        The ID of the topic.
+    * @param partitionId    The ID of the hot partition.
+    * @param newPartitionId The ID for the new partition.
+    */
+    public void splitPartition(String topicId, String partitionId, String newPartitionId) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return;
+        }
+        topic.splitPartition(partitionId, newPartitionId);
+    }
+
     /**
      * Creates a new producer with the specified ID, type, and message allocation strategy.
      *
@@ -106,18 +271,52 @@ public class Tributary {
      * @param allocation  The allocation strategy for how messages are distributed.
      */
     public void createProducer(String id, String type, MessageAllocation allocation) {
+        createProducer(id, type, allocation, false);
+    }
+
+    /**
+     * Creates a new producer, optionally in idempotent mode. An idempotent producer numbers its events per
+     * partition and partitions reject re-sent sequences and recently seen event ids.
+     *
+     * @param id          The ID of the new producer.
+     * @param type        The type of messages the producer will handle.
+     * @param allocation  The allocation strategy for how messages are distributed.
+     * @param idempotent  Whether duplicate events from this producer are suppressed.
+     */
+    public void createProducer(String id, String type, MessageAllocation allocation, boolean idempotent) {
+        Producer<?> producer;
         switch (type) {
         case "string":
-            producers.add(new Producer<String>(id, allocation, type));
+            producer = new Producer<String>(id, allocation, type, idempotent);
             break;
         case "integer":
-            producers.add(new Producer<Integer>(id, allocation, type));
+            producer = new Producer<Integer>(id, allocation, type, idempotent);
             break;
         default:
+            Schema schema = schemas.get(type);
+            if (schema != null) {
+                producer = new Producer<RecordValue>(id, allocation, schema, idempotent);
+                break;
+            }
             System.err.println("invalid type: " + type);
             return;
         }
-        return;
+        producer.setQuiet(quiet);
+        producers.add(producer);
+    }
+
+    /**
+    * Turns off the line printed for every produced event, for existing and future producers alike, so load can be
+    * driven without flooding the console. Consumers print through their delivery handler, see
+    * {@link #setDeliveryHandler}.
+    *
+    * @param quiet Whether per-event output is suppressed.
+    */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+        for (Producer<?> producer : producers) {
+            producer.setQuiet(quiet);
+        }
     }
 
     /**
@@ -133,7 +332,9 @@ public class Tributary {
             System.err.println("Topic '" + topicId + "' does not exist.");
             return;
         }
-        consumerGroups.add(new ConsumerGroup(id, topic, rebalancing));
+        ConsumerGroup group = new ConsumerGroup(id, topic, rebalancing);
+        consumerGroups.add(group);
+        topic.subscribe(group);
     }
 
     /**
@@ -149,6 +350,9 @@ public class Tributary {
             return;
         }
         group.createConsumer(id);
+        if (group.getSessionTimeoutMs() > 0) {
+            coordinator.register(group, id);
+        }
     }
 
     /**
@@ -162,6 +366,121 @@ public class Tributary {
         getConsumer(consumerId).consumeEvents(partitionId, numberOfEvents);
     }
 
+    /**
+    * Consumes up to a number of events matching a filter. The filter is evaluated inside the partition read loop,
+    * and the group offset still advances past the events it rejects.
+    *
+    * @param consumerId     The ID of the consumer processing events.
+    * @param partitionId    The ID of the partition from which events are consumed.
+    * @param numberOfEvents The maximum number of matching events to deliver.
+    * @param filter         The filter on key, payload type, header id or value.
+    * @return The delivered events, or an empty list if the consumer does not exist.
+    */
+    public List<Event<?>> consumeEvents(String consumerId, String partitionId, int numberOfEvents,
+            EventFilter filter) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return new ArrayList<>();
+        }
+        return consumer.consumeEvents(partitionId, numberOfEvents, filter);
+    }
+
+    /**
+    * Makes a consumer read ahead from its assigned partitions in the background. Group offsets still only move when
+    * events are delivered, and the buffers are dropped whenever the group rebalances.
+    *
+    * @param consumerId The ID of the consumer.
+    * @param maxEvents  The most events buffered per partition, or 0 to turn read-ahead off.
+    * @param maxBytes   The most estimated bytes buffered per partition, or 0 for no byte limit.
+    */
+    public void setPrefetch(String consumerId, int maxEvents, long maxBytes) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return;
+        }
+        consumer.setPrefetch(maxEvents, maxBytes);
+        System.out.println("Consumer " + consumerId + " prefetch set to " + maxEvents + " events / " + maxBytes
+                + " bytes");
+    }
+
+    /**
+    * Bounds how many delivered events a consumer remembers for 'show consumergroup'. The oldest are forgotten first.
+    *
+    * @param consumerId The ID of the consumer.
+    * @param maxEvents  The most events kept, or 0 to keep no history.
+    * @param maxBytes   The most estimated bytes kept.
+    */
+    public void setConsumerHistory(String consumerId, int maxEvents, long maxBytes) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return;
+        }
+        consumer.setHistory(maxEvents, maxBytes);
+        System.out.println("Consumer " + consumerId + " history set to " + maxEvents + " events / " + maxBytes
+                + " bytes");
+    }
+
+    /**
+    * Replaces what a consumer does with each delivered event. By default events are printed.
+    *
+    * @param consumerId The ID of the consumer.
+    * @param handler    The handler called once per delivered event.
+    */
+    public void setDeliveryHandler(String consumerId, DeliveryHandler handler) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return;
+        }
+        consumer.setDeliveryHandler(handler);
+    }
+
+    /**
+    * Lets a consumer process each of its partitions on several threads. Events are fanned out by key, so events with
+    * the same key are still handled one at a time and in order, and the group's offset only advances past events
+    * that have been fully processed.
+    *
+    * @param consumerId  The ID of the consumer.
+    * @param workers     The threads per partition, or 0 to turn parallel processing off.
+    * @param maxInFlight The most events per partition dispatched but not yet processed.
+    */
+    public void setParallelProcessing(String consumerId, int workers, int maxInFlight) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return;
+        }
+        consumer.setParallelProcessing(workers, maxInFlight);
+        System.out.println("Consumer " + consumerId + " processing with " + workers + " workers, " + maxInFlight
+                + " events in flight");
+    }
+
+    /**
+    * Dispatches a partition's next events to the consumer's processing workers and returns without waiting for them.
+    *
+    * @param consumerId  The ID of the consumer.
+    * @param partitionId The ID of an assigned partition.
+    * @param maxEvents   The most events to dispatch.
+    * @return The number of events dispatched.
+    */
+    public int processEvents(String consumerId, String partitionId, int maxEvents) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return 0;
+        }
+        KeyOrderedProcessor processor = consumer.getProcessor(partitionId);
+        if (processor == null) {
+            System.err.println("Consumer " + consumerId + " cannot process partition " + partitionId
+                    + ": it is not assigned or parallel processing is off");
+            return 0;
+        }
+        return processor.dispatch(maxEvents);
+    }
+
     /**
     * Deletes a consumer from a consumer group.
     *
@@ -169,7 +488,110 @@ public class Tributary {
     * @param consumerId  The ID of the consumer to delete.
     */
     public void deleteConsumer(String groupId, String consumerId) {
-        getGroup(groupId).deleteConsumer(consumerId);
+        ConsumerGroup group = getGroup(groupId);
+        if (group == null) {
+            System.err.println("Consumer group " + groupId + " does not exist");
+            return;
+        }
+        coordinator.unregister(group, consumerId);
+        group.deleteConsumer(consumerId);
+    }
+
+    /**
+    * Makes the members of a consumer group keep a session alive with {@link #heartbeat}. A member that misses its
+    * session timeout is removed and the group rebalanced, which starts a new generation.
+    *
+    * @param groupId   The ID of the consumer group.
+    * @param timeoutMs The session timeout in milliseconds, or 0 to turn sessions off.
+    */
+    public void setSessionTimeout(String groupId, long timeoutMs) {
+        ConsumerGroup group = getGroup(groupId);
+        if (group == null) {
+            System.err.println("Consumer group " + groupId + " does not exist");
+            return;
+        }
+        group.setSessionTimeoutMs(timeoutMs);
+        for (Consumer consumer : group.getConsumers()) {
+            if (timeoutMs > 0) {
+                coordinator.register(group, consumer.getId());
+            } else {
+                coordinator.unregister(group, consumer.getId());
+            }
+        }
+        System.out.println("Consumer group " + groupId + " session timeout set to " + timeoutMs + " ms");
+    }
+
+    /**
+    * Keeps a consumer's session alive.
+    *
+    * @param consumerId The ID of the consumer.
+    * @return The group's current generation to fetch with, or -1 if the consumer has no live session and has to
+    *         be created again. A member of a group without sessions always gets the generation.
+    */
+    public int heartbeat(String consumerId) {
+        ConsumerGroup group = getGroupOf(consumerId);
+        return group == null ? -1 : coordinator.heartbeat(group, consumerId);
+    }
+
+    /**
+    * Fetches events like {@link #pollEvents}, but only if the consumer's view of the group is current. A fetch made
+    * with the generation of an earlier assignment is rejected, so a member that missed a rebalance cannot read
+    * partitions that now belong to someone else.
+    *
+    * @param consumerId  The ID of the consumer.
+    * @param partitionId The ID of the partition to read.
+    * @param maxEvents   The most events to return.
+    * @param generation  The generation returned by the consumer's last {@link #heartbeat}.
+    * @return The fetched events, or an empty list if the fetch was fenced.
+    */
+    public List<Event<?>> fetchEvents(String consumerId, String partitionId, int maxEvents, int generation) {
+        ConsumerGroup group = getGroupOf(consumerId);
+        if (group == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return new ArrayList<>();
+        }
+        List<Event<?>> fetched = group.fetch(group.getConsumer(consumerId), partitionId, maxEvents, generation,
+                executor);
+        if (fetched == null) {
+            System.err.println("Fetch by " + consumerId + " fenced: generation " + generation + " is stale, group "
+                    + group.getId() + " is at generation " + group.getGeneration());
+            return new ArrayList<>();
+        }
+        return fetched;
+    }
+
+    /**
+    * Reads a consumer group's topic in event timestamp order, merging all its partitions. The group should be used
+    * for merged reads only, as they move its offset on every partition.
+    *
+    * @param groupId    The ID of the consumer group.
+    * @param lookahead  The most events buffered per partition.
+    * @param maxDelayMs How long after its timestamp an event may still reach its partition; an idle partition holds
+    *                   the merge back for at most this long.
+    */
+    public void enableMergedRead(String groupId, int lookahead, long maxDelayMs) {
+        ConsumerGroup group = getGroup(groupId);
+        if (group == null) {
+            System.err.println("Consumer group " + groupId + " does not exist");
+            return;
+        }
+        group.enableMergedRead(lookahead, maxDelayMs);
+    }
+
+    /**
+    * Takes the next events of a group's merged read, oldest first.
+    *
+    * @param groupId   The ID of the consumer group.
+    * @param maxEvents The most events to return.
+    * @return The events in timestamp order, empty if the group has no merged read.
+    */
+    public List<Event<?>> pollMerged(String groupId, int maxEvents) {
+        ConsumerGroup group = getGroup(groupId);
+        if (group == null || group.getMergedReader() == null) {
+            System.err.println("Consumer group " + groupId + " has no merged read");
+            return new ArrayList<>();
+        }
+        return group.getMergedReader().poll(maxEvents);
     }
 
     /**
@@ -194,6 +616,467 @@ public class Tributary {
         System.err.println("Producer " + producerId + " does not exist");
     }
 
+    /**
+    * Sends an event that only becomes visible to consumers after a delay. It is appended to its partition when due.
+    *
+    * @param producerId The ID of the producer sending the event.
+    * @param topicId    The ID of the topic to which the event is sent.
+    * @param event      The event to be sent.
+    * @param delayMs    How long to hold the event back, in milliseconds.
+    */
+    public void produceDelayed(String producerId, String topicId, Event<?> event, long delayMs) {
+        produceAt(producerId, topicId, event, System.currentTimeMillis() + delayMs);
+    }
+
+    /**
+    * Sends an event that only becomes visible to consumers at a given time. It is appended to its partition when due.
+    *
+    * @param producerId  The ID of the producer sending the event.
+    * @param topicId     The ID of the topic to which the event is sent.
+    * @param event       The event to be sent.
+    * @param deliverAtMs The wall-clock time, in epoch milliseconds, at which the event is delivered.
+    */
+    public void produceAt(String producerId, String topicId, Event<?> event, long deliverAtMs) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return;
+        }
+        for (Producer<?> producer : producers) {
+            if (producer.getId().equals(producerId)) {
+                producer.produceDelayed(topic, event, deliverAtMs, scheduler);
+                return;
+            }
+        }
+        System.err.println("Producer " + producerId + " does not exist");
+    }
+
+    /**
+    * Delivers every delayed event due at the given time without waiting for the background clock.
+    *
+    * @param nowMs The time, in epoch milliseconds, to advance the delay clock to.
+    * @return The number of delayed events delivered.
+    */
+    public int advanceClock(long nowMs) {
+        return scheduler.advanceClock(nowMs);
+    }
+
+    /**
+    * @return The number of delayed events not yet delivered.
+    */
+    public int getPendingDelayed() {
+        return scheduler.getPending();
+    }
+
+    /**
+    * Switches on the shared-nothing execution mode: each partition is owned by one event-loop thread, and
+    * {@link #submitEvent} and {@link #pollEvents} run their partition work on that thread only. The other produce and
+    * consume methods keep working on the caller's thread.
+    *
+    * @param threads The number of event loops, typically the number of cores.
+    */
+    public void enableEventLoops(int threads) {
+        if (executor != null) {
+            executor.close();
+        }
+        executor = new PartitionExecutor(threads);
+        System.out.println("Event loops enabled with " + executor.getThreadCount() + " threads");
+    }
+
+    /**
+    * Sends an event through the partition's owning event loop without waiting for the append.
+    *
+    * @param producerId The ID of the producer sending the event.
+    * @param topicId    The ID of the topic to which the event is sent.
+    * @param event      The event to be sent.
+    * @return A future completing with whether the partition accepted the event; false straight away if the
+    *         event could not be routed or event loops are not enabled.
+    */
+    public CompletableFuture<Boolean> submitEvent(String producerId, String topicId, Event<?> event) {
+        Topic<?> topic = getTopic(topicId);
+        if (executor == null || topic == null) {
+            System.err.println(executor == null ? "Event loops are not enabled" : "Topic '" + topicId
+                    + "' does not exist");
+            return CompletableFuture.completedFuture(false);
+        }
+        for (Producer<?> producer : producers) {
+            if (producer.getId().equals(producerId)) {
+                return producer.submitEvent(topic, event, executor);
+            }
+        }
+        System.err.println("Producer " + producerId + " does not exist");
+        return CompletableFuture.completedFuture(false);
+    }
+
+    /**
+    * Fetches events for a consumer without printing or recording them. With event loops enabled the read runs on
+    * the partition's owning loop.
+    *
+    * @param consumerId  The ID of the consumer.
+    * @param partitionId The ID of the partition to read.
+    * @param maxEvents   The most events to return.
+    * @return The fetched events, or an empty list if the consumer does not exist.
+    */
+    public List<Event<?>> pollEvents(String consumerId, String partitionId, int maxEvents) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return new ArrayList<>();
+        }
+        return executor == null ? consumer.poll(partitionId, maxEvents)
+                : consumer.poll(partitionId, maxEvents, executor);
+    }
+
+    /**
+    * Starts maintaining the latest event per key of a topic. The view is built once from what the topic already
+    * holds and then updated on every append, so lookups no longer need a replay.
+    *
+    * @param topicId The ID of the topic.
+    * @return The topic's view, or null if the topic does not exist.
+    */
+    public MaterializedView materializeTopic(String topicId) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return null;
+        }
+        return topic.materialize();
+    }
+
+    /**
+    * Looks up the latest event written with a key, materializing the topic first if needed.
+    *
+    * @param topicId The ID of the topic.
+    * @param key     The event key.
+    * @return The latest event with that key, or null if there is none.
+    */
+    public Event<?> lookupKey(String topicId, String key) {
+        MaterializedView view = materializeTopic(topicId);
+        MaterializedView.Entry entry = view == null ? null : view.get(key);
+        return entry == null ? null : entry.getEvent();
+    }
+
+    /**
+    * Returns the latest event of every key in a range, materializing the topic first if needed.
+    *
+    * @param topicId The ID of the topic.
+    * @param fromKey The first key of the range, inclusive.
+    * @param toKey   The end of the range, exclusive.
+    * @return The latest events in key order.
+    */
+    public List<Event<?>> scanKeys(String topicId, String fromKey, String toKey) {
+        List<Event<?>> out = new ArrayList<>();
+        MaterializedView view = materializeTopic(topicId);
+        if (view != null) {
+            for (MaterializedView.Entry entry : view.range(fromKey, toKey)) {
+                out.add(entry.getEvent());
+            }
+        }
+        return out;
+    }
+
+    /**
+    * Puts a ring buffer in front of the produce path: {@link #publishEvent} only claims and fills a preallocated
+    * slot, and a dedicated ingest thread does the lookups, type checks, allocation and batched appends.
+    *
+    * @param size The number of slots, rounded up to a power of two.
+    * @param wait How the ingest thread and publishers wait on an empty or full ring.
+    */
+    public void enableIngestRing(int size, WaitStrategy wait) {
+        if (ingest != null) {
+            ingest.flush();
+            ingest.close();
+        }
+        ingest = new IngestRing(size, wait, (producerId, topicId, events) -> produceEvents(producerId, topicId,
+                events));
+        System.out.println("Ingest ring enabled with " + ingest.getCapacity() + " slots (" + wait + ")");
+    }
+
+    /**
+    * Publishes an event into the ingest ring. It is appended asynchronously, in publish order, by the ingest thread.
+    *
+    * @param producerId The ID of the producer sending the event.
+    * @param topicId    The ID of the topic to which the event is sent.
+    * @param event      The event to be sent.
+    * @return The event's sequence number in the ring, or -1 if the ingest ring is not enabled or an argument is
+    *         missing.
+    */
+    public long publishEvent(String producerId, String topicId, Event<?> event) {
+        if (ingest == null) {
+            System.err.println("Ingest ring is not enabled");
+            return -1;
+        }
+        if (producerId == null || topicId == null || event == null) {
+            System.err.println("Cannot publish without a producer, topic and event");
+            return -1;
+        }
+        return ingest.publish(producerId, topicId, event);
+    }
+
+    /**
+    * Waits until every event published into the ingest ring so far has been processed.
+    */
+    public void flushIngest() {
+        if (ingest != null) {
+            ingest.flush();
+        }
+    }
+
+    /**
+    * Allows a producer to send a batch of events to a topic in one call. On a compressed topic each
+    * partition's share of the batch is encoded and compressed once.
+    *
+    * @param producerId The ID of the producer sending the events.
+    * @param topicId    The ID of the topic to which the events are sent.
+    * @param events     The events to be sent, in order.
+    */
+    public void produceEvents(String producerId, String topicId, List<Event<?>> events) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return;
+        }
+        for (Producer<?> producer : producers) {
+            if (producer.getId().equals(producerId)) {
+                producer.produceEvents(topic, events);
+                return;
+            }
+        }
+        System.err.println("Producer " + producerId + " does not exist");
+    }
+
+    /**
+    * Enables (or disables, with a null codec) batch compression of the events stored in a topic.
+    *
+    * @param topicId   The ID of the topic.
+    * @param codec     The codec used to compress sealed batches, or null for no compression.
+    * @param batchSize The number of single-produced events buffered before they are sealed into a batch.
+    */
+    public void setTopicCompression(String topicId, CompressionCodec codec, int batchSize) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return;
+        }
+        topic.setCompression(codec, batchSize);
+    }
+
+    /**
+    * Moves a topic's older segments to compressed files in a cold-storage directory, keeping only the newest
+    * segments of each partition on the heap. Archived segments are read back lazily, through an LRU cache, when a
+    * consumer or playback reaches them.
+    *
+    * @param topicId        The ID of the topic.
+    * @param directory      The cold-storage directory; the topic's segments go in a sub-directory named after it.
+    * @param segmentSize    The number of events per segment, used if the topic is not compressed yet.
+    * @param hotSegments    The number of sealed segments per partition kept in memory.
+    * @param cachedSegments The number of archived segments kept in the read cache.
+    */
+    public void enableTieredStorage(String topicId, Path directory, int segmentSize, int hotSegments,
+            int cachedSegments) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return;
+        }
+        topic.setTieredStorage(new TieredStorage(directory.resolve(topicId), hotSegments, cachedSegments), segmentSize);
+    }
+
+    /**
+    * Caps the heap held by partition data across every topic. When the budget is exceeded the oldest events of the
+    * least recently read partitions are spilled to disk and read back transparently when a consumer or playback
+    * reaches them; the newest events of each partition stay in memory.
+    *
+    * @param budgetBytes The heap budget in estimated bytes.
+    * @param directory   Where spilled segments are written, one sub-directory per topic and partition.
+    */
+    public void setMemoryBudget(long budgetBytes, Path directory) {
+        setMemoryBudget(budgetBytes, directory, MemoryManager.DEFAULT_HOT_EVENTS);
+    }
+
+    /**
+    * Caps the heap held by partition data across every topic, see {@link #setMemoryBudget(long, Path)}.
+    *
+    * @param budgetBytes The heap budget in estimated bytes.
+    * @param directory   Where spilled segments are written.
+    * @param hotEvents   The number of newest events per partition that are never spilled.
+    */
+    public void setMemoryBudget(long budgetBytes, Path directory, int hotEvents) {
+        if (memory != null) {
+            memory.close();
+        }
+        memory = new MemoryManager(budgetBytes, directory, hotEvents);
+        for (Topic<?> topic : topics) {
+            topic.setMemoryManager(memory);
+        }
+        System.out.println("Memory budget set to " + budgetBytes + " bytes, spilling to " + directory);
+    }
+
+    /**
+    * @return The estimated heap bytes held by partition data, or 0 if no memory budget is set.
+    */
+    public long getHeapBytes() {
+        return memory == null ? 0 : memory.getHeapBytes();
+    }
+
+    /**
+    * @return The estimated bytes spilled to disk so far, or 0 if no memory budget is set.
+    */
+    public long getSpilledBytes() {
+        return memory == null ? 0 : memory.getSpilledBytes();
+    }
+
+    /**
+    * Bounds the total backlog of a topic, measured from each partition's slowest consumer group offset.
+    *
+    * @param topicId The ID of the topic.
+    * @param limit   The event/byte limits and overflow policy, or null to remove the limit.
+    */
+    public void setTopicCapacity(String topicId, CapacityLimit limit) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return;
+        }
+        topic.setCapacityLimit(limit);
+    }
+
+    /**
+    * Bounds the backlog of a single partition, measured from its slowest consumer group offset.
+    *
+    * @param topicId     The ID of the topic containing the partition.
+    * @param partitionId The ID of the partition.
+    * @param limit       The event/byte limits and overflow policy, or null to remove the limit.
+    */
+    public void setPartitionCapacity(String topicId, String partitionId, CapacityLimit limit) {
+        Topic<?> topic = getTopic(topicId);
+        Partition partition = topic == null ? null : topic.getPartition(partitionId);
+        if (partition == null) {
+            System.err.println("Partition '" + partitionId + "' does not exist in topic '" + topicId + "'");
+            return;
+        }
+        partition.setCapacityLimit(limit);
+        System.out.println("Partition " + partitionId + " capacity set to " + limit);
+    }
+
+    /**
+    * Reports how many more events a topic accepts before its capacity limits push back on producers.
+    *
+    * @param topicId The ID of the topic.
+    * @return The remaining capacity in events, Long.MAX_VALUE if unbounded, or 0 if the topic does not exist.
+    */
+    public long getRemainingCapacity(String topicId) {
+        Topic<?> topic = getTopic(topicId);
+        if (topic == null) {
+            System.err.println("Topic '" + topicId + "' does not exist");
+            return 0;
+        }
+        return topic.getRemainingCapacity();
+    }
+
+    /**
+    * Limits how fast a producer may send. Over-quota produce calls are delayed by their throttle time, not rejected.
+    *
+    * @param producerId      The ID of the producer.
+    * @param eventsPerSecond The event rate, or 0 for no event limit.
+    * @param bytesPerSecond  The estimated byte rate, or 0 for no byte limit.
+    */
+    public void setProducerQuota(String producerId, double eventsPerSecond, double bytesPerSecond) {
+        for (Producer<?> producer : producers) {
+            if (producer.getId().equals(producerId)) {
+                Quota quota = new Quota(eventsPerSecond, bytesPerSecond);
+                producer.setQuota(quota);
+                System.out.println("Producer " + producerId + " quota set to " + quota);
+                return;
+            }
+        }
+        System.err.println("Producer " + producerId + " does not exist");
+    }
+
+    /**
+    * Limits how fast a consumer group may fetch, across all of its consumers. Over-quota fetches are delayed by
+    * their throttle time, not rejected.
+    *
+    * @param groupId         The ID of the consumer group.
+    * @param eventsPerSecond The event rate, or 0 for no event limit.
+    * @param bytesPerSecond  The estimated byte rate, or 0 for no byte limit.
+    */
+    public void setGroupQuota(String groupId, double eventsPerSecond, double bytesPerSecond) {
+        ConsumerGroup group = getGroup(groupId);
+        if (group == null) {
+            System.err.println("Consumer group " + groupId + " does not exist");
+            return;
+        }
+        Quota quota = new Quota(eventsPerSecond, bytesPerSecond);
+        group.setQuota(quota);
+        System.out.println("Consumer group " + groupId + " quota set to " + quota);
+    }
+
+    /**
+    * Reports the total time a producer has spent throttled by its quota.
+    *
+    * @param producerId The ID of the producer.
+    * @return The throttle time in milliseconds, or 0 if the producer has no quota.
+    */
+    public long getProducerThrottleTime(String producerId) {
+        for (Producer<?> producer : producers) {
+            if (producer.getId().equals(producerId)) {
+                return producer.getQuota() == null ? 0 : producer.getQuota().getThrottleTimeMs();
+            }
+        }
+        return 0;
+    }
+
+    /**
+    * Samples a share of a producer's events for tracing. Sampled events carry a trace id in their header, and each
+    * consumer group logs their produce, append and consume timings when it fetches them.
+    *
+    * @param producerId The ID of the producer.
+    * @param rate       The share of events to trace, from 0 (none) to 1 (all).
+    */
+    public void setTraceSampling(String producerId, double rate) {
+        Producer<?> producer = getProducer(producerId);
+        if (producer == null) {
+            System.err.println("Producer " + producerId + " does not exist");
+            return;
+        }
+        producer.setTraceSampleRate(rate);
+        System.out.println("Producer " + producerId + " tracing " + rate + " of events");
+    }
+
+    /**
+    * Reports how long events took from production until a partition of the topic appended them.
+    *
+    * @param topicId The ID of the topic.
+    * @return The topic's latency distributions, or null if the topic does not exist.
+    */
+    public LatencyStats getTopicLatency(String topicId) {
+        Topic<?> topic = getTopic(topicId);
+        return topic == null ? null : topic.getLatency();
+    }
+
+    /**
+    * Reports how long events took from append, and from production, until the group's consumers fetched them.
+    *
+    * @param groupId The ID of the consumer group.
+    * @return The group's latency distributions, or null if the group does not exist.
+    */
+    public LatencyStats getGroupLatency(String groupId) {
+        ConsumerGroup group = getGroup(groupId);
+        return group == null ? null : group.getLatency();
+    }
+
+    /**
+    * Reports the total time a consumer group has spent throttled by its quota.
+    *
+    * @param groupId The ID of the consumer group.
+    * @return The throttle time in milliseconds, or 0 if the group has no quota.
+    */
+    public long getGroupThrottleTime(String groupId) {
+        ConsumerGroup group = getGroup(groupId);
+        return group == null || group.getQuota() == null ? 0 : group.getQuota().getThrottleTimeMs();
+    }
+
     /**
     * Updates the rebalancing strategy for a consumer group.
     *
@@ -231,6 +1114,34 @@ public class Tributary {
         getConsumer(consumerId).replay(partitionId, offset);
     }
 
+    /**
+    * Reprocesses a range of an assigned partition in parallel on the common fork-join pool. Unlike playback, the
+    * group's committed offset is left where it is.
+    *
+    * @param consumerId  The ID of the consumer whose partition is replayed.
+    * @param partitionId The ID of the partition to replay.
+    * @param from        The first offset to replay.
+    * @param to          The offset to stop before.
+    * @param handler     Receives every replayed event, possibly from several threads at once.
+    * @param keyOrdered  Whether events sharing a key must reach the handler one at a time, in offset order.
+    * @return The number of events replayed.
+    */
+    public long bulkReplay(String consumerId, String partitionId, int from, int to, DeliveryHandler handler,
+            boolean keyOrdered) {
+        Consumer consumer = getConsumer(consumerId);
+        if (consumer == null) {
+            System.err.println("Consumer " + consumerId + " does not exist");
+            return 0;
+        }
+        Partition partition = consumer.getPartition(partitionId);
+        if (partition == null) {
+            System.err.println("Partition " + partitionId + " is not assigned to consumer " + consumerId);
+            return 0;
+        }
+        BulkReplay replay = new BulkReplay(ForkJoinPool.commonPool(), BulkReplay.DEFAULT_CHUNK_SIZE, keyOrdered);
+        return replay.replay(partition, from, to, consumerId, handler);
+    }
+
     /**
     * Retrieves a partition within a topic.
     *
@@ -241,4 +1152,25 @@ public class Tributary {
     public Partition getPartition(String topicId, String partitionId) {
         return getTopic(topicId).getPartition(partitionId);
     }
+
+    /**
+    * Stops every background thread this instance started: the delay scheduler, the group coordinator, the event
+    * loops, the ingest thread and the memory budget's spill thread. Events already published or submitted are still
+    * appended; delayed events not yet due are dropped.
+    */
+    @Override
+    public void close() {
+        scheduler.close();
+        coordinator.close();
+        if (executor != null) {
+            executor.close();
+        }
+        if (ingest != null) {
+            ingest.flush();
+            ingest.close();
+        }
+        if (memory != null) {
+            memory.close();
+        }
+    }
 }
@@ -0,0 +1,277 @@
+package tributary.api;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import tributary.api.TributaryException.Reason;
+import tributary.core.Consumer;
+import tributary.core.ConsumerGroup;
+import tributary.core.Event;
+import tributary.core.EventFilter;
+import tributary.core.MessageAllocation;
+import tributary.core.Producer;
+import tributary.core.RebalancingStrategy;
+import tributary.core.Topic;
+
+/**
+ * Non-blocking front end to a {@link Tributary}. Every call returns straight away with a future that completes on a
+ * small internal pool, so callers can keep thousands of operations outstanding without a thread each. Failures
+ * complete the future exceptionally with a {@link TributaryException} giving the reason.
+ *
+ * <p>Sends from the same producer run one after another, in call order, so pipelining never reorders a producer's
+ * events; sends from different producers run concurrently.
+ */
+public class TributaryAsync implements AutoCloseable {
+    private final Tributary tributary;
+    private final ExecutorService pool;
+    private final Map<String, CompletableFuture<?>> lastSends = new ConcurrentHashMap<>();
+
+    /**
+    * Creates a facade backed by one worker thread per core.
+    *
+    * @param tributary The instance to operate on.
+    */
+    public TributaryAsync(Tributary tributary) {
+        this(tributary, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+    * Creates a facade backed by a fixed number of worker threads.
+    *
+    * @param tributary The instance to operate on.
+    * @param threads   The number of worker threads.
+    */
+    public TributaryAsync(Tributary tributary, int threads) {
+        this.tributary = tributary;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "tributary-async-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public Tributary getTributary() {
+        return tributary;
+    }
+
+    /**
+    * Sends an event.
+    *
+    * @param producerId The ID of the producer sending the event.
+    * @param topicId    The ID of the topic to which the event is sent.
+    * @param event      The event to be sent.
+    * @return A future completing once the event is appended, or failing with {@code REJECTED} if a type check,
+    *         capacity limit or duplicate check turned it away. It completes after every earlier send by the same
+    *         producer.
+    */
+    public CompletableFuture<Void> produce(String producerId, String topicId, Event<?> event) {
+        return callInOrder(producerId, () -> {
+            Topic<?> topic = requireTopic(topicId);
+            Producer<?> producer = requireProducer(producerId);
+            if (!producer.produceEvent(topic, event)) {
+                throw new TributaryException(Reason.REJECTED, "Event " + event.getId() + " was not appended to "
+                        + topicId);
+            }
+            return null;
+        });
+    }
+
+    /**
+    * Consumes events: they are delivered to the consumer's handler and its group offset moves past them.
+    *
+    * @param consumerId  The ID of the consumer.
+    * @param partitionId The ID of an assigned partition.
+    * @param maxEvents   The most events to consume.
+    * @return A future with the consumed events.
+    */
+    public CompletableFuture<List<Event<?>>> consume(String consumerId, String partitionId, int maxEvents) {
+        return call(() -> requireAssigned(consumerId, partitionId).consumeEvents(partitionId, maxEvents,
+                EventFilter.ALL));
+    }
+
+    /**
+    * Fetches events without delivering them to the consumer's handler, committing the group offset past them.
+    *
+    * @param consumerId  The ID of the consumer.
+    * @param partitionId The ID of an assigned partition.
+    * @param maxEvents   The most events to fetch.
+    * @return A future with the fetched events.
+    */
+    public CompletableFuture<List<Event<?>>> poll(String consumerId, String partitionId, int maxEvents) {
+        return call(() -> {
+            requireAssigned(consumerId, partitionId);
+            return tributary.pollEvents(consumerId, partitionId, maxEvents);
+        });
+    }
+
+    /**
+    * Moves a consumer's group offset on one of its partitions.
+    *
+    * @param consumerId  The ID of the consumer.
+    * @param partitionId The ID of an assigned partition.
+    * @param offset      The next offset the group should read.
+    * @return A future completing once the offset is stored.
+    */
+    public CompletableFuture<Void> commit(String consumerId, String partitionId, int offset) {
+        return call(() -> {
+            requireAssigned(consumerId, partitionId).commit(partitionId, offset);
+            return null;
+        });
+    }
+
+    /**
+    * Creates a topic.
+    *
+    * @param id   The ID of the new topic.
+    * @param type The event type, or the name of a registered schema.
+    * @return A future failing with {@code ALREADY_EXISTS} or {@code INVALID_TYPE}.
+    */
+    public CompletableFuture<Void> createTopic(String id, String type) {
+        return call(() -> {
+            if (tributary.getTopic(id) != null) {
+                throw new TributaryException(Reason.ALREADY_EXISTS, "Topic '" + id + "' already exists");
+            }
+            tributary.createTopic(id, type);
+            if (tributary.getTopic(id) == null) {
+                throw new TributaryException(Reason.INVALID_TYPE, "invalid type: " + type);
+            }
+            return null;
+        });
+    }
+
+    /**
+    * Creates a partition in a topic.
+    *
+    * @param id      The ID of the new partition.
+    * @param topicId The ID of the topic.
+    * @return A future failing with {@code UNKNOWN_TOPIC} or {@code ALREADY_EXISTS}.
+    */
+    public CompletableFuture<Void> createPartition(String id, String topicId) {
+        return call(() -> {
+            if (requireTopic(topicId).getPartition(id) != null) {
+                throw new TributaryException(Reason.ALREADY_EXISTS, "Partition '" + id + "' already exists in "
+                        + topicId);
+            }
+            tributary.createPartition(id, topicId);
+            return null;
+        });
+    }
+
+    /**
+    * Creates a consumer group on a topic.
+    *
+    * @param id          The ID of the new group.
+    * @param topicId     The ID of the topic.
+    * @param rebalancing The rebalancing strategy.
+    * @return A future failing with {@code UNKNOWN_TOPIC} or {@code ALREADY_EXISTS}.
+    */
+    public CompletableFuture<Void> createConsumerGroup(String id, String topicId, RebalancingStrategy rebalancing) {
+        return call(() -> {
+            requireTopic(topicId);
+            if (tributary.getGroup(id) != null) {
+                throw new TributaryException(Reason.ALREADY_EXISTS, "Consumer group " + id + " already exists");
+            }
+            tributary.createConsumerGroup(id, topicId, rebalancing);
+            return null;
+        });
+    }
+
+    /**
+    * Creates a consumer in a group, which rebalances the group.
+    *
+    * @param id      The ID of the new consumer.
+    * @param groupId The ID of the consumer group.
+    * @return A future failing with {@code UNKNOWN_GROUP} or {@code ALREADY_EXISTS}.
+    */
+    public CompletableFuture<Void> createConsumer(String id, String groupId) {
+        return call(() -> {
+            if (tributary.getGroup(groupId) == null) {
+                throw new TributaryException(Reason.UNKNOWN_GROUP, "Consumer group " + groupId + " does not exist");
+            }
+            if (tributary.getConsumer(id) != null) {
+                throw new TributaryException(Reason.ALREADY_EXISTS, "Consumer " + id + " already exists");
+            }
+            tributary.createConsumer(id, groupId);
+            return null;
+        });
+    }
+
+    /**
+    * Creates a producer.
+    *
+    * @param id         The ID of the new producer.
+    * @param type       The event type, or the name of a registered schema.
+    * @param allocation How events are assigned to partitions.
+    * @return A future failing with {@code ALREADY_EXISTS} or {@code INVALID_TYPE}.
+    */
+    public CompletableFuture<Void> createProducer(String id, String type, MessageAllocation allocation) {
+        return call(() -> {
+            if (tributary.getProducer(id) != null) {
+                throw new TributaryException(Reason.ALREADY_EXISTS, "Producer " + id + " already exists");
+            }
+            tributary.createProducer(id, type, allocation);
+            if (tributary.getProducer(id) == null) {
+                throw new TributaryException(Reason.INVALID_TYPE, "invalid type: " + type);
+            }
+            return null;
+        });
+    }
+
+    /**
+    * Stops the worker threads once the operations already submitted have run.
+    */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, pool);
+    }
+
+    /**
+     * Runs the operation once the previous one queued under {@code key} has finished, whether or not it failed.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> callInOrder(String key, Supplier<T> operation) {
+        return (CompletableFuture<T>) lastSends.compute(key, (k, previous) -> previous == null ? call(operation)
+                : previous.handleAsync((result, failure) -> operation.get(), pool));
+    }
+
+    private Topic<?> requireTopic(String topicId) {
+        Topic<?> topic = tributary.getTopic(topicId);
+        if (topic == null) {
+            throw new TributaryException(Reason.UNKNOWN_TOPIC, "Topic '" + topicId + "' does not exist");
+        }
+        return topic;
+    }
+
+    private Producer<?> requireProducer(String producerId) {
+        Producer<?> producer = tributary.getProducer(producerId);
+        if (producer == null) {
+            throw new TributaryException(Reason.UNKNOWN_PRODUCER, "Producer " + producerId + " does not exist");
+        }
+        return producer;
+    }
+
+    private Consumer requireAssigned(String consumerId, String partitionId) {
+        Consumer consumer = tributary.getConsumer(consumerId);
+        if (consumer == null) {
+            throw new TributaryException(Reason.UNKNOWN_CONSUMER, "Consumer " + consumerId + " does not exist");
+        }
+        if (consumer.getPartition(partitionId) == null) {
+            ConsumerGroup group = tributary.getGroup(consumer.getGroupId());
+            boolean exists = group != null && group.getTopic().getPartition(partitionId) != null;
+            throw new TributaryException(exists ? Reason.NOT_ASSIGNED : Reason.UNKNOWN_PARTITION, "Partition "
+                    + partitionId + (exists ? " is not assigned to " + consumerId : " does not exist"));
+        }
+        return consumer;
+    }
+}
@@ -0,0 +1,32 @@
+package tributary.api;
+
+/**
+ * Why an operation made through {@link TributaryAsync} failed, or why stored data could not be read back.
+ */
+public class TributaryException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        UNKNOWN_TOPIC,
+        UNKNOWN_PARTITION,
+        UNKNOWN_PRODUCER,
+        UNKNOWN_CONSUMER,
+        UNKNOWN_GROUP,
+        NOT_ASSIGNED,
+        ALREADY_EXISTS,
+        INVALID_TYPE,
+        REJECTED,
+        CORRUPT
+    }
+
+    private final Reason reason;
+
+    public TributaryException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
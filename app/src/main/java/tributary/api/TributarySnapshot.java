@@ -0,0 +1,554 @@
+package tributary.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import tributary.api.TributaryException.Reason;
+import tributary.core.BatchSource;
+import tributary.core.CompressionCodec;
+import tributary.core.Consumer;
+import tributary.core.ConsumerGroup;
+import tributary.core.EventBatch;
+import tributary.core.FieldType;
+import tributary.core.KeyHashMessage;
+import tributary.core.ManualMessage;
+import tributary.core.MessageAllocation;
+import tributary.core.Partition;
+import tributary.core.Producer;
+import tributary.core.RandomMessage;
+import tributary.core.RangeStrategy;
+import tributary.core.RebalancingStrategy;
+import tributary.core.RoundRobinStrategy;
+import tributary.core.Schema;
+import tributary.core.Topic;
+
+/**
+ * Snapshot format: {@code metadata.bin} holds every topic, partition, producer, consumer group and offset, each
+ * topic's hash ring and partition fences, plus the number of segments checkpointed per partition;
+ * {@code data-<generation>/<topic>/<partition>.log} holds the partition's segments back to back. Restoring
+ * memory-maps the log files and rebuilds the segment index from their headers, so no event is decoded until it is
+ * fetched.
+ *
+ * <p>Every save writes its logs into a fresh generation directory and only then replaces {@code metadata.bin} with
+ * an atomic rename, so a crash mid-save leaves the previous snapshot intact, and logs that a restored Tributary has
+ * mapped are never rewritten in place. Older generations are deleted once the new metadata is in place.
+ */
+class TributarySnapshot {
+    static final String METADATA_FILE = "metadata.bin";
+    static final String DATA_DIR = "data";
+    private static final int MAGIC = 0x54524942;
+    private static final int VERSION = 1;
+
+    private TributarySnapshot() {
+    }
+
+    static void save(Tributary tributary, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path generation = Files.createTempDirectory(directory, DATA_DIR + "-");
+        Path metadataFile = directory.resolve(METADATA_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                metadataFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(tributary.getSchemas().size());
+            for (Schema schema : tributary.getSchemas()) {
+                writeString(out, schema.getName());
+                out.writeInt(schema.getFieldCount());
+                for (int i = 0; i < schema.getFieldCount(); i++) {
+                    writeString(out, schema.getFieldNames().get(i));
+                    writeString(out, schema.getFieldType(i).name());
+                }
+            }
+
+            out.writeInt(tributary.getTopics().size());
+            for (Topic<?> topic : tributary.getTopics()) {
+                writeString(out, topic.getId());
+                writeString(out, topic.getType());
+                writeString(out, topic.getCompression() == null ? "" : topic.getCompression().getName());
+                out.writeInt(topic.getBatchSize());
+                out.writeInt(topic.getPartitions().size());
+                for (Partition partition : topic.getPartitions()) {
+                    writePartition(out, directory, generation, topic, partition);
+                }
+                Map<Long, String> nodes = topic.getHashRing().getNodes();
+                out.writeInt(nodes.size());
+                for (Map.Entry<Long, String> node : nodes.entrySet()) {
+                    out.writeLong(node.getKey());
+                    writeString(out, node.getValue());
+                }
+            }
+
+            out.writeInt(tributary.getProducers().size());
+            for (Producer<?> producer : tributary.getProducers()) {
+                writeString(out, producer.getId());
+                writeString(out, producer.getType());
+                writeString(out, producer.getAllocation().getName());
+                out.writeBoolean(producer.isIdempotent());
+            }
+
+            out.writeInt(tributary.getConsumerGroups().size());
+            for (ConsumerGroup group : tributary.getConsumerGroups()) {
+                writeString(out, group.getId());
+                writeString(out, group.getTopic().getId());
+                writeString(out, group.getStrategy().getName());
+                out.writeInt(group.getConsumers().size());
+                for (Consumer consumer : group.getConsumers()) {
+                    writeString(out, consumer.getId());
+                }
+            }
+        }
+        sync(metadataFile);
+        Files.move(metadataFile, directory.resolve(METADATA_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        deleteOldGenerations(directory, generation);
+    }
+
+    private static void writePartition(DataOutputStream out, Path directory, Path generation, Topic<?> topic,
+            Partition partition) throws IOException {
+        String logName = generation.getFileName() + "/" + topic.getId() + "/" + partition.getId() + ".log";
+        Path logFile = directory.resolve(logName);
+        Files.createDirectories(logFile.getParent());
+
+        List<EventBatch> batches = partition.snapshotBatches();
+        try (DataOutputStream log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(logFile)))) {
+            for (EventBatch batch : batches) {
+                batch.writeTo(log);
+            }
+        }
+        sync(logFile);
+
+        writeString(out, partition.getId());
+        writeString(out, logName);
+        out.writeInt(batches.size());
+
+        Map<String, Integer> offsets = partition.getConsumptionIndexes();
+        out.writeInt(offsets.size());
+        for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+
+        Map<Partition, Integer> fences = partition.getFences();
+        out.writeInt(fences.size());
+        for (Map.Entry<Partition, Integer> fence : fences.entrySet()) {
+            writeString(out, fence.getKey().getId());
+            out.writeInt(fence.getValue());
+        }
+    }
+
+    /**
+     * Forces a written file to disk, so the rename that publishes it cannot overtake its contents.
+     */
+    private static void sync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Deletes every log generation but {@code current}. A generation that cannot be deleted is left for the next save
+     * to retry.
+     */
+    private static void deleteOldGenerations(Path directory, Path current) {
+        List<Path> old = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(directory)) {
+            entries.filter(p -> !p.equals(current) && Files.isDirectory(p))
+                    .filter(p -> p.getFileName().toString().startsWith(DATA_DIR + "-"))
+                    .forEach(old::add);
+        } catch (IOException e) {
+            System.err.println("Could not list old snapshot data in " + directory + ": " + e.getMessage());
+            return;
+        }
+        for (Path generation : old) {
+            try (Stream<Path> files = Files.walk(generation)) {
+                List<Path> paths = files.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+                for (Path path : paths) {
+                    Files.delete(path);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not delete old snapshot data " + generation + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Recovers on a pool of its own rather than the common pool, so neither the recovery tasks nor the wait for them
+     * hold up unrelated work, and shuts it down once the snapshot is restored.
+     */
+    static Tributary restore(Path directory) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return recover(directory, pool).awaitCompletion();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads the metadata and creates the producers, then recovers every topic as its own fork-join task, with its
+     * partitions recovered in parallel. A topic (and its consumer groups) is registered as soon as all of its
+     * partitions are recovered, so the returned Tributary serves topics while others are still loading. Topics keep
+     * their saved order whichever finishes first.
+     */
+    static SnapshotRecovery recover(Path directory, ForkJoinPool pool) throws IOException {
+        Tributary tributary = new Tributary();
+        List<TopicMeta> topicMetas = new ArrayList<>();
+        List<GroupMeta> groupMetas = new ArrayList<>();
+        int totalPartitions = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+                directory.resolve(METADATA_FILE))))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != VERSION) {
+                throw new IOException("Not a Tributary snapshot: " + directory);
+            }
+
+            int schemaCount = in.readInt();
+            for (int s = 0; s < schemaCount; s++) {
+                String name = readString(in);
+                Map<String, FieldType> fields = new LinkedHashMap<>();
+                int fieldCount = in.readInt();
+                for (int f = 0; f < fieldCount; f++) {
+                    fields.put(readString(in), FieldType.valueOf(readString(in)));
+                }
+                tributary.registerSchema(name, fields);
+            }
+
+            int topicCount = in.readInt();
+            for (int t = 0; t < topicCount; t++) {
+                TopicMeta topic = new TopicMeta(readString(in), readString(in), readString(in), in.readInt());
+                int partitionCount = in.readInt();
+                for (int p = 0; p < partitionCount; p++) {
+                    topic.partitions.add(readPartition(in));
+                }
+                int nodeCount = in.readInt();
+                for (int n = 0; n < nodeCount; n++) {
+                    topic.ring.put(in.readLong(), readString(in));
+                }
+                totalPartitions += partitionCount;
+                topicMetas.add(topic);
+            }
+
+            int producerCount = in.readInt();
+            for (int i = 0; i < producerCount; i++) {
+                String id = readString(in);
+                String type = readString(in);
+                MessageAllocation allocation = allocationForName(readString(in));
+                boolean idempotent = in.readBoolean();
+                if (allocation != null) {
+                    tributary.createProducer(id, type, allocation, idempotent);
+                }
+            }
+
+            int groupCount = in.readInt();
+            for (int i = 0; i < groupCount; i++) {
+                GroupMeta group = new GroupMeta(readString(in), readString(in), readString(in));
+                int consumerCount = in.readInt();
+                for (int c = 0; c < consumerCount; c++) {
+                    group.consumers.add(readString(in));
+                }
+                groupMetas.add(group);
+            }
+        }
+
+        List<String> topicOrder = new ArrayList<>();
+        for (TopicMeta topic : topicMetas) {
+            topicOrder.add(topic.id);
+        }
+        SnapshotRecovery recovery = new SnapshotRecovery(tributary, topicOrder, totalPartitions);
+        for (TopicMeta topic : topicMetas) {
+            List<GroupMeta> groups = new ArrayList<>();
+            for (GroupMeta group : groupMetas) {
+                if (group.topicId.equals(topic.id)) {
+                    groups.add(group);
+                }
+            }
+            pool.execute(new TopicRecovery(directory, tributary, topic, groups, recovery));
+        }
+        return recovery;
+    }
+
+    private static PartitionMeta readPartition(DataInputStream in) throws IOException {
+        PartitionMeta partition = new PartitionMeta(readString(in), readString(in));
+        partition.checkpointedSegments = in.readInt();
+        int offsetCount = in.readInt();
+        for (int i = 0; i < offsetCount; i++) {
+            partition.offsets.put(readString(in), in.readInt());
+        }
+        int fenceCount = in.readInt();
+        for (int i = 0; i < fenceCount; i++) {
+            partition.fences.put(readString(in), in.readInt());
+        }
+        return partition;
+    }
+
+    /**
+     * Rebuilds a partition's segment index by walking the segment headers of its mapped log. Segments from the last
+     * checkpointed one onwards are checksum-validated, and the log is cut at the first torn or corrupt segment.
+     */
+    private static List<EventBatch> recoverLog(Path logFile, int checkpointedSegments, SnapshotRecovery recovery)
+            throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        List<EventBatch> batches = new ArrayList<>();
+        ByteBuffer buf = mapped.duplicate();
+        // the log starts wherever the partition's oldest retained segment does
+        int expectedOffset = -1;
+        while (buf.hasRemaining()) {
+            EventBatch batch = readSegment(buf, mapped);
+            if (batch == null || batch.getBaseOffset() < 0
+                    || (expectedOffset >= 0 && batch.getBaseOffset() != expectedOffset)) {
+                recovery.segmentTruncated(logFile);
+                break;
+            }
+            if (batches.size() >= checkpointedSegments - 1 && !batch.verify()) {
+                recovery.segmentTruncated(logFile);
+                break;
+            }
+            batches.add(batch);
+            expectedOffset = batch.getBaseOffset() + batch.getCount();
+        }
+        return batches;
+    }
+
+    private static EventBatch readSegment(ByteBuffer buf, ByteBuffer mapped) {
+        try {
+            int baseOffset = buf.getInt();
+            int count = buf.getInt();
+            int codecLength = buf.getInt();
+            if (codecLength < 0 || codecLength > buf.remaining()) {
+                throw new TributaryException(Reason.CORRUPT, "Segment header claims a " + codecLength
+                        + "-byte codec name with " + buf.remaining() + " bytes left");
+            }
+            byte[] codecName = new byte[codecLength];
+            buf.get(codecName);
+            CompressionCodec codec = CompressionCodec.forName(new String(codecName, StandardCharsets.UTF_8));
+            int uncompressedSize = buf.getInt();
+            long checksum = buf.getLong();
+            int storedSize = buf.getInt();
+            int position = buf.position();
+            if (storedSize < 0 || storedSize > buf.remaining()) {
+                return null;
+            }
+            buf.position(position + storedSize);
+            return new EventBatch(baseOffset, count, codec, uncompressedSize, storedSize, checksum,
+                    new MappedSegment(mapped, position, storedSize));
+        } catch (RuntimeException e) {
+            // Torn header (buffer underflow, out-of-range lengths or garbage codec names)
+            return null;
+        }
+    }
+
+    private static MessageAllocation allocationForName(String name) {
+        switch (name) {
+        case "Manual":
+            return new ManualMessage();
+        case "Random":
+            return new RandomMessage();
+        case "KeyHash":
+            return new KeyHashMessage();
+        default:
+            System.err.println("Unknown allocation " + name + " in snapshot");
+            return null;
+        }
+    }
+
+    private static RebalancingStrategy strategyForName(String name) {
+        switch (name) {
+        case "Range":
+            return new RangeStrategy();
+        default:
+            return new RoundRobinStrategy();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static class TopicMeta {
+        private String id;
+        private String type;
+        private String codec;
+        private int batchSize;
+        private List<PartitionMeta> partitions = new ArrayList<>();
+        private Map<Long, String> ring = new TreeMap<>();
+
+        TopicMeta(String id, String type, String codec, int batchSize) {
+            this.id = id;
+            this.type = type;
+            this.codec = codec;
+            this.batchSize = batchSize;
+        }
+    }
+
+    private static class PartitionMeta {
+        private String id;
+        private String logName;
+        private int checkpointedSegments;
+        private Map<String, Integer> offsets = new HashMap<>();
+        private Map<String, Integer> fences = new HashMap<>();
+
+        PartitionMeta(String id, String logName) {
+            this.id = id;
+            this.logName = logName;
+        }
+    }
+
+    private static class GroupMeta {
+        private String id;
+        private String topicId;
+        private String strategy;
+        private List<String> consumers = new ArrayList<>();
+
+        GroupMeta(String id, String topicId, String strategy) {
+            this.id = id;
+            this.topicId = topicId;
+            this.strategy = strategy;
+        }
+    }
+
+    private static class PartitionRecovery extends RecursiveTask<List<EventBatch>> {
+        private static final long serialVersionUID = 1L;
+
+        private Path directory;
+        private PartitionMeta meta;
+        private SnapshotRecovery recovery;
+
+        PartitionRecovery(Path directory, PartitionMeta meta, SnapshotRecovery recovery) {
+            this.directory = directory;
+            this.meta = meta;
+            this.recovery = recovery;
+        }
+
+        @Override
+        protected List<EventBatch> compute() {
+            try {
+                List<EventBatch> batches = recoverLog(directory.resolve(meta.logName), meta.checkpointedSegments,
+                        recovery);
+                recovery.partitionRecovered();
+                return batches;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class TopicRecovery extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Path directory;
+        private Tributary tributary;
+        private TopicMeta meta;
+        private List<GroupMeta> groups;
+        private SnapshotRecovery recovery;
+
+        TopicRecovery(Path directory, Tributary tributary, TopicMeta meta, List<GroupMeta> groups,
+                SnapshotRecovery recovery) {
+            this.directory = directory;
+            this.tributary = tributary;
+            this.meta = meta;
+            this.groups = groups;
+            this.recovery = recovery;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                List<PartitionRecovery> tasks = new ArrayList<>();
+                for (PartitionMeta partition : meta.partitions) {
+                    tasks.add(new PartitionRecovery(directory, partition, recovery));
+                }
+                invokeAll(tasks);
+
+                Topic<?> topic = tributary.buildTopic(meta.id, meta.type);
+                if (!meta.codec.isEmpty()) {
+                    topic.setCompression(CompressionCodec.forName(meta.codec), meta.batchSize);
+                }
+                for (int i = 0; i < tasks.size(); i++) {
+                    topic.createPartition(meta.partitions.get(i).id);
+                    topic.getPartition(meta.partitions.get(i).id).restore(tasks.get(i).join());
+                }
+                topic.getHashRing().setNodes(meta.ring);
+                for (PartitionMeta partition : meta.partitions) {
+                    for (Map.Entry<String, Integer> fence : partition.fences.entrySet()) {
+                        topic.getPartition(partition.id).addFence(topic.getPartition(fence.getKey()),
+                                fence.getValue());
+                    }
+                }
+                // offsets are in place before the topic is published, so no group reads from offset 0 meanwhile
+                for (PartitionMeta partition : meta.partitions) {
+                    for (Map.Entry<String, Integer> entry : partition.offsets.entrySet()) {
+                        Partition p = topic.getPartition(partition.id);
+                        p.setConsumptionIndex(entry.getKey(), Math.min(entry.getValue(), p.getSize()));
+                    }
+                }
+                recovery.register(topic);
+
+                for (GroupMeta group : groups) {
+                    tributary.createConsumerGroup(group.id, group.topicId, strategyForName(group.strategy));
+                    for (String consumer : group.consumers) {
+                        tributary.createConsumer(consumer, group.id);
+                    }
+                }
+                recovery.topicRecovered(meta.id);
+            } catch (RuntimeException e) {
+                recovery.topicFailed(meta.id, e);
+            }
+        }
+    }
+
+    private static class MappedSegment implements BatchSource {
+        private ByteBuffer mapped;
+        private int position;
+        private int length;
+
+        MappedSegment(ByteBuffer mapped, int position, int length) {
+            this.mapped = mapped;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public byte[] read() {
+            byte[] bytes = new byte[length];
+            mapped.duplicate().position(position).get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package tributary.cli;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Picks event keys for the load generator from a fixed key space.
+ */
+public abstract class KeyDistribution {
+    private final int keyCount;
+
+    protected KeyDistribution(int keyCount) {
+        this.keyCount = keyCount;
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public String nextKey(Random random) {
+        return "key-" + nextIndex(random);
+    }
+
+    protected abstract int nextIndex(Random random);
+
+    public static KeyDistribution uniform(int keyCount) {
+        return new KeyDistribution(keyCount) {
+            @Override
+            protected int nextIndex(Random random) {
+                return random.nextInt(keyCount);
+            }
+        };
+    }
+
+    /**
+     * Key {@code i} is drawn with probability proportional to {@code 1 / (i + 1)^exponent}, so a few hot keys
+     * dominate as they do in production traffic.
+     */
+    public static KeyDistribution zipf(int keyCount, double exponent) {
+        double[] cumulative = new double[keyCount];
+        double total = 0;
+        for (int i = 0; i < keyCount; i++) {
+            total += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = total;
+        }
+        double norm = total;
+        return new KeyDistribution(keyCount) {
+            @Override
+            protected int nextIndex(Random random) {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * norm);
+                return Math.min(index < 0 ? -index - 1 : index, keyCount - 1);
+            }
+        };
+    }
+}
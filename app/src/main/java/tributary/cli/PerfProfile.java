@@ -0,0 +1,124 @@
+package tributary.cli;
+
+import org.json.JSONObject;
+
+/**
+ * What the load generator sets up and how hard it drives it. Every setting has a default so a profile file only
+ * needs the ones it changes.
+ */
+public class PerfProfile {
+    private String topic = "perf";
+    private int partitions = 4;
+    private int producers = 2;
+    private int consumers = 2;
+    private double rate = 10_000;
+    private boolean openLoop = false;
+    private long durationMs = 10_000;
+    private long reportIntervalMs = 1_000;
+    private String keyDistribution = "uniform";
+    private int keyCount = 1_000;
+    private double zipfExponent = 1.1;
+    private int valueSize = 100;
+    private String compression = "none";
+
+    public static PerfProfile fromJson(String json) {
+        JSONObject o = new JSONObject(json);
+        PerfProfile p = new PerfProfile();
+        p.topic = o.optString("topic", p.topic);
+        p.partitions = o.optInt("partitions", p.partitions);
+        p.producers = o.optInt("producers", p.producers);
+        p.consumers = o.optInt("consumers", p.consumers);
+        p.rate = o.optDouble("rate", p.rate);
+        p.openLoop = "open".equals(o.optString("mode", "fixed"));
+        p.durationMs = o.optLong("durationMs", p.durationMs);
+        p.reportIntervalMs = o.optLong("reportIntervalMs", p.reportIntervalMs);
+        JSONObject keys = o.optJSONObject("keys");
+        if (keys != null) {
+            p.keyDistribution = keys.optString("distribution", p.keyDistribution);
+            p.keyCount = keys.optInt("count", p.keyCount);
+            p.zipfExponent = keys.optDouble("exponent", p.zipfExponent);
+        }
+        p.valueSize = o.optInt("valueSize", p.valueSize);
+        p.compression = o.optString("compression", p.compression);
+        return p;
+    }
+
+    public KeyDistribution createKeyDistribution() {
+        if ("zipf".equals(keyDistribution)) {
+            return KeyDistribution.zipf(keyCount, zipfExponent);
+        }
+        return KeyDistribution.uniform(keyCount);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int getProducers() {
+        return producers;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    /**
+     * @return events per second per producer, or 0 to send as fast as possible
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Open-loop producers send on a fixed schedule whether or not earlier sends have finished, and latency is
+     * measured from the scheduled time, so a stall shows up in the percentiles instead of lowering the load.
+     */
+    public boolean isOpenLoop() {
+        return openLoop;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public long getReportIntervalMs() {
+        return reportIntervalMs;
+    }
+
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public PerfProfile setRate(double rate, boolean openLoop) {
+        this.rate = rate;
+        this.openLoop = openLoop;
+        return this;
+    }
+
+    public PerfProfile setDuration(long durationMs, long reportIntervalMs) {
+        this.durationMs = durationMs;
+        this.reportIntervalMs = reportIntervalMs;
+        return this;
+    }
+
+    public PerfProfile setClients(int partitions, int producers, int consumers) {
+        this.partitions = partitions;
+        this.producers = producers;
+        this.consumers = consumers;
+        return this;
+    }
+
+    public PerfProfile setKeys(String distribution, int keyCount) {
+        this.keyDistribution = distribution;
+        this.keyCount = keyCount;
+        return this;
+    }
+}
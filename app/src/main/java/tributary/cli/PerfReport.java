@@ -0,0 +1,134 @@
+package tributary.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import tributary.core.LatencyHistogram;
+
+/**
+ * Per-interval throughput and end-to-end latency of a load run, plus a summary row over the whole run.
+ */
+public class PerfReport {
+    private static final String CSV_HEADER = "elapsed_s,produced,consumed,produce_rate,consume_rate,p50_ms,p99_ms,"
+            + "p999_ms,max_ms";
+
+    private final List<Row> rows = new ArrayList<>();
+    private Row summary;
+
+    public void addInterval(double elapsedSeconds, long produced, long consumed, double intervalSeconds,
+            LatencyHistogram latencies) {
+        rows.add(new Row(elapsedSeconds, produced, consumed, intervalSeconds, latencies));
+    }
+
+    public void setSummary(double elapsedSeconds, long produced, long consumed, LatencyHistogram latencies) {
+        summary = new Row(elapsedSeconds, produced, consumed, elapsedSeconds, latencies);
+    }
+
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    public Row getSummary() {
+        return summary;
+    }
+
+    public String toCsv() {
+        StringBuilder sb = new StringBuilder(CSV_HEADER).append('\n');
+        for (Row row : rows) {
+            sb.append(row.toCsv()).append('\n');
+        }
+        if (summary != null) {
+            sb.append(summary.toCsv()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public String toJson() {
+        JSONObject json = new JSONObject();
+        JSONArray intervals = new JSONArray();
+        for (Row row : rows) {
+            intervals.put(row.toJson());
+        }
+        json.put("intervals", intervals);
+        if (summary != null) {
+            json.put("summary", summary.toJson());
+        }
+        return json.toString(2);
+    }
+
+    public void writeCsv(Path file) throws IOException {
+        Files.writeString(file, toCsv());
+    }
+
+    public void writeJson(Path file) throws IOException {
+        Files.writeString(file, toJson());
+    }
+
+    public static class Row {
+        private final double elapsedSeconds;
+        private final long produced;
+        private final long consumed;
+        private final double produceRate;
+        private final double consumeRate;
+        private final double p50Ms;
+        private final double p99Ms;
+        private final double p999Ms;
+        private final double maxMs;
+
+        Row(double elapsedSeconds, long produced, long consumed, double seconds, LatencyHistogram latencies) {
+            this.elapsedSeconds = elapsedSeconds;
+            this.produced = produced;
+            this.consumed = consumed;
+            this.produceRate = seconds > 0 ? produced / seconds : 0;
+            this.consumeRate = seconds > 0 ? consumed / seconds : 0;
+            this.p50Ms = latencies.getValueAtPercentile(50) / 1e6;
+            this.p99Ms = latencies.getValueAtPercentile(99) / 1e6;
+            this.p999Ms = latencies.getValueAtPercentile(99.9) / 1e6;
+            this.maxMs = latencies.getMax() / 1e6;
+        }
+
+        public long getProduced() {
+            return produced;
+        }
+
+        public long getConsumed() {
+            return consumed;
+        }
+
+        public double getP99Ms() {
+            return p99Ms;
+        }
+
+        String toCsv() {
+            return String.format("%.1f,%d,%d,%.0f,%.0f,%.3f,%.3f,%.3f,%.3f", elapsedSeconds, produced, consumed,
+                    produceRate, consumeRate, p50Ms, p99Ms, p999Ms, maxMs);
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("elapsedSeconds", elapsedSeconds);
+            json.put("produced", produced);
+            json.put("consumed", consumed);
+            json.put("produceRate", produceRate);
+            json.put("consumeRate", consumeRate);
+            json.put("p50Ms", p50Ms);
+            json.put("p99Ms", p99Ms);
+            json.put("p999Ms", p999Ms);
+            json.put("maxMs", maxMs);
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%6.1fs  produced %8d (%8.0f/s)  consumed %8d (%8.0f/s)  p50 %8.3f ms  p99 %8.3f ms"
+                    + "  p999 %8.3f ms  max %8.3f ms", elapsedSeconds, produced, produceRate, consumed, consumeRate,
+                    p50Ms, p99Ms, p999Ms, maxMs);
+        }
+    }
+}
@@ -3,21 +3,34 @@ package tributary.cli;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 import org.json.JSONObject;
 
 import tributary.api.Tributary;
+import tributary.api.TributaryAsync;
 import tributary.core.*;
 
 public class TributaryCLI {
+    static final int DEFAULT_BATCH_SIZE = 64;
+
     private final Tributary tributary;
+    private final TributaryAsync async;
     private final Scanner scanner;
 
     public TributaryCLI() {
-        this.tributary = new Tributary();
+        this(new Tributary());
+    }
+
+    public TributaryCLI(Tributary tributary) {
+        this.tributary = tributary;
+        this.async = new TributaryAsync(tributary);
         this.scanner = new Scanner(System.in);
     }
 
@@ -52,8 +65,27 @@ public class TributaryCLI {
         case "parallel":
             handleParallelCommand(inputs);
             break;
+        case "expand":
+            handleExpand(inputs);
+            break;
+        case "split":
+            handleSplit(inputs);
+            break;
+        case "snapshot":
+            handleSnapshot(inputs);
+            break;
+        case "heartbeat":
+            handleHeartbeat(inputs);
+            break;
+        case "replay":
+            handleReplay(inputs);
+            break;
+        case "process":
+            handleProcess(inputs);
+            break;
         case "exit":
             System.out.println("Exiting CLI.");
+            tributary.close();
             System.exit(0);
             break;
         default:
@@ -80,7 +112,7 @@ public class TributaryCLI {
     }
 
     private void handleParallelProduce(String[] inputs) {
-        List<Thread> threads = new ArrayList<>();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
 
         for (int i = 2; i < inputs.length; i += 3) {
             String producerId = inputs[i];
@@ -89,23 +121,15 @@ public class TributaryCLI {
             Event<?> e = convertJSONtoEvent(event);
 
             if (e != null) {
-                Thread thread = new Thread(() -> {
-                    tributary.produceEvent(producerId, topicId, e);
-                });
-                thread.start();
-                threads.add(thread);
+                pending.add(async.produce(producerId, topicId, e).exceptionally(ex -> {
+                    System.err.println(ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage());
+                    return null;
+                }));
             }
         }
 
-        // Wait for all threads to complete
-        for (Thread thread : threads) {
-            try {
-                thread.join(); // Wait for each thread to complete
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println("Thread interrupted while waiting for completion.");
-            }
-        }
+        // Wait for every send to complete
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
     }
 
     private void handleParallelConsume(String[] inputs) {
@@ -133,6 +157,35 @@ public class TributaryCLI {
         }
     }
 
+    private void handleExpand(String[] inputs) {
+        if (inputs.length < 4) {
+            System.out.println("Usage: expand topic <topicid> <new partitionid>");
+            return;
+        }
+        tributary.expandPartitions(inputs[2], inputs[3]);
+    }
+
+    private void handleSplit(String[] inputs) {
+        if (inputs.length < 5) {
+            System.out.println("Usage: split partition <topicid> <partitionid> <new partitionid>");
+            return;
+        }
+        tributary.splitPartition(inputs[2], inputs[3], inputs[4]);
+    }
+
+    private void handleSnapshot(String[] inputs) {
+        if (inputs.length < 2) {
+            System.out.println("Usage: snapshot <directory>");
+            return;
+        }
+        try {
+            tributary.saveSnapshot(Paths.get(inputs[1]));
+            System.out.println("Snapshot saved to " + inputs[1]);
+        } catch (IOException e) {
+            System.err.println("Could not save snapshot: " + e.getMessage());
+        }
+    }
+
     private void handlePlayback(String[] inputs) {
         String consumerId = inputs[1];
         String partitionId = inputs[2];
@@ -140,6 +193,44 @@ public class TributaryCLI {
         tributary.playback(consumerId, partitionId, offset);
     }
 
+    private void handleReplay(String[] inputs) {
+        if (inputs.length < 5) {
+            System.out.println("Usage: replay <consumerid> <partitionid> <from offset> <to offset> [ordered]");
+            return;
+        }
+        boolean ordered = inputs.length > 5 && inputs[5].equals("ordered");
+        long start = System.nanoTime();
+        long replayed = tributary.bulkReplay(inputs[1], inputs[2], Integer.parseInt(inputs[3]),
+                Integer.parseInt(inputs[4]), (consumerId, partitionId, event) -> {
+                    synchronized (System.out) {
+                        event.print();
+                    }
+                }, ordered);
+        System.out.println("Replayed " + replayed + " events in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void handleProcess(String[] inputs) {
+        if (inputs.length < 4) {
+            System.out.println("Usage: process <consumerid> <partitionid> <number of events>");
+            return;
+        }
+        int dispatched = tributary.processEvents(inputs[1], inputs[2], Integer.parseInt(inputs[3]));
+        System.out.println("Dispatched " + dispatched + " events to consumer " + inputs[1] + "'s workers");
+    }
+
+    private void handleHeartbeat(String[] inputs) {
+        if (inputs.length < 2) {
+            System.out.println("Usage: heartbeat <consumerid>");
+            return;
+        }
+        int generation = tributary.heartbeat(inputs[1]);
+        if (generation < 0) {
+            System.err.println("Consumer " + inputs[1] + " has no live session");
+            return;
+        }
+        System.out.println("Consumer " + inputs[1] + " heartbeat, generation " + generation);
+    }
+
     private void handleDelete(String[] inputs) {
         String groupId = inputs[2];
         String consumerId = inputs[3];
@@ -147,6 +238,78 @@ public class TributaryCLI {
     }
 
     private void handleSet(String[] inputs) {
+        if (inputs.length > 1 && inputs[1].equals("compression")) {
+            handleSetCompression(inputs);
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("capacity")) {
+            handleSetCapacity(inputs);
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("prefetch")) {
+            if (inputs.length < 5) {
+                System.out.println("Usage: set prefetch <consumerid> <max events> <max bytes>");
+                return;
+            }
+            tributary.setPrefetch(inputs[2], Integer.parseInt(inputs[3]), Long.parseLong(inputs[4]));
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("quota")) {
+            handleSetQuota(inputs);
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("history")) {
+            if (inputs.length < 5) {
+                System.out.println("Usage: set history <consumerid> <max events> <max bytes>");
+                return;
+            }
+            tributary.setConsumerHistory(inputs[2], Integer.parseInt(inputs[3]), Long.parseLong(inputs[4]));
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("memory")) {
+            if (inputs.length < 4) {
+                System.out.println("Usage: set memory <budget bytes> <spill directory> [hot events]");
+                return;
+            }
+            if (inputs.length > 4) {
+                tributary.setMemoryBudget(Long.parseLong(inputs[2]), Paths.get(inputs[3]), Integer.parseInt(inputs[4]));
+            } else {
+                tributary.setMemoryBudget(Long.parseLong(inputs[2]), Paths.get(inputs[3]));
+            }
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("tracing")) {
+            if (inputs.length < 4) {
+                System.out.println("Usage: set tracing <producerid> <sample rate>");
+                return;
+            }
+            tributary.setTraceSampling(inputs[2], Double.parseDouble(inputs[3]));
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("session")) {
+            if (inputs.length < 4) {
+                System.out.println("Usage: set session <groupid> <timeout ms>");
+                return;
+            }
+            tributary.setSessionTimeout(inputs[2], Long.parseLong(inputs[3]));
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("parallelism")) {
+            if (inputs.length < 5) {
+                System.out.println("Usage: set parallelism <consumerid> <workers> <max in flight>");
+                return;
+            }
+            tributary.setParallelProcessing(inputs[2], Integer.parseInt(inputs[3]), Integer.parseInt(inputs[4]));
+            return;
+        }
+        if (inputs.length > 1 && inputs[1].equals("merged")) {
+            if (inputs.length < 5) {
+                System.out.println("Usage: set merged <groupid> <lookahead> <max delay ms>");
+                return;
+            }
+            tributary.enableMergedRead(inputs[2], Integer.parseInt(inputs[3]), Long.parseLong(inputs[4]));
+            return;
+        }
         if (inputs.length < 3) {
             System.out.println("Usage: set consumergroup <id> <rebalancing strategy>");
             return;
@@ -166,7 +329,95 @@ public class TributaryCLI {
         }
     }
 
+    private void handleSetQuota(String[] inputs) {
+        if (inputs.length < 6) {
+            System.out.println("Usage: set quota <producer|group> <id> <events/s> <bytes/s>");
+            return;
+        }
+        double events = Double.parseDouble(inputs[4]);
+        double bytes = Double.parseDouble(inputs[5]);
+        switch (inputs[2]) {
+        case "producer":
+            tributary.setProducerQuota(inputs[3], events, bytes);
+            break;
+        case "group":
+            tributary.setGroupQuota(inputs[3], events, bytes);
+            break;
+        default:
+            System.err.println("quotas apply to a producer or a group");
+            break;
+        }
+    }
+
+    private void handleSetCompression(String[] inputs) {
+        if (inputs.length < 4) {
+            System.out.println("Usage: set compression <topicid> <codec> [batch size]");
+            return;
+        }
+        String topicId = inputs[2];
+        int batchSize;
+        try {
+            batchSize = inputs.length > 4 ? Integer.parseInt(inputs[4]) : DEFAULT_BATCH_SIZE;
+        } catch (NumberFormatException e) {
+            System.err.println("invalid batch size: " + inputs[4]);
+            return;
+        }
+        switch (inputs[3]) {
+        case "deflate":
+            tributary.setTopicCompression(topicId, new DeflateCodec(), batchSize);
+            break;
+        case "none":
+            tributary.setTopicCompression(topicId, null, batchSize);
+            break;
+        default:
+            System.err.println("unknown compression codec");
+            break;
+        }
+    }
+
+    private void handleSetCapacity(String[] inputs) {
+        if (inputs.length < 6) {
+            System.out.println("Usage: set capacity <topicid> <max events> <max bytes> <block|fail|drop> [timeout ms]");
+            return;
+        }
+        OverflowPolicy policy;
+        switch (inputs[5]) {
+        case "block":
+            policy = OverflowPolicy.BLOCK;
+            break;
+        case "fail":
+            policy = OverflowPolicy.FAIL;
+            break;
+        case "drop":
+            policy = OverflowPolicy.DROP_OLDEST;
+            break;
+        default:
+            System.err.println("unknown overflow policy");
+            return;
+        }
+        long timeout = inputs.length > 6 ? Long.parseLong(inputs[6]) : 0;
+        tributary.setTopicCapacity(inputs[2],
+                new CapacityLimit(Integer.parseInt(inputs[3]), Long.parseLong(inputs[4]), policy, timeout));
+    }
+
     private void produceEvent(String[] inputs) {
+        if (inputs[1].equals("events")) {
+            produceEvents(inputs);
+            return;
+        }
+        if (inputs[1].equals("delayed")) {
+            if (inputs.length < 6) {
+                System.out.println("Usage: produce delayed <producerid> <topicid> <event> <delay ms>");
+                return;
+            }
+            Event<?> e = convertJSONtoEvent(inputs[4]);
+            if (e != null) {
+                tributary.produceDelayed(inputs[2], inputs[3], e, Long.parseLong(inputs[5]));
+            } else {
+                System.err.println("error in produce event");
+            }
+            return;
+        }
         String producerId = inputs[2];
         String topicId = inputs[3];
         String event = inputs[4];
@@ -178,13 +429,77 @@ public class TributaryCLI {
         }
     }
 
+    private void produceEvents(String[] inputs) {
+        String producerId = inputs[2];
+        String topicId = inputs[3];
+        List<Event<?>> events = new ArrayList<>();
+        for (int i = 4; i < inputs.length; i++) {
+            Event<?> e = convertJSONtoEvent(inputs[i]);
+            if (e == null) {
+                System.err.println("error in produce events");
+                return;
+            }
+            events.add(e);
+        }
+        tributary.produceEvents(producerId, topicId, events);
+    }
+
     private void consumeEvents(String[] inputs) {
+        if (inputs.length > 1 && inputs[1].equals("merged")) {
+            if (inputs.length < 4) {
+                System.out.println("Usage: consume merged <groupid> <number of events>");
+                return;
+            }
+            for (Event<?> e : tributary.pollMerged(inputs[2], Integer.parseInt(inputs[3]))) {
+                e.print();
+            }
+            return;
+        }
         String consumerId = inputs[2];
         String partitionId = inputs[3];
         int numEvents = Integer.valueOf(inputs[4]);
+        if (inputs.length > 5) {
+            EventFilter filter = parseFilter(inputs[5]);
+            if (filter != null) {
+                tributary.consumeEvents(consumerId, partitionId, numEvents, filter);
+            }
+            return;
+        }
         tributary.consumeEvents(consumerId, partitionId, numEvents);
     }
 
+    private EventFilter parseFilter(String spec) {
+        String usage = "Invalid filter. Use key=<key>, type=<type>, id=<prefix> or range=<min>:<max>";
+        String[] parts = spec.split("=", 2);
+        if (parts.length < 2) {
+            System.err.println(usage);
+            return null;
+        }
+        switch (parts[0]) {
+        case "key":
+            return EventFilter.byKey(parts[1]);
+        case "type":
+            return EventFilter.byType(parts[1]);
+        case "id":
+            return EventFilter.byIdPrefix(parts[1]);
+        case "range":
+            String[] bounds = parts[1].split(":", -1);
+            if (bounds.length != 2) {
+                System.err.println(usage);
+                return null;
+            }
+            try {
+                return EventFilter.valueBetween(Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1]));
+            } catch (NumberFormatException e) {
+                System.err.println(usage);
+                return null;
+            }
+        default:
+            System.err.println("Unknown filter field: " + parts[0]);
+            return null;
+        }
+    }
+
     private void handleCreate(String[] tokens) {
         if (tokens.length < 3) {
             System.out.println("Usage: create <entity> <id> <type>");
@@ -195,12 +510,19 @@ public class TributaryCLI {
         String arg1 = tokens[2];
         String arg2 = tokens[3];
         String arg3 = null;
+        String arg4 = null;
 
         if (tokens.length > 4) {
             arg3 = tokens[4];
         }
+        if (tokens.length > 5) {
+            arg4 = tokens[5];
+        }
 
         switch (entity) {
+        case "schema":
+            createSchema(tokens);
+            break;
         case "topic":
             createTopic(arg1, arg2);
             break;
@@ -214,7 +536,7 @@ public class TributaryCLI {
             createConsumer(arg1, arg2);
             break;
         case "producer":
-            createProducer(arg1, arg2, arg3);
+            createProducer(arg1, arg2, arg3, "idempotent".equals(arg4));
             break;
         default:
             break;
@@ -236,11 +558,46 @@ public class TributaryCLI {
         case "consumergroup":
             tributary.showConsumerGroup(id);
             break;
+        case "latency":
+            if (tokens.length < 4) {
+                System.out.println("Usage: show latency <topic|group> <id>");
+                return;
+            }
+            LatencyStats latency = id.equals("group") ? tributary.getGroupLatency(tokens[3])
+                    : tributary.getTopicLatency(tokens[3]);
+            System.out.println(latency == null ? "No " + id + " " + tokens[3] : latency);
+            break;
+        case "key":
+            if (tokens.length < 4) {
+                System.out.println("Usage: show key <topicid> <key>");
+                return;
+            }
+            Event<?> latest = tributary.lookupKey(id, tokens[3]);
+            if (latest == null) {
+                System.out.println("No value for key " + tokens[3] + " in topic " + id);
+            } else {
+                latest.print();
+            }
+            break;
         default:
             System.out.println("Unknown entity: " + entity);
         }
     }
 
+    private void createSchema(String[] tokens) {
+        Map<String, FieldType> fields = new LinkedHashMap<>();
+        for (int i = 3; i < tokens.length; i++) {
+            String[] field = tokens[i].split(":", 2);
+            try {
+                fields.put(field[0], FieldType.forName(field[1]));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("Invalid field " + tokens[i] + ". Use <name>:<string|integer|long|double|boolean>");
+                return;
+            }
+        }
+        tributary.registerSchema(tokens[2], fields);
+    }
+
     private void createTopic(String id, String type) {
         tributary.createTopic(id, type);
     }
@@ -269,7 +626,7 @@ public class TributaryCLI {
         tributary.createConsumerGroup(groupId, id, strategy);
     }
 
-    private void createProducer(String id, String type, String allocation) {
+    private void createProducer(String id, String type, String allocation, boolean idempotent) {
         MessageAllocation strategy = null;
         switch (allocation) {
         case "random":
@@ -278,11 +635,14 @@ public class TributaryCLI {
         case "manual":
             strategy = new ManualMessage();
             break;
+        case "hash":
+            strategy = new KeyHashMessage();
+            break;
         default:
             System.err.println("unknown rebalancing strategy");
             break;
         }
-        tributary.createProducer(id, type, strategy);
+        tributary.createProducer(id, type, strategy, idempotent);
     }
 
     public Event<?> convertJSONtoEvent(String file) {
@@ -302,19 +662,29 @@ public class TributaryCLI {
         String id = headersJson.getString("id");
         String payload = headersJson.getString("payload");
         String key = jsonObject.getString("key");
-        String value = jsonObject.getString("value");
 
         Event<?> event = null;
         switch (payload) {
         case "string":
-            event = new Event<String>(id, payload, key, value);
+            event = new Event<String>(id, payload, key, jsonObject.getString("value"));
             break;
         case "integer":
-            event = new Event<Integer>(id, payload, key, Integer.parseInt(value));
+            event = new Event<Integer>(id, payload, key, Integer.parseInt(jsonObject.getString("value")));
             break;
         default:
-            System.err.println("Invalid type of payload");
-            return null;
+            Schema schema = tributary.getSchema(payload);
+            if (schema == null) {
+                System.err.println("Invalid type of payload");
+                return null;
+            }
+            JSONObject fields = jsonObject.getJSONObject("value");
+            Object[] values = new Object[schema.getFieldCount()];
+            for (int i = 0; i < values.length; i++) {
+                String name = schema.getFieldNames().get(i);
+                values[i] = fields.has(name) ? schema.getFieldType(i).parse(String.valueOf(fields.get(name))) : null;
+            }
+            event = new Event<RecordValue>(id, payload, key, schema.record(values));
+            break;
         }
 
         return event;
@@ -322,20 +692,42 @@ public class TributaryCLI {
 
     private void printHelp() {
         System.out.println("Available commands:");
-        System.out.println("create topic <id> <type>");
+        System.out.println("create schema <name> <field>:<type> ...");
+        System.out.println("create topic <id> <string|integer|schema name>");
         System.out.println("create partition <id> <topicid>");
         System.out.println("create consumergroup <id> <topicid> <rebalancing strategy>");
         System.out.println("create consumer <id> <groupid>");
-        System.out.println("create producer <id> <type> <message allocation strategy>");
+        System.out.println("create producer <id> <type> <random|manual|hash> [idempotent]");
         System.out.println("delete consumer <groupid> <id>");
+        System.out.println("expand topic <topicid> <new partitionid>");
+        System.out.println("split partition <topicid> <partitionid> <new partitionid>");
         System.out.println("produce event <producerid> <topicid> <event>");
-        System.out.println("consume events <consumerid> <partitionid> <number of events>");
+        System.out.println("produce events <producerid> <topicid> <event> ...");
+        System.out.println("produce delayed <producerid> <topicid> <event> <delay ms>");
+        System.out.println("consume events <consumerid> <partitionid> <number of events> [filter]");
+        System.out.println("consume merged <groupid> <number of events>");
         System.out.println("show topic <topicid>");
         System.out.println("show consumergroup <groupid>");
+        System.out.println("show key <topicid> <key>");
+        System.out.println("show latency <topic|group> <id>");
         System.out.println("set consumergroup <groupid> <rebalancing>");
+        System.out.println("set compression <topicid> <deflate|none> [batch size]");
+        System.out.println("set capacity <topicid> <max events> <max bytes> <block|fail|drop> [timeout ms]");
+        System.out.println("set prefetch <consumerid> <max events> <max bytes>");
+        System.out.println("set history <consumerid> <max events> <max bytes>");
+        System.out.println("set quota <producer|group> <id> <events/s> <bytes/s>");
+        System.out.println("set session <groupid> <timeout ms>");
+        System.out.println("set merged <groupid> <lookahead> <max delay ms>");
+        System.out.println("set parallelism <consumerid> <workers> <max in flight>");
+        System.out.println("set tracing <producerid> <sample rate>");
+        System.out.println("set memory <budget bytes> <spill directory> [hot events]");
+        System.out.println("heartbeat <consumerid>");
         System.out.println("parallel produce (<producerid> <topicid> <event>) ...");
         System.out.println("parallel consume <consumerid> <partitionid> ...");
         System.out.println("playback <consumerid> <partitionid> <offset>");
+        System.out.println("replay <consumerid> <partitionid> <from offset> <to offset> [ordered]");
+        System.out.println("process <consumerid> <partitionid> <number of events>");
+        System.out.println("snapshot <directory>");
 
         System.out.println("exit - Exit the CLI.");
     }
@@ -351,7 +743,16 @@ public class TributaryCLI {
     public static void main(String[] args) {
         System.out.println("Welcome to the Tributary CLI!");
         System.out.println("Type 'help' for a list of commands.");
-        TributaryCLI tributaryCLI = new TributaryCLI();
+        Tributary tributary = new Tributary();
+        if (args.length > 0) {
+            try {
+                tributary = Tributary.restoreSnapshot(Paths.get(args[0]));
+                System.out.println("Restored snapshot from " + args[0]);
+            } catch (IOException e) {
+                System.err.println("Could not restore snapshot: " + e.getMessage());
+            }
+        }
+        TributaryCLI tributaryCLI = new TributaryCLI(tributary);
         tributaryCLI.takeInputs();
     }
 }
@@ -0,0 +1,223 @@
+package tributary.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import tributary.api.Tributary;
+import tributary.core.Consumer;
+import tributary.core.DeflateCodec;
+import tributary.core.DeliveryHandler;
+import tributary.core.Event;
+import tributary.core.KeyHashMessage;
+import tributary.core.LatencyHistogram;
+import tributary.core.Partition;
+import tributary.core.RoundRobinStrategy;
+
+/**
+ * Load generator: builds a topic, producers and a consumer group from a profile inside an in-process Tributary,
+ * drives them for the profile's duration and reports throughput and end-to-end latency per interval.
+ *
+ * <p>Usage: {@code TributaryPerf [profile.json] [--csv <file>] [--json <file>]}
+ */
+public class TributaryPerf {
+    private static final String GROUP_ID = "perf-group";
+    private static final int POLL_BATCH = 256;
+    private static final long DRAIN_TIMEOUT_MS = 2_000;
+    private static final DeliveryHandler DISCARD = (consumerId, partitionId, event) -> { };
+
+    private final PerfProfile profile;
+    private final KeyDistribution keys;
+    private final Tributary tributary = new Tributary();
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicReference<LatencyHistogram> interval = new AtomicReference<>(new LatencyHistogram());
+    private final LatencyHistogram total = new LatencyHistogram();
+    private volatile boolean producing = true;
+    private volatile boolean consuming = true;
+
+    public TributaryPerf(PerfProfile profile) {
+        this.profile = profile;
+        this.keys = profile.createKeyDistribution();
+    }
+
+    public PerfReport run() throws InterruptedException {
+        PerfReport report = new PerfReport();
+        setUp();
+        List<Thread> producerThreads = new ArrayList<>();
+        List<Thread> consumerThreads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < profile.getProducers(); i++) {
+            producerThreads.add(startThread("perf-producer-" + i, produceLoop("perf-producer-" + i, start)));
+        }
+        for (int i = 0; i < profile.getConsumers(); i++) {
+            consumerThreads.add(startThread("perf-consumer-" + i, consumeLoop("perf-consumer-" + i)));
+        }
+
+        long lastProduced = 0;
+        long lastConsumed = 0;
+        long elapsedMs = 0;
+        while (elapsedMs < profile.getDurationMs()) {
+            long step = Math.min(profile.getReportIntervalMs(), profile.getDurationMs() - elapsedMs);
+            Thread.sleep(step);
+            elapsedMs += step;
+            long p = produced.get();
+            long c = consumed.get();
+            report.addInterval(elapsedMs / 1000.0, p - lastProduced, c - lastConsumed, step / 1000.0,
+                    interval.getAndSet(new LatencyHistogram()));
+            System.out.println(report.getRows().get(report.getRows().size() - 1));
+            lastProduced = p;
+            lastConsumed = c;
+        }
+
+        producing = false;
+        for (Thread t : producerThreads) {
+            t.join();
+        }
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (consumed.get() < produced.get() && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(1);
+        }
+        consuming = false;
+        for (Thread t : consumerThreads) {
+            t.join();
+        }
+        drainRemaining();
+        report.setSummary((System.nanoTime() - start) / 1e9, produced.get(), consumed.get(), total);
+        System.out.println("total " + report.getSummary());
+        return report;
+    }
+
+    private void setUp() {
+        tributary.setQuiet(true);
+        String topic = profile.getTopic();
+        tributary.createTopic(topic, "string");
+        for (int i = 0; i < profile.getPartitions(); i++) {
+            tributary.createPartition("p" + i, topic);
+        }
+        if ("deflate".equals(profile.getCompression())) {
+            tributary.setTopicCompression(topic, new DeflateCodec(), TributaryCLI.DEFAULT_BATCH_SIZE);
+        }
+        for (int i = 0; i < profile.getProducers(); i++) {
+            tributary.createProducer("perf-producer-" + i, "string", new KeyHashMessage());
+        }
+        tributary.createConsumerGroup(GROUP_ID, topic, new RoundRobinStrategy());
+        for (int i = 0; i < profile.getConsumers(); i++) {
+            tributary.createConsumer("perf-consumer-" + i, GROUP_ID);
+            tributary.setDeliveryHandler("perf-consumer-" + i, DISCARD);
+        }
+    }
+
+    /**
+     * Each value starts with the nanoTime the event was (or, open-loop, should have been) sent, which the consumer
+     * subtracts from its receive time.
+     */
+    private Runnable produceLoop(String producerId, long start) {
+        return () -> {
+            Random random = new Random(producerId.hashCode());
+            String pad = "x".repeat(profile.getValueSize());
+            long intervalNanos = profile.getRate() > 0 ? (long) (1e9 / profile.getRate()) : 0;
+            long next = start;
+            long sequence = 0;
+            while (producing) {
+                long sentAt;
+                if (intervalNanos > 0) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+                    sentAt = profile.isOpenLoop() ? next : System.nanoTime();
+                    next += intervalNanos;
+                } else {
+                    sentAt = System.nanoTime();
+                }
+                tributary.produceEvent(producerId, profile.getTopic(), new Event<String>(producerId + "-" + sequence++,
+                        "string", keys.nextKey(random), sentAt + ":" + pad));
+                produced.incrementAndGet();
+            }
+        };
+    }
+
+    private Runnable consumeLoop(String consumerId) {
+        return () -> {
+            Consumer consumer = tributary.getConsumer(consumerId);
+            while (consuming) {
+                if (pollOnce(consumer) == 0) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                }
+            }
+        };
+    }
+
+    /**
+     * Consumes whatever the consumer threads had not reached by the drain deadline, so the summary accounts for
+     * every produced event however slow the machine is.
+     */
+    private void drainRemaining() {
+        for (int i = 0; i < profile.getConsumers(); i++) {
+            Consumer consumer = tributary.getConsumer("perf-consumer-" + i);
+            while (pollOnce(consumer) > 0) {
+                continue;
+            }
+        }
+    }
+
+    private int pollOnce(Consumer consumer) {
+        int polled = 0;
+        for (Partition partition : consumer.getPartitions()) {
+            for (Event<?> e : consumer.poll(partition.getId(), POLL_BATCH)) {
+                String value = (String) e.getValue();
+                long latency = System.nanoTime() - Long.parseLong(value.substring(0, value.indexOf(':')));
+                interval.get().record(latency);
+                total.record(latency);
+                polled++;
+            }
+        }
+        consumed.addAndGet(polled);
+        return polled;
+    }
+
+    private static Thread startThread(String name, Runnable loop) {
+        Thread t = new Thread(loop, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        PerfProfile profile = new PerfProfile();
+        Path csv = null;
+        Path json = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--csv") && i + 1 < args.length) {
+                csv = Paths.get(args[++i]);
+            } else if (args[i].equals("--json") && i + 1 < args.length) {
+                json = Paths.get(args[++i]);
+            } else if (!args[i].startsWith("--") && Files.isRegularFile(Paths.get(args[i]))) {
+                profile = PerfProfile.fromJson(Files.readString(Paths.get(args[i])));
+            } else {
+                System.out.println("Usage: TributaryPerf [profile.json] [--csv <file>] [--json <file>]");
+                return;
+            }
+        }
+
+        PerfReport report = new TributaryPerf(profile).run();
+        if (csv != null) {
+            report.writeCsv(csv);
+            System.out.println("Wrote " + csv);
+        }
+        if (json != null) {
+            report.writeJson(json);
+            System.out.println("Wrote " + json);
+        }
+    }
+}
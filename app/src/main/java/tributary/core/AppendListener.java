@@ -0,0 +1,9 @@
+package tributary.core;
+
+/**
+ * Told about every event appended to a partition, in offset order, while the partition's lock is held.
+ */
+@FunctionalInterface
+public interface AppendListener {
+    void appended(Partition partition, int offset, Event<?> event);
+}
@@ -0,0 +1,8 @@
+package tributary.core;
+
+/**
+ * Where the stored bytes of an offloaded {@link EventBatch} can be read back from.
+ */
+public interface BatchSource {
+    public byte[] read();
+}
@@ -0,0 +1,50 @@
+package tributary.core;
+
+import java.util.Arrays;
+
+public class BloomFilter {
+    private static final int HASHES = 4;
+
+    private long[] bits;
+    private int numBits;
+
+    public BloomFilter(int expectedEntries) {
+        // ~10 bits per entry keeps the false positive rate near 1% with four hashes
+        this.numBits = Math.max(64, expectedEntries * 10);
+        this.bits = new long[(numBits + 63) / 64];
+    }
+
+    public void add(String value) {
+        int h1 = mix(value.hashCode());
+        int h2 = mix(h1 ^ 0x5bd1e995);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String value) {
+        int h1 = mix(value.hashCode());
+        int h2 = mix(h1 ^ 0x5bd1e995);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0L);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
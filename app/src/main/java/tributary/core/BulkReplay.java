@@ -0,0 +1,227 @@
+package tributary.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reprocesses a range of a partition in parallel on a fork-join pool, leaving every group offset alone. The range is
+ * cut into chunks of about {@code chunkSize} events, whole sealed segments or slices of the tail, and each chunk is
+ * decoded and handed to the handler on its own worker, so the handler must be thread-safe.
+ *
+ * <p>With key ordering on, chunks are decoded a window at a time and each window's events are then dealt out to one
+ * lane per worker by key hash: events sharing a key reach the handler in offset order, from a single thread.
+ */
+public class BulkReplay {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final boolean keyOrdered;
+
+    public BulkReplay(ForkJoinPool pool, int chunkSize, boolean keyOrdered) {
+        this.pool = pool;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.keyOrdered = keyOrdered;
+    }
+
+    /**
+     * Hands every event in offsets {@code [from, to)} of the partition to {@code handler}.
+     *
+     * @return the number of events handled
+     */
+    public long replay(Partition partition, int from, int to, String consumerId, DeliveryHandler handler) {
+        List<Chunk> chunks = split(partition.slice(from, to));
+        AtomicLong handled = new AtomicLong();
+        Sink sink = e -> {
+            handler.deliver(consumerId, partition.getId(), e);
+            handled.incrementAndGet();
+        };
+        if (keyOrdered) {
+            pool.invoke(new OrderedReplay(chunks, pool.getParallelism(), sink));
+        } else {
+            pool.invoke(new ChunkRange(chunks, 0, chunks.size(), sink));
+        }
+        return handled.get();
+    }
+
+    private List<Chunk> split(Partition.Slice slice) {
+        List<Chunk> chunks = new ArrayList<>();
+        List<EventBatch> group = new ArrayList<>();
+        int groupFrom = slice.getFrom();
+        int grouped = 0;
+        for (EventBatch batch : slice.getSealed()) {
+            group.add(batch);
+            grouped += batch.getCount();
+            if (grouped >= chunkSize) {
+                int end = Math.min(slice.getTo(), batch.getBaseOffset() + batch.getCount());
+                chunks.add(new Chunk(group, groupFrom, end, new ArrayList<>(), slice.getSchemas()));
+                group = new ArrayList<>();
+                groupFrom = end;
+                grouped = 0;
+            }
+        }
+        if (!group.isEmpty()) {
+            chunks.add(new Chunk(group, groupFrom, Math.min(slice.getTo(), slice.getTailBase()), new ArrayList<>(),
+                    slice.getSchemas()));
+        }
+        List<Event<?>> tail = slice.getTail();
+        for (int i = 0; i < tail.size(); i += chunkSize) {
+            int base = slice.getTailBase() + i;
+            chunks.add(new Chunk(new ArrayList<>(), base, base + Math.min(chunkSize, tail.size() - i),
+                    tail.subList(i, Math.min(tail.size(), i + chunkSize)), slice.getSchemas()));
+        }
+        return chunks;
+    }
+
+    @FunctionalInterface
+    private interface Sink {
+        void accept(Event<?> event);
+    }
+
+    /**
+     * Offsets {@code [from, to)}, held either in sealed segments or in a slice of the copied tail.
+     */
+    private static class Chunk {
+        private final List<EventBatch> batches;
+        private final int from;
+        private final int to;
+        private final List<Event<?>> tail;
+        private final SchemaRegistry schemas;
+
+        Chunk(List<EventBatch> batches, int from, int to, List<Event<?>> tail, SchemaRegistry schemas) {
+            this.batches = batches;
+            this.from = from;
+            this.to = to;
+            this.tail = tail;
+            this.schemas = schemas;
+        }
+
+        List<Event<?>> read() {
+            if (batches.isEmpty()) {
+                return tail;
+            }
+            List<Event<?>> out = new ArrayList<>(to - from);
+            for (EventBatch batch : batches) {
+                int base = batch.getBaseOffset();
+                int lo = Math.max(from, base) - base;
+                int hi = Math.min(to, base + batch.getCount()) - base;
+                if (lo < hi) {
+                    out.addAll(batch.decode(schemas).subList(lo, hi));
+                }
+            }
+            return out;
+        }
+    }
+
+    private static class ChunkRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int lo;
+        private final int hi;
+        private final Sink sink;
+
+        ChunkRange(List<Chunk> chunks, int lo, int hi, Sink sink) {
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= 1) {
+                for (int i = lo; i < hi; i++) {
+                    for (Event<?> e : chunks.get(i).read()) {
+                        sink.accept(e);
+                    }
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ChunkRange(chunks, lo, mid, sink), new ChunkRange(chunks, mid, hi, sink));
+        }
+    }
+
+    private static class ChunkRead extends RecursiveTask<List<Event<?>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk chunk;
+
+        ChunkRead(Chunk chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected List<Event<?>> compute() {
+            return chunk.read();
+        }
+    }
+
+    private static class OrderedReplay extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int lanes;
+        private final Sink sink;
+
+        OrderedReplay(List<Chunk> chunks, int lanes, Sink sink) {
+            this.chunks = chunks;
+            this.lanes = Math.max(1, lanes);
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            // decoding a window of chunks at a time bounds how much of the range is held in memory
+            for (int start = 0; start < chunks.size(); start += lanes) {
+                List<ChunkRead> reads = new ArrayList<>();
+                for (Chunk chunk : chunks.subList(start, Math.min(chunks.size(), start + lanes))) {
+                    reads.add(new ChunkRead(chunk));
+                }
+                invokeAll(reads);
+                List<List<Event<?>>> window = new ArrayList<>();
+                for (ChunkRead read : reads) {
+                    window.add(read.join());
+                }
+                List<Lane> tasks = new ArrayList<>();
+                for (int lane = 0; lane < lanes; lane++) {
+                    tasks.add(new Lane(window, lane, lanes, sink));
+                }
+                invokeAll(tasks);
+            }
+        }
+    }
+
+    private static class Lane extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<Event<?>>> window;
+        private final int lane;
+        private final int lanes;
+        private final Sink sink;
+
+        Lane(List<List<Event<?>>> window, int lane, int lanes, Sink sink) {
+            this.window = window;
+            this.lane = lane;
+            this.lanes = lanes;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            for (List<Event<?>> events : window) {
+                for (Event<?> e : events) {
+                    String key = e.getKey();
+                    if (Math.floorMod(key == null ? 0 : key.hashCode(), lanes) == lane) {
+                        sink.accept(e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package tributary.core;
+
+/**
+ * Bounds the backlog of a partition or topic: the events (and their estimated bytes) not yet consumed by the
+ * slowest consumer group. A limit of 0 means unlimited.
+ */
+public class CapacityLimit {
+    private int maxEvents;
+    private long maxBytes;
+    private OverflowPolicy policy;
+    private long blockTimeoutMs;
+
+    public CapacityLimit(int maxEvents, long maxBytes, OverflowPolicy policy, long blockTimeoutMs) {
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+    }
+
+    public boolean fits(long backlogEvents, long backlogBytes, int events, long bytes) {
+        return (maxEvents <= 0 || backlogEvents + events <= maxEvents)
+                && (maxBytes <= 0 || backlogBytes + bytes <= maxBytes);
+    }
+
+    public long remainingEvents(long backlogEvents) {
+        return maxEvents <= 0 ? Long.MAX_VALUE : Math.max(0, maxEvents - backlogEvents);
+    }
+
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getBlockTimeoutMs() {
+        return blockTimeoutMs;
+    }
+
+    public String toString() {
+        return "events=" + (maxEvents <= 0 ? "unlimited" : maxEvents) + ", bytes="
+                + (maxBytes <= 0 ? "unlimited" : maxBytes) + ", policy=" + policy;
+    }
+}
@@ -0,0 +1,20 @@
+package tributary.core;
+
+public interface CompressionCodec {
+    public byte[] compress(byte[] data);
+
+    public byte[] decompress(byte[] data, int uncompressedSize);
+
+    public String getName();
+
+    public static CompressionCodec forName(String name) {
+        switch (name) {
+        case "deflate":
+            return new DeflateCodec();
+        case "none":
+            return new NoCompression();
+        default:
+            throw new IllegalArgumentException("Unknown compression codec " + name);
+        }
+    }
+}
@@ -1,13 +1,30 @@
 package tributary.core;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Consumer {
+    public static final int DEFAULT_HISTORY_EVENTS = 1024;
+
     private String id;
     private String groupId;
-    private List<Partition> partitions;
-    private List<Event<?>> consumedEvents = new ArrayList<>();
+    private volatile List<Partition> partitions;
+    // the assignment being built by a rebalance, published in one step by publishAssignment
+    private List<Partition> pendingPartitions;
+    private EventHistory history = new EventHistory(DEFAULT_HISTORY_EVENTS, Long.MAX_VALUE);
+    private DeliveryHandler handler = DeliveryHandler.PRINT;
+    private volatile Quota quota;
+    private volatile LatencyStats latency;
+
+    private int prefetchEvents = 0;
+    private long prefetchBytes = 0;
+    private Map<String, PrefetchBuffer> prefetch = new HashMap<>();
+
+    private int processingWorkers = 0;
+    private int processingInFlight = 0;
+    private Map<String, KeyOrderedProcessor> processors = new HashMap<>();
 
     public Consumer(String id, String groupId) {
         this.id = id;
@@ -16,18 +33,113 @@ public class Consumer {
         System.out.println("Consumer " + id + " created in " + groupId);
     }
 
-    public synchronized void consumeEvents(String partitionId, int numberOfEvents) {
+    public void consumeEvents(String partitionId, int numberOfEvents) {
+        PrefetchBuffer buffer;
+        List<Event<?>> direct = null;
+        synchronized (this) {
+            buffer = prefetch.get(partitionId);
+            if (buffer == null) {
+                direct = consumeDirect(partitionId, numberOfEvents);
+            }
+        }
+        if (buffer == null) {
+            // quota throttling also waits outside the consumer lock
+            throttle(direct);
+            return;
+        }
+
+        // waiting on a read-ahead happens outside the consumer lock, so it cannot hold up rebalances or other reads
+        List<Event<?>> delivered = buffer.poll(numberOfEvents);
+        if (delivered.isEmpty()) {
+            System.err.println("Error: No events left to be consumed");
+        }
+        throttle(delivered);
+        recordLatency(delivered);
+        synchronized (this) {
+            for (Event<?> e : delivered) {
+                deliver(partitionId, e);
+            }
+        }
+    }
+
+    /**
+     * @return the events delivered, for the caller to charge to the quota once it has released the consumer lock
+     */
+    private List<Event<?>> consumeDirect(String partitionId, int numberOfEvents) {
         Partition p = getPartition(partitionId);
         if (p == null) {
             System.out.println("partitionId does not exist for this consumer");
-            return;
+            return new ArrayList<>();
         }
 
+        List<Event<?>> fetched = new ArrayList<>();
         for (int i = 0; i < numberOfEvents; i++) {
             Event<?> e = p.consumeEvent(groupId);
-            if (e != null)
-                consumedEvents.add(e);
+            if (e != null) {
+                fetched.add(e);
+            }
+        }
+        recordLatency(fetched);
+        for (Event<?> e : fetched) {
+            deliver(partitionId, e);
+        }
+        return fetched;
+    }
+
+    public List<Event<?>> consumeEvents(String partitionId, int numberOfEvents, EventFilter filter) {
+        List<Event<?>> delivered;
+        synchronized (this) {
+            Partition p = getPartition(partitionId);
+            if (p == null) {
+                System.out.println("partitionId does not exist for this consumer");
+                return new ArrayList<>();
+            }
+
+            delivered = p.consumeEvents(groupId, numberOfEvents, filter);
+            recordLatency(delivered);
+            for (Event<?> e : delivered) {
+                deliver(partitionId, e);
+            }
+        }
+        throttle(delivered);
+        return delivered;
+    }
+
+    public List<Event<?>> poll(String partitionId, int maxEvents) {
+        return poll(partitionId, maxEvents, null);
+    }
+
+    /**
+     * Event-loop variant of {@link #poll}: the read runs on the partition's owning loop and the quota is charged on
+     * the calling thread once it completes.
+     */
+    public List<Event<?>> poll(String partitionId, int maxEvents, PartitionExecutor executor) {
+        List<Event<?>> fetched = read(partitionId, maxEvents, executor);
+        charge(fetched);
+        return fetched;
+    }
+
+    /**
+     * Reads without charging the quota, on the partition's owning loop if {@code executor} is not null.
+     */
+    List<Event<?>> read(String partitionId, int maxEvents, PartitionExecutor executor) {
+        Partition p = getPartition(partitionId);
+        if (p == null) {
+            return new ArrayList<>();
+        }
+        if (executor == null) {
+            return p.consumeEvents(groupId, maxEvents, EventFilter.ALL);
         }
+        return executor.submit(p, () -> p.consumeEvents(groupId, maxEvents, EventFilter.ALL))
+                .exceptionally(e -> {
+                    System.err.println("Fetch from " + partitionId + " by " + id + " failed: " + e.getMessage());
+                    return new ArrayList<>();
+                }).join();
+    }
+
+    void charge(List<Event<?>> fetched) {
+        throttle(fetched);
+        recordLatency(fetched);
     }
 
     public void replay(String partitionId, int offset) {
@@ -44,7 +156,7 @@ public class Consumer {
             while (offset < currentIndex && currentIndex < p.getSize()) {
                 Event<?> e = p.consumeEvent(groupId);
                 if (e != null)
-                    consumedEvents.add(e);
+                    deliver(partitionId, e);
                 offset++;
             }
         } else {
@@ -52,10 +164,28 @@ public class Consumer {
         }
     }
 
+    /**
+     * Moves the group's offset on an assigned partition without delivering anything.
+     *
+     * @return false if the partition is not assigned to this consumer
+     */
+    public boolean commit(String partitionId, int offset) {
+        Partition p = getPartition(partitionId);
+        if (p == null) {
+            return false;
+        }
+        p.setConsumptionIndex(groupId, offset);
+        return true;
+    }
+
     public String getId() {
         return id;
     }
 
+    public String getGroupId() {
+        return groupId;
+    }
+
     public Partition getPartition(String partitionId) {
         for (Partition p : partitions) {
             if (p.getId().equals(partitionId)) {
@@ -65,19 +195,186 @@ public class Consumer {
         return null;
     }
 
-    public void addPartition(Partition partition) {
-        partitions.add(partition);
+    public synchronized void addPartition(Partition partition) {
+        if (pendingPartitions != null) {
+            pendingPartitions.add(partition);
+            return;
+        }
+        // readers iterate the published list without the lock, so it is replaced rather than changed in place
+        List<Partition> assigned = new ArrayList<>(partitions);
+        assigned.add(partition);
+        partitions = assigned;
+        startPrefetch(partition);
     }
 
     public List<Partition> getPartitions() {
         return partitions;
     }
 
-    public void resetPartitions() {
+    public synchronized void resetPartitions() {
         partitions = new ArrayList<>();
+        closeReaders();
+    }
+
+    /**
+     * Starts building a new assignment: partitions added from now on are collected aside, and the current ones stay
+     * readable until {@link #publishAssignment}.
+     */
+    synchronized void beginAssignment() {
+        pendingPartitions = new ArrayList<>();
     }
 
+    /**
+     * Replaces the assignment with the one collected since {@link #beginAssignment} in a single step, so readers see
+     * either the old partitions or the new ones, never an empty set in between.
+     */
+    synchronized void publishAssignment() {
+        List<Partition> assigned = pendingPartitions;
+        if (assigned == null) {
+            return;
+        }
+        pendingPartitions = null;
+        closeReaders();
+        partitions = assigned;
+        for (Partition partition : assigned) {
+            startPrefetch(partition);
+        }
+    }
+
+    private void startPrefetch(Partition partition) {
+        if (prefetchEvents > 0) {
+            PrefetchBuffer buffer = new PrefetchBuffer(partition, groupId, prefetchEvents, prefetchBytes);
+            prefetch.put(partition.getId(), buffer);
+            buffer.fill();
+        }
+    }
+
+    private void closeReaders() {
+        for (PrefetchBuffer buffer : prefetch.values()) {
+            buffer.close();
+        }
+        prefetch.clear();
+        closeProcessors();
+    }
+
+    /**
+     * Processes each assigned partition on {@code workers} threads, fanned out by event key, with at most
+     * {@code maxInFlight} events unfinished per partition. 0 workers turns it off.
+     */
+    public synchronized void setParallelProcessing(int workers, int maxInFlight) {
+        closeProcessors();
+        this.processingWorkers = workers;
+        this.processingInFlight = maxInFlight;
+    }
+
+    /**
+     * @return the partition's key-ordered processor, or null if parallel processing is off or the partition is not
+     *         assigned to this consumer
+     */
+    public synchronized KeyOrderedProcessor getProcessor(String partitionId) {
+        Partition p = getPartition(partitionId);
+        if (p == null || processingWorkers <= 0) {
+            return null;
+        }
+        return processors.computeIfAbsent(partitionId, pid -> new KeyOrderedProcessor(p, groupId, id, handler,
+                processingWorkers, processingInFlight));
+    }
+
+    private void closeProcessors() {
+        for (KeyOrderedProcessor processor : processors.values()) {
+            processor.close();
+        }
+        processors.clear();
+    }
+
+    /**
+     * Reads ahead up to {@code maxEvents} events or {@code maxBytes} bytes from each assigned partition in the
+     * background. A limit of 0 events turns read-ahead off.
+     */
+    public synchronized void setPrefetch(int maxEvents, long maxBytes) {
+        this.prefetchEvents = maxEvents;
+        this.prefetchBytes = maxBytes;
+        List<Partition> assigned = partitions;
+        resetPartitions();
+        for (Partition p : assigned) {
+            addPartition(p);
+        }
+    }
+
+    public synchronized PrefetchBuffer getPrefetchBuffer(String partitionId) {
+        return prefetch.get(partitionId);
+    }
+
+    /**
+     * @return the most recent deliveries still held by the history, oldest first
+     */
     public List<Event<?>> getConsumedEvents() {
-        return consumedEvents;
+        return history.toList();
+    }
+
+    /**
+     * Keeps at most {@code maxEvents} events and {@code maxBytes} estimated bytes of delivery history. A limit of 0
+     * events keeps none.
+     */
+    public synchronized void setHistory(int maxEvents, long maxBytes) {
+        EventHistory resized = new EventHistory(maxEvents, maxBytes);
+        for (Event<?> e : history.toList()) {
+            resized.add(e);
+        }
+        history = resized;
+    }
+
+    public EventHistory getHistory() {
+        return history;
+    }
+
+    public synchronized void setDeliveryHandler(DeliveryHandler handler) {
+        this.handler = handler;
+        closeProcessors();
+    }
+
+    /**
+     * Uses the group's quota, shared by every consumer in the group.
+     */
+    public void setQuota(Quota quota) {
+        this.quota = quota;
+    }
+
+    /**
+     * Charges a fetch to the group quota after the fact and waits out the throttle time, which delays the consumer's
+     * next fetch. Never called with the consumer lock held, so a throttled consumer can still be rebalanced.
+     */
+    private void throttle(List<Event<?>> fetched) {
+        Quota q = quota;
+        if (q == null || fetched.isEmpty()) {
+            return;
+        }
+        long bytes = 0;
+        for (Event<?> e : fetched) {
+            bytes += e.getSizeInBytes();
+        }
+        long throttleMs = q.throttle(fetched.size(), bytes);
+        if (throttleMs > 0) {
+            System.out.println("Consumer " + id + " in " + groupId + " throttled for " + throttleMs + " ms");
+        }
+    }
+
+    public void setLatencyStats(LatencyStats latency) {
+        this.latency = latency;
+    }
+
+    private void recordLatency(List<Event<?>> fetched) {
+        if (latency == null || fetched.isEmpty()) {
+            return;
+        }
+        long now = EventClock.nowNanos();
+        for (Event<?> e : fetched) {
+            latency.recordConsume(e, now);
+        }
+    }
+
+    private void deliver(String partitionId, Event<?> event) {
+        handler.deliver(id, partitionId, event);
+        history.add(event);
     }
 }
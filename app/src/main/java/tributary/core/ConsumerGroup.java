@@ -1,28 +1,51 @@
 package tributary.core;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ConsumerGroup {
     private String id;
     private Topic<?> topic;
-    private List<Consumer> consumers = new ArrayList<>();
+    private List<Consumer> consumers = new CopyOnWriteArrayList<>();
     private RebalancingStrategy strategy;
+    private Quota quota;
+    private volatile int generation = 0;
+    private long sessionTimeoutMs = 0;
+    private final LatencyStats latency;
+    private volatile MergedReader merged;
 
     public ConsumerGroup(String id, Topic<?> topic, RebalancingStrategy strategy) {
         this.id = id;
         this.strategy = strategy;
         this.topic = topic;
+        this.latency = new LatencyStats("group " + id);
         System.out.println("Consumer Group: " + id + " with rebalancing strategy " + strategy.getName() + " in topic: "
                 + topic.getId());
     }
 
-    public void createConsumer(String cId) {
-        consumers.add(new Consumer(cId, this.id));
+    public synchronized void createConsumer(String cId) {
+        Consumer consumer = new Consumer(cId, this.id);
+        consumer.setQuota(quota);
+        consumer.setLatencyStats(latency);
+        consumers.add(consumer);
         rebalance();
     }
 
-    public void deleteConsumer(String id) {
+    /**
+     * Limits the fetch rate of the whole group; a null quota removes the limit.
+     */
+    public void setQuota(Quota quota) {
+        this.quota = quota;
+        for (Consumer consumer : consumers) {
+            consumer.setQuota(quota);
+        }
+    }
+
+    public Quota getQuota() {
+        return quota;
+    }
+
+    public synchronized void deleteConsumer(String id) {
         Consumer c = getConsumer(id);
         if (c == null) {
             System.err.println("consumer does not exist in group " + this.id);
@@ -35,16 +58,46 @@ public class ConsumerGroup {
         return;
     }
 
-    public void rebalance() {
+    /**
+     * Reassigns partitions and starts a new generation; fetches made under an older generation are fenced. The new
+     * assignment is built aside and published before the generation moves, so a member that sees the new generation
+     * also sees its new partitions.
+     */
+    public synchronized void rebalance() {
         if (consumers.size() == 0) {
+            generation++;
             System.err.println("No consumers to rebalance");
             return;
         }
         for (Consumer c : consumers) {
-            c.resetPartitions();
+            c.beginAssignment();
         }
-
         strategy.rebalance(consumers, topic.getPartitions());
+        for (Consumer c : consumers) {
+            c.publishAssignment();
+        }
+        generation++;
+    }
+
+    /**
+     * Fetches for a member only while {@code generation} is current. The check and the read both happen under the
+     * group's lock, so a rebalance cannot hand the partition to another member in between; the member's quota is
+     * charged once the lock is released.
+     *
+     * @param executor the event loops to read on, or null to read on the calling thread
+     * @return the fetched events, or null if the generation is stale
+     */
+    public List<Event<?>> fetch(Consumer consumer, String partitionId, int maxEvents, int generation,
+            PartitionExecutor executor) {
+        List<Event<?>> fetched;
+        synchronized (this) {
+            if (generation != this.generation) {
+                return null;
+            }
+            fetched = consumer.read(partitionId, maxEvents, executor);
+        }
+        consumer.charge(fetched);
+        return fetched;
     }
 
     public Consumer getConsumer(String id) {
@@ -56,16 +109,62 @@ public class ConsumerGroup {
         return null;
     }
 
-    public void setRebalancingStrategy(RebalancingStrategy rebalancing) {
+    public synchronized void setRebalancingStrategy(RebalancingStrategy rebalancing) {
         this.strategy = rebalancing;
         System.out.println("Consumer Group " + id + " rebalancing changed to " + strategy.getName());
         rebalance();
     }
 
+    /**
+     * @return how long the group's consumers took to fetch events after they were appended and produced
+     */
+    public LatencyStats getLatency() {
+        return latency;
+    }
+
+    /**
+     * Starts reading the whole topic for this group in timestamp order, replacing any earlier merged reader.
+     */
+    public MergedReader enableMergedRead(int lookahead, long maxDelayMs) {
+        merged = new MergedReader(this, lookahead, maxDelayMs);
+        return merged;
+    }
+
+    public MergedReader getMergedReader() {
+        return merged;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return how long members may go without a heartbeat before they are removed, or 0 if sessions are off
+     */
+    public long getSessionTimeoutMs() {
+        return sessionTimeoutMs;
+    }
+
+    public void setSessionTimeoutMs(long sessionTimeoutMs) {
+        this.sessionTimeoutMs = sessionTimeoutMs;
+    }
+
     public String getId() {
         return id;
     }
 
+    public Topic<?> getTopic() {
+        return topic;
+    }
+
+    public RebalancingStrategy getStrategy() {
+        return strategy;
+    }
+
+    public List<Consumer> getConsumers() {
+        return consumers;
+    }
+
     public void printContent() {
         System.out.println("Consumer Group ID: " + id);
         System.out.println("Rebalancing Strategy: " + strategy.getName());
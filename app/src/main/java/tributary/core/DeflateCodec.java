@@ -0,0 +1,59 @@
+package tributary.core;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class DeflateCodec implements CompressionCodec {
+    private int level;
+
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int uncompressedSize) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[uncompressedSize];
+            int read = 0;
+            while (read < uncompressedSize && !inflater.finished()) {
+                read += inflater.inflate(result, read, uncompressedSize - read);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt deflate batch", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+}
@@ -0,0 +1,98 @@
+package tributary.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks at a wall-clock deadline on a {@link TimingWheel}. A daemon thread parks until the wheel's next
+ * non-empty bucket falls due, and sleeps indefinitely while nothing is pending; {@link #advanceClock} lets callers
+ * drive it with their own clock as well.
+ */
+public class DelayScheduler {
+    public static final long DEFAULT_TICK_MS = 1;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final TimingWheel<Runnable> wheel;
+    private volatile Thread ticker;
+    private volatile boolean closed = false;
+
+    public DelayScheduler() {
+        this(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public DelayScheduler(long tickMs, int wheelSize) {
+        this.wheel = new TimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    /**
+     * Runs the task once {@code deadlineMs} is reached, or straight away if it already has been.
+     */
+    public void schedule(long deadlineMs, Runnable task) {
+        if (deadlineMs <= System.currentTimeMillis() || !wheel.schedule(deadlineMs, task)) {
+            task.run();
+            return;
+        }
+        Thread t = ticker;
+        if (t == null) {
+            startTicker();
+        } else {
+            // the new task may be due before the deadline the ticker is parked for
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Runs every task due at {@code nowMs} on the calling thread.
+     *
+     * @return the number of tasks run
+     */
+    public int advanceClock(long nowMs) {
+        int ran = 0;
+        for (Runnable task : wheel.advanceClock(nowMs)) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Scheduled task failed: " + e.getMessage());
+            }
+            ran++;
+        }
+        return ran;
+    }
+
+    public int getPending() {
+        return wheel.getPending();
+    }
+
+    /**
+     * Stops the ticker thread; tasks not yet due are never run.
+     */
+    public void close() {
+        closed = true;
+        Thread t = ticker;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private synchronized void startTicker() {
+        if (ticker != null || closed) {
+            return;
+        }
+        Thread t = new Thread(() -> {
+            while (!closed) {
+                long now = System.currentTimeMillis();
+                long next = wheel.nextExpiry();
+                if (next <= now) {
+                    advanceClock(now);
+                } else if (next == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(next - now));
+                }
+            }
+        }, "tributary-delay-scheduler");
+        t.setDaemon(true);
+        ticker = t;
+        t.start();
+    }
+}
@@ -0,0 +1,11 @@
+package tributary.core;
+
+/**
+ * Receives every event a consumer delivers, after its group offset has been committed.
+ */
+@FunctionalInterface
+public interface DeliveryHandler {
+    DeliveryHandler PRINT = (consumerId, partitionId, event) -> event.print();
+
+    void deliver(String consumerId, String partitionId, Event<?> event);
+}
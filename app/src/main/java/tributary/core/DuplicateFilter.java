@@ -0,0 +1,52 @@
+package tributary.core;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Remembers the last {@code windowSize} event ids in constant memory. Two rotating Bloom filter generations answer
+ * the common "never seen" case without touching the exact window, which only confirms possible duplicates.
+ */
+public class DuplicateFilter {
+    private String[] window;
+    private Set<String> members;
+    private int next = 0;
+    private BloomFilter current;
+    private BloomFilter previous;
+    private int generationCount = 0;
+
+    public DuplicateFilter(int windowSize) {
+        this.window = new String[windowSize];
+        this.members = new HashSet<>(windowSize * 2);
+        this.current = new BloomFilter(windowSize);
+        this.previous = new BloomFilter(windowSize);
+    }
+
+    public boolean isDuplicate(String id) {
+        if (!current.mightContain(id) && !previous.mightContain(id)) {
+            return false;
+        }
+        return members.contains(id);
+    }
+
+    public void add(String id) {
+        String evicted = window[next];
+        if (evicted != null) {
+            members.remove(evicted);
+        }
+        window[next] = id;
+        members.add(id);
+        next = (next + 1) % window.length;
+
+        // Both generations together always cover at least the last window.length ids
+        if (generationCount == window.length) {
+            BloomFilter recycled = previous;
+            previous = current;
+            recycled.clear();
+            current = recycled;
+            generationCount = 0;
+        }
+        current.add(id);
+        generationCount++;
+    }
+}
@@ -1,12 +1,19 @@
 package tributary.core;
 
 public class Event<T> {
+    private static final int EVENT_OVERHEAD_BYTES = 96;
+    private static final int BOXED_VALUE_BYTES = 16;
+
     private Header headers;
     private String keyId;
     private T value;
 
     public Event(String id, String payload, String key, T value) {
-        this.headers = new Header(id, payload);
+        this(new Header(id, payload), key, value);
+    }
+
+    Event(Header headers, String key, T value) {
+        this.headers = headers;
         this.keyId = key;
         this.value = value;
     }
@@ -31,4 +38,39 @@ public class Event<T> {
     public String getId() {
         return headers.getId();
     }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Rough heap footprint used for capacity accounting.
+     */
+    public int getSizeInBytes() {
+        int size = EVENT_OVERHEAD_BYTES + 2 * (length(getId()) + length(getType()) + length(keyId));
+        if (value instanceof String) {
+            size += 2 * ((String) value).length();
+        } else if (value instanceof RecordValue) {
+            RecordValue record = (RecordValue) value;
+            for (int i = 0; i < record.getSchema().getFieldCount(); i++) {
+                Object field = record.get(i);
+                size += field instanceof String ? 2 * ((String) field).length() : BOXED_VALUE_BYTES;
+            }
+        } else if (value != null) {
+            size += BOXED_VALUE_BYTES;
+        }
+        return size;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    public Event<T> withKey(String key) {
+        return new Event<T>(headers, key, value);
+    }
+
+    public Header getHeaders() {
+        return headers;
+    }
 }
@@ -0,0 +1,153 @@
+package tributary.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A sealed run of consecutive partition events, encoded and compressed once when the batch is produced.
+ */
+public class EventBatch {
+    private static final EventFilter SKIP = (id, type, key, value) -> false;
+
+    private int baseOffset;
+    private int count;
+    private CompressionCodec codec;
+    private int uncompressedSize;
+    private int storedSize;
+    private long checksum;
+    private byte[] data;
+    private BatchSource source;
+
+    public EventBatch(int baseOffset, List<Event<?>> events, CompressionCodec codec) {
+        byte[] encoded = EventSerializer.encode(events);
+        this.baseOffset = baseOffset;
+        this.count = events.size();
+        this.codec = codec;
+        this.uncompressedSize = encoded.length;
+        this.data = codec.compress(encoded);
+        this.storedSize = data.length;
+        this.checksum = checksum(data);
+    }
+
+    /**
+     * A batch whose bytes live outside the heap and are only read when a fetch reaches it.
+     */
+    public EventBatch(int baseOffset, int count, CompressionCodec codec, int uncompressedSize, int storedSize,
+            long checksum, BatchSource source) {
+        this.baseOffset = baseOffset;
+        this.count = count;
+        this.codec = codec;
+        this.uncompressedSize = uncompressedSize;
+        this.storedSize = storedSize;
+        this.checksum = checksum;
+        this.source = source;
+    }
+
+    /**
+     * @param schemas the registry of the Tributary the batch belongs to, for record values
+     */
+    public List<Event<?>> decode(SchemaRegistry schemas) {
+        return EventSerializer.decode(codec.decompress(getData(), uncompressedSize), schemas);
+    }
+
+    /**
+     * Writes the batch header followed by its stored bytes.
+     *
+     * @return the number of header bytes written before the data
+     */
+    public int writeTo(DataOutputStream out) throws IOException {
+        int start = out.size();
+        out.writeInt(baseOffset);
+        out.writeInt(count);
+        EventSerializer.writeString(out, codec.getName());
+        out.writeInt(uncompressedSize);
+        out.writeLong(checksum);
+        out.writeInt(storedSize);
+        int headerSize = out.size() - start;
+        out.write(getData());
+        return headerSize;
+    }
+
+    /**
+     * Moves the stored bytes out of the heap; later reads go through the source.
+     */
+    public synchronized void offload(BatchSource newSource) {
+        this.source = newSource;
+        this.data = null;
+    }
+
+    public synchronized boolean isOffloaded() {
+        return data == null;
+    }
+
+    public boolean verify() {
+        return checksum(getData()) == checksum;
+    }
+
+    /**
+     * Scans the encoded records from {@code fromOffset}, materializing only those accepted by the filter, until
+     * {@code limit} matches were found or the batch ends. Returns the offset after the last record scanned.
+     */
+    public int select(int fromOffset, EventFilter filter, int limit, List<Event<?>> out, SchemaRegistry schemas) {
+        byte[] raw = codec.decompress(getData(), uncompressedSize);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            in.readInt();
+            int offset = baseOffset;
+            int found = 0;
+            while (offset < baseOffset + count && found < limit) {
+                Event<?> e = EventSerializer.readMatching(in, offset < fromOffset ? SKIP : filter, schemas);
+                if (e != null) {
+                    out.add(e);
+                    found++;
+                }
+                offset++;
+            }
+            return offset;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean contains(int offset) {
+        return offset >= baseOffset && offset < baseOffset + count;
+    }
+
+    public int getBaseOffset() {
+        return baseOffset;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getStoredSize() {
+        return storedSize;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public int getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    private synchronized byte[] getData() {
+        return data != null ? data : source.read();
+    }
+
+    static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
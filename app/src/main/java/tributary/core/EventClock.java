@@ -0,0 +1,17 @@
+package tributary.core;
+
+/**
+ * Wall-clock time in epoch nanoseconds read from {@link System#nanoTime}: one monotonic counter read and an add, no
+ * allocation. The offset to the epoch is fixed once at startup, so readings do not follow later wall-clock
+ * adjustments.
+ */
+public final class EventClock {
+    private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private EventClock() {
+    }
+
+    public static long nowNanos() {
+        return System.nanoTime() + EPOCH_OFFSET_NANOS;
+    }
+}
@@ -0,0 +1,36 @@
+package tributary.core;
+
+/**
+ * A predicate evaluated inside the partition read loop on an event's raw fields, so events it rejects are skipped
+ * without ever being materialized or delivered.
+ */
+public interface EventFilter {
+    public static final EventFilter ALL = (id, type, key, value) -> true;
+
+    public boolean test(String id, String type, String key, Object value);
+
+    public default boolean test(Event<?> event) {
+        return test(event.getId(), event.getType(), event.getKey(), event.getValue());
+    }
+
+    public default EventFilter and(EventFilter other) {
+        return (id, type, key, value) -> test(id, type, key, value) && other.test(id, type, key, value);
+    }
+
+    public static EventFilter byKey(String key) {
+        return (id, type, k, value) -> key.equals(k);
+    }
+
+    public static EventFilter byType(String type) {
+        return (id, t, key, value) -> type.equals(t);
+    }
+
+    public static EventFilter byIdPrefix(String prefix) {
+        return (id, type, key, value) -> id != null && id.startsWith(prefix);
+    }
+
+    public static EventFilter valueBetween(double min, double max) {
+        return (id, type, key, value) -> value instanceof Number && ((Number) value).doubleValue() >= min
+                && ((Number) value).doubleValue() <= max;
+    }
+}
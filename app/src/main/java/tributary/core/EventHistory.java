@@ -0,0 +1,70 @@
+package tributary.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring buffer of the most recently consumed events, bounded by count and estimated bytes. The oldest entries are
+ * overwritten once either bound is reached.
+ */
+public class EventHistory {
+    private final Event<?>[] ring;
+    private final long maxBytes;
+    private int head = 0;
+    private int size = 0;
+    private long bytes = 0;
+
+    public EventHistory(int maxEvents, long maxBytes) {
+        this.ring = new Event<?>[Math.max(0, maxEvents)];
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void add(Event<?> event) {
+        if (ring.length == 0) {
+            return;
+        }
+        if (size == ring.length) {
+            evictOldest();
+        }
+        ring[(head + size) % ring.length] = event;
+        size++;
+        bytes += event.getSizeInBytes();
+        while (bytes > maxBytes && size > 1) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * @return the retained events, oldest first
+     */
+    public synchronized List<Event<?>> toList() {
+        List<Event<?>> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            out.add(ring[(head + i) % ring.length]);
+        }
+        return out;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public int getMaxEvents() {
+        return ring.length;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private void evictOldest() {
+        bytes -= ring[head].getSizeInBytes();
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+    }
+}
@@ -0,0 +1,175 @@
+package tributary.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of events used wherever partition data leaves the heap as bytes (compressed batches).
+ */
+public final class EventSerializer {
+    private static final byte NULL_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte INTEGER_VALUE = 2;
+    private static final byte LONG_VALUE = 3;
+    private static final byte DOUBLE_VALUE = 4;
+    private static final byte BOOLEAN_VALUE = 5;
+    private static final byte RECORD_VALUE = 6;
+
+    private EventSerializer() {
+    }
+
+    public static byte[] encode(List<Event<?>> events) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(events.size());
+            for (Event<?> e : events) {
+                writeEvent(out, e);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param schemas the registry record values' schema ids are looked up in
+     */
+    public static List<Event<?>> decode(byte[] data, SchemaRegistry schemas) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int count = in.readInt();
+            List<Event<?>> events = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                events.add(readEvent(in, schemas));
+            }
+            return events;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void writeEvent(DataOutputStream out, Event<?> event) throws IOException {
+        Header h = event.getHeaders();
+        out.writeLong(h.getProducedAt());
+        out.writeLong(h.getAppendedAt());
+        out.writeLong(h.getTraceId());
+        writeString(out, h.getId());
+        writeString(out, h.getPayload());
+        writeString(out, event.getKey());
+        writeValue(out, event.getValue());
+    }
+
+    public static Event<?> readEvent(DataInputStream in, SchemaRegistry schemas) throws IOException {
+        Header header = readHeader(in);
+        String key = readString(in);
+        Object value = readValue(in, schemas);
+        return new Event<Object>(header, key, value);
+    }
+
+    /**
+     * Reads the next record's fields and only builds an {@code Event} when the filter accepts them.
+     */
+    public static Event<?> readMatching(DataInputStream in, EventFilter filter, SchemaRegistry schemas)
+            throws IOException {
+        Header header = readHeader(in);
+        String key = readString(in);
+        Object value = readValue(in, schemas);
+        if (!filter.test(header.getId(), header.getPayload(), key, value)) {
+            return null;
+        }
+        return new Event<Object>(header, key, value);
+    }
+
+    private static Header readHeader(DataInputStream in) throws IOException {
+        long producedAt = in.readLong();
+        long appendedAt = in.readLong();
+        long traceId = in.readLong();
+        String id = readString(in);
+        String payload = readString(in);
+        Header header = new Header(producedAt, id, payload);
+        header.markAppended(appendedAt);
+        header.setTraceId(traceId);
+        return header;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof String) {
+            out.writeByte(STRING_VALUE);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG_VALUE);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof RecordValue) {
+            Schema schema = ((RecordValue) value).getSchema();
+            out.writeByte(RECORD_VALUE);
+            out.writeInt(schema.getId());
+            schema.getCodec().encode(out, (RecordValue) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported event value type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in, SchemaRegistry schemas) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL_VALUE:
+            return null;
+        case STRING_VALUE:
+            return readString(in);
+        case INTEGER_VALUE:
+            return in.readInt();
+        case LONG_VALUE:
+            return in.readLong();
+        case DOUBLE_VALUE:
+            return in.readDouble();
+        case BOOLEAN_VALUE:
+            return in.readBoolean();
+        case RECORD_VALUE:
+            int schemaId = in.readInt();
+            Schema schema = schemas.lookup(schemaId);
+            if (schema == null) {
+                throw new IOException("Unknown schema id " + schemaId);
+            }
+            return schema.getCodec().decode(in);
+        default:
+            throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,37 @@
+package tributary.core;
+
+public enum FieldType {
+    STRING(String.class), INTEGER(Integer.class), LONG(Long.class), DOUBLE(Double.class), BOOLEAN(Boolean.class);
+
+    private final Class<?> javaType;
+
+    FieldType(Class<?> javaType) {
+        this.javaType = javaType;
+    }
+
+    public Class<?> getJavaType() {
+        return javaType;
+    }
+
+    /**
+     * Parses a field value given as text, e.g. from a JSON event file.
+     */
+    public Object parse(String text) {
+        switch (this) {
+        case INTEGER:
+            return Integer.parseInt(text);
+        case LONG:
+            return Long.parseLong(text);
+        case DOUBLE:
+            return Double.parseDouble(text);
+        case BOOLEAN:
+            return Boolean.parseBoolean(text);
+        default:
+            return text;
+        }
+    }
+
+    public static FieldType forName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
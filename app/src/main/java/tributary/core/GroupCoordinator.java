@@ -0,0 +1,100 @@
+package tributary.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps consumer group membership alive through heartbeats. A member that has not heartbeated within its group's
+ * session timeout is removed and the group rebalanced. A heartbeat only stamps the time: each member has a single
+ * expiry check pending on the {@link DelayScheduler}'s timing wheel, which re-arms itself at the new deadline if a
+ * heartbeat arrived in the meantime. Removing an expired member rebalances and prints the group, so that runs on the
+ * coordinator's own thread rather than holding up the scheduler's timer thread.
+ */
+public class GroupCoordinator {
+    private final DelayScheduler scheduler;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService expiries = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tributary-group-coordinator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public GroupCoordinator(DelayScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Starts a session for a member of {@code group}, using the group's session timeout.
+     */
+    public void register(ConsumerGroup group, String consumerId) {
+        Session session = new Session(group, consumerId, group.getSessionTimeoutMs());
+        sessions.put(key(group, consumerId), session);
+        scheduler.schedule(session.lastHeartbeat + session.timeoutMs, () -> check(session));
+    }
+
+    public void unregister(ConsumerGroup group, String consumerId) {
+        sessions.remove(key(group, consumerId));
+    }
+
+    /**
+     * @return the group's current generation, or -1 if the consumer has no live session and must rejoin. With
+     *         sessions off, every member of the group gets the generation.
+     */
+    public int heartbeat(ConsumerGroup group, String consumerId) {
+        Session session = sessions.get(key(group, consumerId));
+        if (session == null) {
+            boolean sessionless = group.getSessionTimeoutMs() <= 0 && group.getConsumer(consumerId) != null;
+            return sessionless ? group.getGeneration() : -1;
+        }
+        session.lastHeartbeat = System.currentTimeMillis();
+        return group.getGeneration();
+    }
+
+    public boolean hasSession(ConsumerGroup group, String consumerId) {
+        return sessions.containsKey(key(group, consumerId));
+    }
+
+    private void check(Session session) {
+        if (sessions.get(key(session.group, session.consumerId)) != session) {
+            return;
+        }
+        long deadline = session.lastHeartbeat + session.timeoutMs;
+        if (System.currentTimeMillis() < deadline) {
+            scheduler.schedule(deadline, () -> check(session));
+            return;
+        }
+        if (sessions.remove(key(session.group, session.consumerId), session)) {
+            expiries.execute(() -> {
+                System.out.println("Consumer " + session.consumerId + " session expired in group "
+                        + session.group.getId());
+                session.group.deleteConsumer(session.consumerId);
+            });
+        }
+    }
+
+    /**
+     * Stops the coordinator's thread; members expired but not yet removed stay in their groups.
+     */
+    public void close() {
+        expiries.shutdownNow();
+    }
+
+    private static String key(ConsumerGroup group, String consumerId) {
+        return group.getId() + "/" + consumerId;
+    }
+
+    private static class Session {
+        private final ConsumerGroup group;
+        private final String consumerId;
+        private final long timeoutMs;
+        private volatile long lastHeartbeat = System.currentTimeMillis();
+
+        Session(ConsumerGroup group, String consumerId, long timeoutMs) {
+            this.group = group;
+            this.consumerId = consumerId;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+}
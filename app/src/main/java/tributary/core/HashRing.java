@@ -0,0 +1,95 @@
+package tributary.core;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping keys to partition ids. Adding a partition moves only the keys its virtual nodes take
+ * over (about 1/(n+1) of them), and splitting moves only about half of the split partition's keys.
+ */
+public class HashRing {
+    private static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private TreeMap<Long, String> ring = new TreeMap<>();
+    private int virtualNodes;
+
+    public HashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public HashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * @return the partitions that hand keys over to the new one
+     */
+    public synchronized Set<String> addPartition(String partitionId) {
+        Set<String> donors = new HashSet<>();
+        TreeMap<Long, String> before = new TreeMap<>(ring);
+        for (int i = 0; i < virtualNodes; i++) {
+            long node = hash(partitionId + "#" + i);
+            if (!before.isEmpty()) {
+                Map.Entry<Long, String> owner = before.ceilingEntry(node);
+                donors.add(owner != null ? owner.getValue() : before.firstEntry().getValue());
+            }
+            ring.put(node, partitionId);
+        }
+        donors.remove(partitionId);
+        return donors;
+    }
+
+    /**
+     * Hands every other virtual node of {@code partitionId} to {@code newPartitionId}.
+     */
+    public synchronized void split(String partitionId, String newPartitionId) {
+        boolean give = false;
+        for (Map.Entry<Long, String> entry : ring.entrySet()) {
+            if (entry.getValue().equals(partitionId)) {
+                if (give) {
+                    entry.setValue(newPartitionId);
+                }
+                give = !give;
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the virtual nodes and the partition owning each, as saved in a snapshot
+     */
+    public synchronized Map<Long, String> getNodes() {
+        return new TreeMap<>(ring);
+    }
+
+    /**
+     * Replaces the ring with saved virtual nodes, so keys map exactly as they did, splits included.
+     */
+    public synchronized void setNodes(Map<Long, String> nodes) {
+        ring = new TreeMap<>(nodes);
+    }
+
+    public synchronized String partitionFor(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key == null ? "" : key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // final avalanche so nearby strings spread over the ring
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,22 +1,90 @@
 package tributary.core;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 
 public class Header {
-    private LocalDate date;
+    private final long producedAt;
+    private volatile long appendedAt;
+    private volatile long traceId;
     private String id;
     private String payload;
+    private String producerId;
+    private String partitionId;
+    private int sequence = -1;
 
     public Header(String id, String payload) {
-        this.date = LocalDate.now();
+        this(EventClock.nowNanos(), id, payload);
+    }
+
+    /**
+     * @param producedAt the production time in epoch nanoseconds, see {@link EventClock}
+     */
+    Header(long producedAt, String id, String payload) {
+        this.producedAt = producedAt;
         this.id = id;
         this.payload = payload;
     }
 
     public void print() {
-        System.out.println("\tDate: " + date);
+        System.out.println("\tDate: " + getDate());
         System.out.println("\tEvent ID: " + id);
         System.out.println("\tPayload: " + payload);
+        if (traceId != 0) {
+            System.out.println("\tTrace ID: " + Long.toHexString(traceId));
+        }
+    }
+
+    public LocalDate getDate() {
+        return Instant.ofEpochSecond(0, producedAt).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    /**
+     * @return when the event was created, in epoch nanoseconds
+     */
+    public long getProducedAt() {
+        return producedAt;
+    }
+
+    /**
+     * @return when a partition accepted the event, in epoch nanoseconds, or 0 if it has not been appended
+     */
+    public long getAppendedAt() {
+        return appendedAt;
+    }
+
+    void markAppended(long appendedAt) {
+        this.appendedAt = appendedAt;
+    }
+
+    /**
+     * @return the trace id of a sampled event, or 0 if it is not traced
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(long traceId) {
+        this.traceId = traceId;
+    }
+
+    public synchronized void stamp(String producerId, String partitionId, int sequence) {
+        this.producerId = producerId;
+        this.partitionId = partitionId;
+        this.sequence = sequence;
+    }
+
+    public synchronized String getProducerId() {
+        return producerId;
+    }
+
+    public synchronized String getPartitionId() {
+        return partitionId;
+    }
+
+    public synchronized int getSequence() {
+        return sequence;
     }
 
     public String getPayload() {
@@ -0,0 +1,162 @@
+package tributary.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disruptor-style ingest pipeline. Producers claim a sequence number, fill the preallocated slot for it and publish
+ * it; a single ingest thread reads published slots in sequence order and hands them to the sink in batches, one
+ * batch per run of consecutive events from the same producer to the same topic.
+ */
+public class IngestRing {
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * Receives the events in publish order, on the ingest thread.
+     */
+    public interface Sink {
+        void append(String producerId, String topicId, List<Event<?>> events);
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final int shift;
+    // per slot: which lap of the ring was last published into it
+    private final AtomicIntegerArray published;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong(-1);
+    private final WaitStrategy wait;
+    private final Sink sink;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param size rounded up to a power of two
+     */
+    public IngestRing(int size, WaitStrategy wait, Sink sink) {
+        int capacity = size <= 2 ? 2 : Integer.highestOneBit(size - 1) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.published = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.wait = wait;
+        this.sink = sink;
+        this.thread = new Thread(this::drain, "tributary-ingest");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Publishes an event into the ring, waiting only if the ring is full.
+     *
+     * @return the event's sequence number
+     * @throws IllegalArgumentException if any argument is null; nothing is published
+     */
+    public long publish(String producerId, String topicId, Event<?> event) {
+        if (producerId == null || topicId == null || event == null) {
+            throw new IllegalArgumentException("producer, topic and event must all be given");
+        }
+        long sequence = cursor.getAndIncrement();
+        int attempt = 0;
+        while (sequence - slots.length > consumed.get()) {
+            wait.idle(attempt++);
+        }
+        Slot slot = slots[(int) sequence & mask];
+        slot.producerId = producerId;
+        slot.topicId = topicId;
+        slot.event = event;
+        published.set((int) sequence & mask, (int) (sequence >>> shift));
+        return sequence;
+    }
+
+    /**
+     * Waits until every event published so far has been handed to the sink.
+     */
+    public void flush() {
+        long target = cursor.get() - 1;
+        int attempt = 0;
+        while (consumed.get() < target) {
+            wait.idle(attempt++);
+        }
+    }
+
+    /**
+     * Stops the ingest thread once it has drained what is already published.
+     */
+    public void close() {
+        running = false;
+    }
+
+    public long getConsumedSequence() {
+        return consumed.get();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == (int) (sequence >>> shift);
+    }
+
+    private void drain() {
+        long next = 0;
+        int attempt = 0;
+        List<Event<?>> run = new ArrayList<>(MAX_BATCH);
+        while (running || isPublished(next)) {
+            if (!isPublished(next)) {
+                wait.idle(attempt++);
+                continue;
+            }
+            attempt = 0;
+            long end = next;
+            while (end - next < MAX_BATCH && isPublished(end)) {
+                end++;
+            }
+
+            Slot first = slots[(int) next & mask];
+            String producerId = first.producerId;
+            String topicId = first.topicId;
+            for (long s = next; s < end; s++) {
+                Slot slot = slots[(int) s & mask];
+                if (!Objects.equals(slot.producerId, producerId) || !Objects.equals(slot.topicId, topicId)) {
+                    dispatch(producerId, topicId, run);
+                    producerId = slot.producerId;
+                    topicId = slot.topicId;
+                }
+                run.add(slot.event);
+                slot.event = null;
+            }
+            dispatch(producerId, topicId, run);
+            consumed.set(end - 1);
+            next = end;
+        }
+    }
+
+    private void dispatch(String producerId, String topicId, List<Event<?>> run) {
+        if (run.isEmpty()) {
+            return;
+        }
+        try {
+            sink.append(producerId, topicId, new ArrayList<>(run));
+        } catch (RuntimeException e) {
+            System.err.println("Ingest of " + run.size() + " events from " + producerId + " failed: " + e.getMessage());
+        }
+        run.clear();
+    }
+
+    private static class Slot {
+        private String producerId;
+        private String topicId;
+        private Event<?> event;
+    }
+}
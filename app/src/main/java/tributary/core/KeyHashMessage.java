@@ -0,0 +1,36 @@
+package tributary.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes each event to a partition by consistent hashing of its key, so a key always lands on the same partition
+ * and partition expansion or splits move as few keys as possible.
+ */
+public class KeyHashMessage implements MessageAllocation {
+    @Override
+    public Map<Partition, List<Event<?>>> route(Topic<?> topic, List<Event<?>> events) {
+        Map<Partition, List<Event<?>>> routed = new LinkedHashMap<>();
+        for (Event<?> event : events) {
+            Partition p = selectPartition(topic, event);
+            if (p == null) {
+                System.err.println("Topic " + topic.getId() + " has no partitions");
+                return new LinkedHashMap<>();
+            }
+            routed.computeIfAbsent(p, k -> new ArrayList<>()).add(event);
+        }
+        return routed;
+    }
+
+    @Override
+    public Partition selectPartition(Topic<?> topic, Event<?> event) {
+        return topic.getPartitionForKey(event.getKey());
+    }
+
+    @Override
+    public String getName() {
+        return "KeyHash";
+    }
+}
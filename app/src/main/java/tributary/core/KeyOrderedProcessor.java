@@ -0,0 +1,195 @@
+package tributary.core;
+
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Processes one partition's events on several threads while keeping each key's events in order. Every event goes to
+ * the worker picked by its key's hash, and each worker is a single thread running its events in dispatch order, so
+ * different keys run concurrently and no key ever runs on two threads at once.
+ *
+ * <p>Events finish out of offset order, so the group's offset only moves up to the lowest offset still in flight.
+ * An event whose handler throws is retried in place, with backoff, on its worker, so later events of the same key
+ * wait behind it and the offset stays put until it succeeds. At most {@code maxInFlight} events are dispatched and
+ * unfinished at once.
+ *
+ * <p>Once closed, e.g. because a rebalance moved the partition away, the processor commits nothing more: events
+ * still queued are dropped unrun and left for the partition's next owner.
+ */
+public class KeyOrderedProcessor {
+    private static final long RETRY_BACKOFF_MS = 1;
+    private static final long MAX_RETRY_BACKOFF_MS = 100;
+
+    private final Partition partition;
+    private final String groupId;
+    private final String consumerId;
+    private final DeliveryHandler handler;
+    private final ExecutorService[] workers;
+    private final int maxInFlight;
+    private final TreeSet<Integer> inFlight = new TreeSet<>();
+    private int next;
+    private int committed;
+    private int running = 0;
+    private long processed = 0;
+    private long failed = 0;
+    private boolean closed = false;
+
+    public KeyOrderedProcessor(Partition partition, String groupId, String consumerId, DeliveryHandler handler,
+            int workers, int maxInFlight) {
+        this.partition = partition;
+        this.groupId = groupId;
+        this.consumerId = consumerId;
+        this.handler = handler;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.workers = new ExecutorService[Math.max(1, workers)];
+        for (int i = 0; i < this.workers.length; i++) {
+            String name = "tributary-" + consumerId + "-" + partition.getId() + "-" + i;
+            this.workers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        this.next = partition.getCurrentIndex(groupId);
+        this.committed = next;
+    }
+
+    /**
+     * Reads up to {@code max} events past the last one dispatched and hands them to their key's worker.
+     *
+     * @return the number dispatched, fewer than {@code max} if the partition ran out or too many are in flight
+     */
+    public synchronized int dispatch(int max) {
+        if (closed) {
+            return 0;
+        }
+        int room = Math.min(max, maxInFlight - inFlight.size());
+        if (room <= 0) {
+            return 0;
+        }
+        int dispatched = 0;
+        List<Event<?>> events;
+        synchronized (partition) {
+            // events dropped for capacity before they were dispatched are skipped
+            next = Math.max(next, partition.getStartOffset());
+            events = partition.readEvents(groupId, next, room);
+        }
+        for (Event<?> event : events) {
+            int offset = next++;
+            inFlight.add(offset);
+            running++;
+            String key = event.getKey();
+            workers[Math.floorMod(key == null ? 0 : key.hashCode(), workers.length)].execute(() -> run(offset, event));
+            dispatched++;
+        }
+        return dispatched;
+    }
+
+    private void run(int offset, Event<?> event) {
+        long backoff = RETRY_BACKOFF_MS;
+        while (!isClosed()) {
+            try {
+                handler.deliver(consumerId, partition.getId(), event);
+                finish(offset, true);
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Consumer " + consumerId + " failed to process offset " + offset + " of partition "
+                        + partition.getId() + ": " + e.getMessage() + ", retrying in " + backoff + " ms");
+                recordFailure();
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MS);
+        }
+        finish(offset, false);
+    }
+
+    /**
+     * @param done false if the processor was closed before the event succeeded, in which case nothing is committed
+     */
+    private synchronized void finish(int offset, boolean done) {
+        running--;
+        if (done) {
+            processed++;
+            inFlight.remove(offset);
+            int lowest = inFlight.isEmpty() ? next : inFlight.first();
+            if (!closed && lowest > committed) {
+                committed = lowest;
+                partition.setConsumptionIndex(groupId, committed);
+            }
+        }
+        if (running == 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void recordFailure() {
+        failed++;
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Waits until every dispatched event has been handled, or dropped because the processor was closed.
+     *
+     * @return false if some were still running when the timeout passed
+     */
+    public synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (running > 0) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset committed for the group: every event before it has been processed
+     */
+    public synchronized int getCommitted() {
+        return committed;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    public synchronized long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * @return the handler calls that threw, counting every retry
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public int getWorkers() {
+        return workers.length;
+    }
+
+    /**
+     * Fences the processor's commits and stops the workers. Events already dispatched but not yet run are dropped
+     * once they reach the front of their worker's queue.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package tributary.core;
+
+/**
+ * Latency distributions built from event timestamps: produce to append on a topic, and append to consume plus
+ * end to end for a consumer group. Sampled events are also logged with their trace id as they are consumed.
+ */
+public class LatencyStats {
+    private final String name;
+    private final LatencyHistogram produceToAppend = new LatencyHistogram();
+    private final LatencyHistogram appendToConsume = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+
+    public LatencyStats(String name) {
+        this.name = name;
+    }
+
+    public void recordAppend(Event<?> event) {
+        Header h = event.getHeaders();
+        produceToAppend.record(h.getAppendedAt() - h.getProducedAt());
+    }
+
+    public void recordConsume(Event<?> event, long consumedAt) {
+        Header h = event.getHeaders();
+        long appendedAt = h.getAppendedAt();
+        if (appendedAt != 0) {
+            appendToConsume.record(consumedAt - appendedAt);
+        }
+        endToEnd.record(consumedAt - h.getProducedAt());
+        if (h.getTraceId() != 0) {
+            System.out.println("Trace " + Long.toHexString(h.getTraceId()) + " event " + h.getId() + " in " + name
+                    + ": produce->append " + micros(appendedAt - h.getProducedAt()) + " us, append->consume "
+                    + micros(consumedAt - appendedAt) + " us");
+        }
+    }
+
+    public LatencyHistogram getProduceToAppend() {
+        return produceToAppend;
+    }
+
+    public LatencyHistogram getAppendToConsume() {
+        return appendToConsume;
+    }
+
+    public LatencyHistogram getEndToEnd() {
+        return endToEnd;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Latency for " + name + " (us)");
+        append(sb, "produce->append", produceToAppend);
+        append(sb, "append->consume", appendToConsume);
+        append(sb, "end-to-end", endToEnd);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String label, LatencyHistogram h) {
+        if (h.getCount() == 0) {
+            return;
+        }
+        sb.append("\n  ").append(label).append(": count ").append(h.getCount())
+                .append(" p50 ").append(micros(h.getValueAtPercentile(50)))
+                .append(" p99 ").append(micros(h.getValueAtPercentile(99)))
+                .append(" max ").append(micros(h.getMax()));
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+}
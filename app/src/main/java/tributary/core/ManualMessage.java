@@ -1,18 +1,29 @@
 package tributary.core;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class ManualMessage implements MessageAllocation {
     @Override
-    public synchronized void allocateMessage(Topic<?> topic, Event<?> event) {
-        String partitionId = event.getKey();
-        Partition p = topic.getPartition(partitionId);
-        if (p == null) {
-            System.err.println(
-                    "Partition with id " + partitionId + " does not exist, change event key or create this partition");
-            return;
+    public Map<Partition, List<Event<?>>> route(Topic<?> topic, List<Event<?>> events) {
+        Map<Partition, List<Event<?>>> routed = new LinkedHashMap<>();
+        for (Event<?> event : events) {
+            Partition p = selectPartition(topic, event);
+            if (p == null) {
+                System.err.println("Partition with id " + event.getKey()
+                        + " does not exist, change event key or create this partition");
+                continue;
+            }
+            routed.computeIfAbsent(p, k -> new ArrayList<>()).add(event);
         }
+        return routed;
+    }
 
-        p.addEvent(event);
-        System.out.println("Event " + event.getId() + " added to " + partitionId);
+    @Override
+    public Partition selectPartition(Topic<?> topic, Event<?> event) {
+        return topic.getPartition(event.getKey());
     }
 
     @Override
@@ -0,0 +1,109 @@
+package tributary.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latest event per key across a topic's partitions, kept up to date as events are appended. Point lookups go to a
+ * hash index; a sorted copy of the same entries serves key-range scans.
+ */
+public class MaterializedView implements AppendListener {
+    private final String topicId;
+    private final Map<String, Entry> latest = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Entry> sorted = new ConcurrentSkipListMap<>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public MaterializedView(String topicId) {
+        this.topicId = topicId;
+    }
+
+    @Override
+    public void appended(Partition partition, int offset, Event<?> event) {
+        String key = event.getKey();
+        if (key == null) {
+            return;
+        }
+        Entry next = new Entry(partition.getId(), offset, event);
+        Entry[] previous = new Entry[1];
+        latest.compute(key, (k, prev) -> {
+            previous[0] = prev;
+            sorted.put(k, next);
+            return next;
+        });
+        for (ChangeListener listener : listeners) {
+            listener.changed(key, previous[0], next);
+        }
+    }
+
+    /**
+     * @return the latest entry for {@code key}, or null if the key has never been written
+     */
+    public Entry get(String key) {
+        return latest.get(key);
+    }
+
+    /**
+     * @return the latest entry of every key in {@code [fromKey, toKey)}, in key order
+     */
+    public List<Entry> range(String fromKey, String toKey) {
+        return new ArrayList<>(sorted.subMap(fromKey, true, toKey, false).values());
+    }
+
+    /**
+     * Streams every later update to {@code listener}, on the appending thread.
+     */
+    public void subscribe(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int size() {
+        return latest.size();
+    }
+
+    public String getTopicId() {
+        return topicId;
+    }
+
+    /**
+     * The event currently held for a key, and where it sits in the topic.
+     */
+    public static class Entry {
+        private final String partitionId;
+        private final int offset;
+        private final Event<?> event;
+
+        Entry(String partitionId, int offset, Event<?> event) {
+            this.partitionId = partitionId;
+            this.offset = offset;
+            this.event = event;
+        }
+
+        public String getPartitionId() {
+            return partitionId;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public Event<?> getEvent() {
+            return event;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChangeListener {
+        /**
+         * @param previous the entry replaced, or null if the key is new
+         */
+        void changed(String key, Entry previous, Entry current);
+    }
+}
@@ -0,0 +1,147 @@
+package tributary.core;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the partition data of a whole Tributary under one heap budget. Appends only bump a running estimate; once it
+ * passes the budget, or on the next periodic check, a background thread measures the registered partitions and
+ * spills the coldest (least recently read) ones to disk until usage is back under {@link #LOW_WATERMARK} of the
+ * budget. The newest {@code hotEvents} events of every partition always stay on the heap.
+ */
+public class MemoryManager {
+    public static final int DEFAULT_HOT_EVENTS = 256;
+    public static final int DEFAULT_CACHED_SEGMENTS = 8;
+    private static final double LOW_WATERMARK = 0.8;
+    private static final long CHECK_INTERVAL_MS = 100;
+
+    private final long budgetBytes;
+    private final int hotEvents;
+    private final TieredStorage store;
+    private final Map<Partition, String> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong estimate = new AtomicLong();
+    private final Thread spiller;
+    private volatile boolean closed = false;
+    private long spilledBytes = 0;
+    private int spills = 0;
+
+    public MemoryManager(long budgetBytes, Path directory, int hotEvents) {
+        this.budgetBytes = budgetBytes;
+        this.hotEvents = hotEvents;
+        this.store = new TieredStorage(directory, 0, DEFAULT_CACHED_SEGMENTS);
+        this.spiller = new Thread(this::run, "tributary-spill");
+        spiller.setDaemon(true);
+        spiller.start();
+    }
+
+    /**
+     * Brings a partition under the budget. Its spilled segments go to {@code <directory>/<topicId>/<partitionId>}.
+     */
+    public void register(String topicId, Partition partition) {
+        partitions.put(partition, topicId + "/" + partition.getId());
+        partition.setMemoryManager(this);
+        appended(partition.getHeapBytes());
+    }
+
+    void appended(long bytes) {
+        if (estimate.addAndGet(bytes) > budgetBytes) {
+            LockSupport.unpark(spiller);
+        }
+    }
+
+    /**
+     * Measures every partition and, if the budget is exceeded, spills the coldest ones.
+     *
+     * @return the estimated heap bytes released
+     */
+    public synchronized long spillIfOverBudget() {
+        long used = getHeapBytes();
+        long freed = 0;
+        if (used > budgetBytes) {
+            List<Partition> coldestFirst = new ArrayList<>(partitions.keySet());
+            coldestFirst.sort(Comparator.comparingLong(Partition::getLastReadAt));
+            long target = (long) (budgetBytes * LOW_WATERMARK);
+            for (Partition partition : coldestFirst) {
+                if (used - freed <= target) {
+                    break;
+                }
+                freed += partition.spill(store, partitions.get(partition), hotEvents);
+            }
+            if (freed > 0) {
+                spilledBytes += freed;
+                spills++;
+                System.out.println("Spilled " + freed + " bytes to " + store.getDirectory() + ", " + (used - freed)
+                        + " of " + budgetBytes + " bytes on heap");
+            }
+        }
+        estimate.set(used - freed);
+        return freed;
+    }
+
+    /**
+     * @return the estimated heap bytes held by every registered partition
+     */
+    public long getHeapBytes() {
+        long total = 0;
+        for (Partition partition : partitions.keySet()) {
+            total += partition.getHeapBytes();
+        }
+        return total;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    public synchronized int getSpills() {
+        return spills;
+    }
+
+    public SegmentCache getCache() {
+        return store.getCache();
+    }
+
+    /**
+     * Stops the spill thread, waiting for a spill already under way to finish writing.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(spiller);
+        if (Thread.currentThread() != spiller) {
+            try {
+                spiller.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL_MS));
+            // measured on every tick as well: appends racing a measurement can leave the estimate low
+            if (!closed) {
+                spillIfOverBudget();
+                if (estimate.get() > budgetBytes) {
+                    // only hot data is left: wait out a full interval instead of waking on every append
+                    try {
+                        Thread.sleep(CHECK_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package tributary.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a whole topic for one consumer group in timestamp order. Each partition keeps a lookahead buffer of at most
+ * {@code lookahead} events, and a heap over the buffer heads always yields the oldest buffered event: a k-way merge
+ * that holds {@code partitions x lookahead} events at most, however large the topic.
+ *
+ * <p>A partition with nothing buffered could still receive an older event, so it holds the merge back until its
+ * watermark passes the next candidate. Its watermark is the newest timestamp it has yielded or, once it is idle,
+ * the current time less {@code maxDelayMs}, the longest an event is expected to take to reach its partition. Events
+ * that arrive later than that are still delivered, out of order, and counted as late.
+ *
+ * <p>Each poll tops up the partitions with nothing buffered once, when it starts, and a partition again only when
+ * it is emptied. One that stays empty bounds the rest of the poll by its watermark, so yielding an event costs a heap
+ * operation rather than a pass over every partition. Events reaching an idle partition mid-poll wait for the next.
+ *
+ * <p>The group's offset on a partition moves only when one of its events leaves the merge.
+ */
+public class MergedReader {
+    private final ConsumerGroup group;
+    private final int lookahead;
+    private final long maxDelayNanos;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final PriorityQueue<Lane> heads = new PriorityQueue<>(
+            Comparator.comparingLong(Lane::headTimestamp).thenComparingInt(lane -> lane.index));
+    private long lastTimestamp = Long.MIN_VALUE;
+    private long lateEvents = 0;
+
+    public MergedReader(ConsumerGroup group, int lookahead, long maxDelayMs) {
+        this.group = group;
+        this.lookahead = Math.max(1, lookahead);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+    }
+
+    /**
+     * Yields up to {@code max} events in timestamp order, fewer if an idle partition's watermark is still behind the
+     * oldest buffered event.
+     */
+    public synchronized List<Event<?>> poll(int max) {
+        addNewPartitions();
+        List<Event<?>> out = new ArrayList<>();
+        long idleWatermark = EventClock.nowNanos() - maxDelayNanos;
+        // the oldest event an idle partition could still receive, which nothing newer may overtake
+        long bound = Long.MAX_VALUE;
+        for (Lane lane : lanes) {
+            if (!lane.buffer.isEmpty()) {
+                continue;
+            }
+            if (lane.fill()) {
+                heads.add(lane);
+            } else {
+                bound = Math.min(bound, lane.watermarkAt(idleWatermark));
+            }
+        }
+        while (out.size() < max) {
+            Lane next = heads.peek();
+            if (next == null || next.headTimestamp() > bound) {
+                break;
+            }
+            heads.poll();
+            Event<?> event = next.take();
+            long timestamp = timestampOf(event);
+            if (timestamp < lastTimestamp) {
+                lateEvents++;
+            } else {
+                lastTimestamp = timestamp;
+            }
+            out.add(event);
+            if (!next.buffer.isEmpty() || next.fill()) {
+                heads.add(next);
+            } else {
+                bound = Math.min(bound, next.watermarkAt(idleWatermark));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return the events delivered after a newer one, because they reached their partition too late
+     */
+    public synchronized long getLateEvents() {
+        return lateEvents;
+    }
+
+    /**
+     * @return the events read ahead but not yet delivered, across all partitions
+     */
+    public synchronized int getBuffered() {
+        int buffered = 0;
+        for (Lane lane : lanes) {
+            buffered += lane.buffer.size();
+        }
+        return buffered;
+    }
+
+    private void addNewPartitions() {
+        List<Partition> partitions = group.getTopic().getPartitions();
+        for (int i = lanes.size(); i < partitions.size(); i++) {
+            lanes.add(new Lane(partitions.get(i), i));
+        }
+    }
+
+    private static long timestampOf(Event<?> event) {
+        return event.getHeaders().getProducedAt();
+    }
+
+    private class Lane {
+        private final Partition partition;
+        private final int index;
+        private final ArrayDeque<Event<?>> buffer = new ArrayDeque<>();
+        private int next;
+        private long watermark = Long.MIN_VALUE;
+
+        Lane(Partition partition, int index) {
+            this.partition = partition;
+            this.index = index;
+        }
+
+        /**
+         * Tops an empty buffer up from the group's committed offset, or the oldest retained one if that was dropped.
+         *
+         * @return whether anything was read
+         */
+        boolean fill() {
+            synchronized (partition) {
+                next = Math.max(partition.getCurrentIndex(group.getId()), partition.getStartOffset());
+                buffer.addAll(partition.readEvents(group.getId(), next, lookahead));
+            }
+            return !buffer.isEmpty();
+        }
+
+        Event<?> take() {
+            Event<?> event = buffer.poll();
+            partition.setConsumptionIndex(group.getId(), ++next);
+            watermark = Math.max(watermark, timestampOf(event));
+            return event;
+        }
+
+        /**
+         * @return the watermark of the lane while it has nothing buffered
+         */
+        long watermarkAt(long idleWatermark) {
+            return Math.max(watermark, idleWatermark);
+        }
+
+        long headTimestamp() {
+            return timestampOf(buffer.peek());
+        }
+    }
+}
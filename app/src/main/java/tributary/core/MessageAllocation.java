@@ -1,7 +1,18 @@
 package tributary.core;
 
+import java.util.List;
+import java.util.Map;
+
 public interface MessageAllocation {
-    public void allocateMessage(Topic<?> topic, Event<?> event);
+    /**
+     * Picks the partition each event goes to, reporting any it cannot place. Events bound for the same partition
+     * stay together and in order, so the producer appends them as one batch.
+     *
+     * @return the placed events by partition; empty if none could be placed
+     */
+    public Map<Partition, List<Event<?>>> route(Topic<?> topic, List<Event<?>> events);
+
+    public Partition selectPartition(Topic<?> topic, Event<?> event);
 
     public String getName();
 }
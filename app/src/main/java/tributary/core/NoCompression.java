@@ -0,0 +1,18 @@
+package tributary.core;
+
+public class NoCompression implements CompressionCodec {
+    @Override
+    public byte[] compress(byte[] data) {
+        return data;
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int uncompressedSize) {
+        return data;
+    }
+
+    @Override
+    public String getName() {
+        return "none";
+    }
+}
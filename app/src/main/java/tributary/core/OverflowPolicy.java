@@ -0,0 +1,5 @@
+package tributary.core;
+
+public enum OverflowPolicy {
+    BLOCK, FAIL, DROP_OLDEST
+}
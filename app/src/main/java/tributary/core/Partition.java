@@ -1,58 +1,919 @@
 package tributary.core;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class Partition {
     private String id;
+    private List<EventBatch> batches = new ArrayList<>();
+    // offset of the first unsealed event: everything below it is in a sealed batch or has been dropped
+    private int sealedCount = 0;
     private List<Event<?>> events = new ArrayList<>();
     private Map<String, Integer> consumptionIndexes = new HashMap<>();
+    private Map<String, ProducerState> producerStates = new HashMap<>();
+    private Map<Partition, Integer> fences = new HashMap<>();
+
+    private CompressionCodec codec;
+    private int batchSize;
+    private EventBatch cachedBatch;
+    private List<Event<?>> cachedEvents;
+
+    private TieredStorage tiered;
+    private int offloadedCount = 0;
+    // set while a thread writes cold segments to the tiered store, so only one does at a time
+    private boolean offloading = false;
+    private SchemaRegistry schemas = new SchemaRegistry();
+
+    private CapacityLimit limit;
+    // room taken by reserveCapacity under a BLOCK limit and not yet released
+    private long reservedEvents = 0;
+    private long reservedBytes = 0;
+    // estimated sizes: sealedBytes[i] of batches [0, i) and tailBytes[i] of the first i unsealed events, so any
+    // backlog's bytes are one subtraction (spread evenly inside a sealed batch)
+    private long[] sealedBytes = new long[16];
+    private long[] tailBytes = new long[16];
+    // offsets below startOffset have been dropped
+    private int startOffset = 0;
+    private Runnable backlogListener;
+    private List<AppendListener> appendListeners = new ArrayList<>();
+
+    private MemoryManager memory;
+    private volatile long lastReadAt = System.nanoTime();
 
     public Partition(String id) {
         this.id = id;
     }
 
+    /**
+     * @param schemas the registry record values in this partition's sealed batches are decoded with
+     */
+    public synchronized void setSchemaRegistry(SchemaRegistry schemas) {
+        this.schemas = schemas;
+    }
+
     public synchronized Event<?> consumeEvent(String consumerGroupId) {
-        Integer currentIndex = consumptionIndexes.get(consumerGroupId);
-        if (currentIndex == null) {
-            currentIndex = 0;
-        }
+        int currentIndex = Math.max(getCurrentIndex(consumerGroupId), startOffset);
 
-        if (currentIndex >= events.size()) {
+        if (currentIndex >= getSize()) {
             System.err.println("Error: No events left to be consumed");
             return null;
         }
+        if (isFenced(consumerGroupId)) {
+            System.err.println("Partition " + id + " is waiting for " + consumerGroupId + " to drain moved keys");
+            return null;
+        }
 
-        Event<?> event = events.get(currentIndex);
+        Event<?> event = getEvent(currentIndex);
         currentIndex++;
-        consumptionIndexes.put(consumerGroupId, currentIndex);
-        event.print();
+        commit(consumerGroupId, currentIndex);
         return event;
     }
 
+    /**
+     * Delivers up to {@code max} events accepted by the filter. The group offset advances past every event scanned,
+     * including the filtered ones.
+     */
+    public synchronized List<Event<?>> consumeEvents(String consumerGroupId, int max, EventFilter filter) {
+        List<Event<?>> out = new ArrayList<>();
+        if (isFenced(consumerGroupId)) {
+            return out;
+        }
+        commit(consumerGroupId, scan(getCurrentIndex(consumerGroupId), max, filter, out));
+        return out;
+    }
+
+    /**
+     * Reads up to {@code max} events from {@code offset}, or from the oldest retained offset if {@code offset} has
+     * been dropped, without moving the group's offset.
+     */
+    public synchronized List<Event<?>> readEvents(String consumerGroupId, int offset, int max) {
+        List<Event<?>> out = new ArrayList<>();
+        if (!isFenced(consumerGroupId)) {
+            scan(offset, max, EventFilter.ALL, out);
+        }
+        return out;
+    }
+
+    /**
+     * Captures offsets {@code [from, to)} so they can be read without holding the partition lock: sealed segments
+     * never change once written, and the matching part of the unsealed tail is copied. No group offset moves.
+     */
+    public synchronized Slice slice(int from, int to) {
+        lastReadAt = System.nanoTime();
+        int start = Math.max(startOffset, from);
+        int end = Math.min(to, getSize());
+        List<EventBatch> sealed = new ArrayList<>();
+        if (start < Math.min(end, sealedCount)) {
+            for (int i = findBatchIndex(start); i < batches.size() && batches.get(i).getBaseOffset() < end; i++) {
+                sealed.add(batches.get(i));
+            }
+        }
+        int tailStart = Math.max(start, sealedCount);
+        List<Event<?>> tail = end > tailStart
+                ? new ArrayList<>(events.subList(tailStart - sealedCount, end - sealedCount)) : new ArrayList<>();
+        return new Slice(start, Math.max(start, end), sealed, tailStart, tail, schemas);
+    }
+
+    /**
+     * Moves the group's offset from {@code expected} to {@code offset}, failing if someone else moved it meanwhile.
+     */
+    public synchronized boolean commitIfAt(String consumerGroupId, int expected, int offset) {
+        if (getCurrentIndex(consumerGroupId) != expected) {
+            return false;
+        }
+        commit(consumerGroupId, offset);
+        return true;
+    }
+
     public String getId() {
         return id;
     }
 
-    public void addEvent(Event<?> event) {
+    /**
+     * @return false if the partition is at capacity and its overflow policy rejected the event
+     */
+    public boolean addEvent(Event<?> event) {
+        boolean added;
+        synchronized (this) {
+            added = append(event);
+        }
+        offloadCold();
+        return added;
+    }
+
+    private boolean append(Event<?> event) {
+        int bytes = event.getSizeInBytes();
+        if (!reserve(1, bytes)) {
+            return false;
+        }
+        recordBytes(bytes);
+        event.getHeaders().markAppended(EventClock.nowNanos());
         events.add(event);
+        notifyAppended(event);
+        if (codec != null && events.size() >= batchSize) {
+            seal();
+        }
+        if (memory != null) {
+            memory.appended(bytes);
+        }
+        return true;
+    }
+
+    /**
+     * Idempotent append: rejects the event if this producer already wrote an equal or later sequence here, or if
+     * its id is within the producer's recent id window.
+     *
+     * @return true if the event was appended
+     */
+    public boolean addEvent(Event<?> event, String producerId, int sequence, int dedupWindow) {
+        synchronized (this) {
+            ProducerState state = producerStates.computeIfAbsent(producerId, k -> new ProducerState(dedupWindow));
+            if (sequence <= state.lastSequence || state.ids.isDuplicate(event.getId())) {
+                System.err.println("Duplicate event " + event.getId() + " rejected by " + id);
+                return false;
+            }
+            if (!append(event)) {
+                return false;
+            }
+            state.lastSequence = sequence;
+            state.ids.add(event.getId());
+        }
+        offloadCold();
+        return true;
+    }
+
+    /**
+     * Appends a produced batch. On a compressed partition the batch (plus any pending tail) is compressed once here.
+     */
+    public boolean addEvents(List<Event<?>> batch) {
+        boolean added;
+        synchronized (this) {
+            added = appendAll(batch);
+        }
+        offloadCold();
+        return added;
+    }
+
+    private boolean appendAll(List<Event<?>> batch) {
+        long bytes = 0;
+        for (Event<?> e : batch) {
+            bytes += e.getSizeInBytes();
+        }
+        if (!reserve(batch.size(), bytes)) {
+            return false;
+        }
+        long appendedAt = EventClock.nowNanos();
+        for (Event<?> e : batch) {
+            recordBytes(e.getSizeInBytes());
+            e.getHeaders().markAppended(appendedAt);
+            events.add(e);
+            notifyAppended(e);
+        }
+        if (codec != null) {
+            seal();
+        }
+        if (memory != null) {
+            memory.appended(bytes);
+        }
+        return true;
+    }
+
+    /**
+     * Replays every event already in the partition to {@code listener}, then keeps it told about new appends.
+     */
+    public synchronized void addAppendListener(AppendListener listener) {
+        for (int offset = startOffset; offset < getSize(); offset++) {
+            listener.appended(this, offset, getEvent(offset));
+        }
+        appendListeners.add(listener);
+    }
+
+    private void notifyAppended(Event<?> event) {
+        for (AppendListener listener : appendListeners) {
+            listener.appended(this, getSize() - 1, event);
+        }
+    }
+
+    public synchronized int getSize() {
+        return sealedCount + events.size();
+    }
+
+    /**
+     * @return the event at {@code offset}, or null if it has been dropped
+     */
+    public synchronized Event<?> getEvent(int offset) {
+        lastReadAt = System.nanoTime();
+        if (offset < startOffset) {
+            return null;
+        }
+        if (offset >= sealedCount) {
+            return events.get(offset - sealedCount);
+        }
+        EventBatch batch = findBatch(offset);
+        if (batch != cachedBatch) {
+            cachedEvents = batch.decode(schemas);
+            cachedBatch = batch;
+        }
+        return cachedEvents.get(offset - batch.getBaseOffset());
+    }
+
+    public synchronized List<Event<?>> getEvents() {
+        if (batches.isEmpty() && startOffset <= sealedCount) {
+            return events;
+        }
+        List<Event<?>> all = new ArrayList<>(getSize() - startOffset);
+        scan(startOffset, Integer.MAX_VALUE, EventFilter.ALL, all);
+        return all;
+    }
+
+    public void setCompression(CompressionCodec codec, int batchSize) {
+        synchronized (this) {
+            this.codec = codec;
+            this.batchSize = Math.max(1, batchSize);
+            if (codec != null && events.size() >= this.batchSize) {
+                seal();
+            }
+        }
+        offloadCold();
+    }
+
+    /**
+     * The partition's data as sealed batches, with the unsealed tail encoded into a transient batch of its own.
+     */
+    public synchronized List<EventBatch> snapshotBatches() {
+        List<EventBatch> all = new ArrayList<>(batches);
+        int from = Math.max(0, startOffset - sealedCount);
+        if (from < events.size()) {
+            all.add(new EventBatch(sealedCount + from, events.subList(from, events.size()),
+                    codec != null ? codec : new NoCompression()));
+        }
+        return all;
+    }
+
+    public synchronized Map<String, Integer> getConsumptionIndexes() {
+        return new HashMap<>(consumptionIndexes);
+    }
+
+    /**
+     * Replaces the partition's contents with already sealed, consecutive batches, e.g. mapped from a snapshot. Each
+     * batch is accounted by its uncompressed size, so no event has to be decoded. Fences and producer states belong
+     * to the replaced contents and are cleared; a snapshot's fences are added back afterwards.
+     */
+    public synchronized void restore(List<EventBatch> restored) {
+        fences = new HashMap<>();
+        producerStates = new HashMap<>();
+        batches = new ArrayList<>();
+        events = new ArrayList<>();
+        cachedBatch = null;
+        cachedEvents = null;
+        offloadedCount = 0;
+        sealedBytes = new long[16];
+        tailBytes = new long[16];
+        startOffset = restored.isEmpty() ? 0 : restored.get(0).getBaseOffset();
+        sealedCount = startOffset;
+        for (EventBatch batch : restored) {
+            addBatch(batch, batch.getUncompressedSize());
+        }
+    }
+
+    public void setTieredStorage(TieredStorage tiered) {
+        synchronized (this) {
+            this.tiered = tiered;
+        }
+        offloadCold();
+    }
+
+    public synchronized int getOffloadedSegments() {
+        return offloadedCount;
+    }
+
+    /**
+     * Bytes of sealed segments still held on the heap.
+     */
+    public synchronized long getHotBytes() {
+        long total = 0;
+        for (int i = offloadedCount; i < batches.size(); i++) {
+            total += batches.get(i).getStoredSize();
+        }
+        return total;
+    }
+
+    /**
+     * Estimated heap held by the partition's data: the unsealed tail plus every sealed segment not yet on disk.
+     */
+    public synchronized long getHeapBytes() {
+        return tailBytes[events.size()] + getHotBytes();
+    }
+
+    public synchronized void setMemoryManager(MemoryManager memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * @return when the partition was last read, in {@link System#nanoTime} units
+     */
+    public long getLastReadAt() {
+        return lastReadAt;
+    }
+
+    /**
+     * Moves everything but the newest {@code keepEvents} events to disk: the older part of the unsealed tail is
+     * sealed into a segment, then every sealed segment still on the heap is archived to {@code store}. Spilled
+     * segments are read back like tiered ones when a fetch reaches them.
+     *
+     * <p>Only capturing the cold data and swapping the spilled segments in take the partition lock; compressing and
+     * writing run outside it, so appends and reads carry on meanwhile. If the tail was sealed or dropped in the
+     * meantime, the new segment is discarded and the next spill picks the events up again; the files written for
+     * segments that were not swapped in are deleted.
+     *
+     * @return the estimated heap bytes released
+     */
+    public long spill(TieredStorage store, String directoryName, int keepEvents) {
+        List<Event<?>> tail;
+        List<Event<?>> cold;
+        int base;
+        List<EventBatch> hot = new ArrayList<>();
+        CompressionCodec batchCodec;
+        synchronized (this) {
+            compactTail(true);
+            tail = events;
+            base = sealedCount;
+            cold = new ArrayList<>(events.subList(0, Math.max(0, events.size() - keepEvents)));
+            int hotFrom = getSize() - keepEvents;
+            for (int i = offloadedCount; i < batches.size(); i++) {
+                EventBatch batch = batches.get(i);
+                if (batch.getBaseOffset() + batch.getCount() > hotFrom) {
+                    break;
+                }
+                hot.add(batch);
+            }
+            batchCodec = codec != null ? codec : new NoCompression();
+        }
+
+        EventBatch sealed = cold.isEmpty() ? null : new EventBatch(base, cold, batchCodec);
+        if (sealed != null) {
+            hot.add(sealed);
+        }
+        List<BatchSource> archived = new ArrayList<>();
+        for (EventBatch batch : hot) {
+            try {
+                archived.add(batch.isOffloaded() ? null : store.archive(directoryName, batch));
+            } catch (IOException e) {
+                System.err.println("Could not spill segment " + batch.getBaseOffset() + " of " + id + ": "
+                        + e.getMessage());
+                break;
+            }
+        }
+
+        long released;
+        int swapped = 0;
+        synchronized (this) {
+            long before = getHeapBytes();
+            if (sealed != null && events == tail) {
+                addBatch(sealed, tailBytes[cold.size()]);
+                events = new ArrayList<>(events.subList(cold.size(), events.size()));
+                shiftTail(cold.size());
+            }
+            for (; swapped < archived.size(); swapped++) {
+                EventBatch batch = hot.get(swapped);
+                if (offloadedCount >= batches.size() || batches.get(offloadedCount) != batch) {
+                    break;
+                }
+                if (archived.get(swapped) != null) {
+                    batch.offload(archived.get(swapped));
+                }
+                if (batch == cachedBatch) {
+                    cachedBatch = null;
+                    cachedEvents = null;
+                }
+                offloadedCount++;
+            }
+            released = before - getHeapBytes();
+        }
+        for (int i = swapped; i < archived.size(); i++) {
+            if (archived.get(i) != null) {
+                try {
+                    store.discard(directoryName, hot.get(i));
+                } catch (IOException e) {
+                    System.err.println("Could not delete spilled segment " + hot.get(i).getBaseOffset() + " of " + id
+                            + ": " + e.getMessage());
+                }
+            }
+        }
+        return released;
+    }
+
+    public synchronized CompressionCodec getCompression() {
+        return codec;
+    }
+
+    public synchronized long getStoredBytes() {
+        long total = 0;
+        for (EventBatch batch : batches) {
+            total += batch.getStoredSize();
+        }
+        return total;
+    }
+
+    public synchronized long getUncompressedBytes() {
+        long total = 0;
+        for (EventBatch batch : batches) {
+            total += batch.getUncompressedSize();
+        }
+        return total;
+    }
+
+    public synchronized double getCompressionRatio() {
+        long stored = getStoredBytes();
+        return stored == 0 ? 1.0 : (double) getUncompressedBytes() / stored;
     }
 
-    public int getSize() {
+    public synchronized int getPendingCount() {
         return events.size();
     }
 
-    public List<Event<?>> getEvents() {
-        return events;
+    public synchronized void setConsumptionIndex(String groupId, int index) {
+        commit(groupId, index);
     }
 
-    public void setConsumptionIndex(String groupId, int index) {
-        consumptionIndexes.put(groupId, index);
+    /**
+     * Holds this partition's events back from a group until the group has read {@code source} up to {@code offset}.
+     */
+    public synchronized void addFence(Partition source, int offset) {
+        if (offset > 0) {
+            fences.put(source, offset);
+        }
+    }
+
+    /**
+     * @return a copy of the fences, each source partition with the offset groups must consume it up to
+     */
+    public synchronized Map<Partition, Integer> getFences() {
+        return new HashMap<>(fences);
+    }
+
+    public synchronized boolean isFenced(String groupId) {
+        for (Map.Entry<Partition, Integer> fence : fences.entrySet()) {
+            if (fence.getKey().getCurrentIndex(groupId) < fence.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void registerGroup(String groupId) {
+        consumptionIndexes.putIfAbsent(groupId, 0);
+    }
+
+    public synchronized void setCapacityLimit(CapacityLimit limit) {
+        this.limit = limit;
+        notifyAll();
+    }
+
+    public synchronized CapacityLimit getCapacityLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the oldest offset still stored; everything below it has been dropped
+     */
+    public synchronized int getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Runs {@code listener} whenever a group's offset moves, which may free backlog capacity. It is called with the
+     * partition locked, so it must not block or lock anything else.
+     */
+    public synchronized void setBacklogListener(Runnable listener) {
+        this.backlogListener = listener;
+    }
+
+    /**
+     * The offset of the oldest event some consumer group still has to read.
+     */
+    public synchronized int getSlowestOffset() {
+        int size = getSize();
+        int slowest = consumptionIndexes.isEmpty() ? 0 : size;
+        for (int offset : consumptionIndexes.values()) {
+            slowest = Math.min(slowest, offset);
+        }
+        return Math.max(slowest, startOffset);
+    }
+
+    public synchronized int getBacklogEvents() {
+        return getSize() - getSlowestOffset();
+    }
+
+    public synchronized long getBacklogBytes() {
+        return bytesBefore(getSize()) - bytesBefore(getSlowestOffset());
+    }
+
+    public synchronized long getRemainingCapacity() {
+        return limit == null ? Long.MAX_VALUE : limit.remainingEvents(getBacklogEvents() + reservedEvents);
+    }
+
+    /**
+     * Under a BLOCK limit, waits until the backlog plus the room already reserved leaves space for the events, then
+     * reserves it until {@link #releaseCapacity}. Producers call this before taking their own locks or handing the
+     * append to an event loop, so the wait never holds up their other partitions or the loop that frees capacity.
+     * Other policies are applied by the append itself.
+     *
+     * @return false if the wait timed out or was interrupted
+     */
+    public synchronized boolean reserveCapacity(int count, long bytes) {
+        long deadline = limit == null ? 0 : System.currentTimeMillis() + limit.getBlockTimeoutMs();
+        while (limit != null && limit.getPolicy() == OverflowPolicy.BLOCK) {
+            if (limit.fits(getBacklogEvents() + reservedEvents, getBacklogBytes() + reservedBytes, count, bytes)) {
+                reservedEvents += count;
+                reservedBytes += bytes;
+                return true;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                System.err.println("Partition " + id + " full: timed out waiting for capacity");
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns room taken by {@link #reserveCapacity} once the events have been appended, or have failed to be.
+     */
+    public synchronized void releaseCapacity(int count, long bytes) {
+        reservedEvents = Math.max(0, reservedEvents - count);
+        reservedBytes = Math.max(0, reservedBytes - bytes);
+        notifyAll();
+    }
+
+    /**
+     * Drops the oldest backlog event, and every event before it, by moving every group sitting on it past it and
+     * discarding the storage below it.
+     *
+     * @return false if there was no backlog to drop
+     */
+    public synchronized boolean dropOldest() {
+        int slowest = getSlowestOffset();
+        if (slowest >= getSize()) {
+            return false;
+        }
+        for (Map.Entry<String, Integer> entry : consumptionIndexes.entrySet()) {
+            if (entry.getValue() <= slowest) {
+                entry.setValue(slowest + 1);
+            }
+        }
+        discardBefore(slowest + 1);
+        System.err.println("Partition " + id + " full: dropped event at offset " + slowest);
+        return true;
+    }
+
+    /**
+     * Frees every sealed batch lying wholly below {@code offset}. Dropped tail events are released in bulk once
+     * they make up half the tail, so dropping one event at a time stays O(1) amortised.
+     */
+    private void discardBefore(int offset) {
+        startOffset = Math.max(startOffset, offset);
+        int drop = 0;
+        while (drop < batches.size() && batches.get(drop).getBaseOffset() + batches.get(drop).getCount() <= offset) {
+            if (batches.get(drop) == cachedBatch) {
+                cachedBatch = null;
+                cachedEvents = null;
+            }
+            drop++;
+        }
+        if (drop > 0) {
+            batches.subList(0, drop).clear();
+            offloadedCount = Math.max(0, offloadedCount - drop);
+            for (int i = 0; i <= batches.size(); i++) {
+                sealedBytes[i] = sealedBytes[i + drop] - sealedBytes[drop];
+            }
+        }
+        compactTail(false);
+    }
+
+    /**
+     * Removes the dropped prefix of the unsealed tail: always if {@code force}, otherwise once it is half the tail.
+     */
+    private void compactTail(boolean force) {
+        int dropped = Math.min(events.size(), startOffset - sealedCount);
+        if (dropped <= 0 || (!force && dropped * 2 < events.size())) {
+            return;
+        }
+        events = new ArrayList<>(events.subList(dropped, events.size()));
+        shiftTail(dropped);
+        sealedCount += dropped;
+    }
+
+    /**
+     * Applies the capacity limit to an append. Never waits: under a BLOCK limit the caller already waited for room
+     * in {@link #reserveCapacity}, so an append that still does not fit is rejected.
+     */
+    private boolean reserve(int count, long bytes) {
+        if (limit == null) {
+            return true;
+        }
+        while (!limit.fits(getBacklogEvents(), getBacklogBytes(), count, bytes)) {
+            switch (limit.getPolicy()) {
+            case DROP_OLDEST:
+                if (!dropOldest()) {
+                    System.err.println("Partition " + id + " cannot fit " + count + " events");
+                    return false;
+                }
+                break;
+            default:
+                System.err.println("Partition " + id + " full: " + limit);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Accounts for the event about to be added to the tail.
+     */
+    private void recordBytes(int bytes) {
+        int size = events.size();
+        if (size + 1 >= tailBytes.length) {
+            tailBytes = Arrays.copyOf(tailBytes, tailBytes.length * 2);
+        }
+        tailBytes[size + 1] = tailBytes[size] + bytes;
+    }
+
+    private long bytesBefore(int offset) {
+        if (offset >= sealedCount) {
+            return sealedBytes[batches.size()] + tailBytes[offset - sealedCount];
+        }
+        int i = findBatchIndex(offset);
+        EventBatch batch = batches.get(i);
+        long batchBytes = sealedBytes[i + 1] - sealedBytes[i];
+        return sealedBytes[i] + batchBytes * (offset - batch.getBaseOffset()) / batch.getCount();
     }
 
-    public int getCurrentIndex(String consumerGroupId) {
+    private void addBatch(EventBatch batch, long bytes) {
+        batches.add(batch);
+        int i = batches.size();
+        if (i >= sealedBytes.length) {
+            sealedBytes = Arrays.copyOf(sealedBytes, sealedBytes.length * 2);
+        }
+        sealedBytes[i] = sealedBytes[i - 1] + bytes;
+        sealedCount = batch.getBaseOffset() + batch.getCount();
+    }
+
+    /**
+     * Seals the first {@code count} tail events into a batch of their own.
+     */
+    private void sealPrefix(int count, CompressionCodec batchCodec) {
+        addBatch(new EventBatch(sealedCount, events.subList(0, count), batchCodec), tailBytes[count]);
+        events = new ArrayList<>(events.subList(count, events.size()));
+        shiftTail(count);
+    }
+
+    private void shiftTail(int removed) {
+        long base = tailBytes[removed];
+        for (int i = 0; i <= events.size(); i++) {
+            tailBytes[i] = tailBytes[i + removed] - base;
+        }
+    }
+
+    private void commit(String groupId, int offset) {
+        consumptionIndexes.put(groupId, offset);
+        if (limit != null) {
+            notifyAll();
+        }
+        if (backlogListener != null) {
+            backlogListener.run();
+        }
+    }
+
+    public synchronized int getCurrentIndex(String consumerGroupId) {
         return consumptionIndexes.getOrDefault(consumerGroupId, 0);
     }
+
+    private void seal() {
+        compactTail(true);
+        if (events.isEmpty()) {
+            return;
+        }
+        sealPrefix(events.size(), codec);
+    }
+
+    /**
+     * Writes sealed segments beyond the tiered store's hot ones to disk. Must be called without the partition lock:
+     * only picking the cold segments and swapping the written ones in take it, so appends and reads carry on while
+     * the files are written. A segment that was dropped or replaced meanwhile is left on the heap.
+     */
+    private void offloadCold() {
+        TieredStorage store;
+        synchronized (this) {
+            if (tiered == null || offloading) {
+                return;
+            }
+            store = tiered;
+            offloading = true;
+        }
+        try {
+            List<EventBatch> cold;
+            while (!(cold = coldBatches(store)).isEmpty()) {
+                List<BatchSource> archived = new ArrayList<>();
+                for (EventBatch batch : cold) {
+                    try {
+                        archived.add(batch.isOffloaded() ? null : store.archive(id, batch));
+                    } catch (IOException e) {
+                        System.err.println("Could not archive segment " + batch.getBaseOffset() + " of " + id + ": "
+                                + e.getMessage());
+                        break;
+                    }
+                }
+                synchronized (this) {
+                    for (int i = 0; i < archived.size(); i++) {
+                        EventBatch batch = cold.get(i);
+                        if (offloadedCount >= batches.size() || batches.get(offloadedCount) != batch) {
+                            break;
+                        }
+                        if (archived.get(i) != null) {
+                            batch.offload(archived.get(i));
+                        }
+                        if (batch == cachedBatch) {
+                            cachedBatch = null;
+                            cachedEvents = null;
+                        }
+                        offloadedCount++;
+                    }
+                }
+                if (archived.size() < cold.size()) {
+                    return;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                offloading = false;
+            }
+        }
+    }
+
+    private synchronized List<EventBatch> coldBatches(TieredStorage store) {
+        if (tiered != store) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(batches.subList(offloadedCount,
+                Math.max(offloadedCount, batches.size() - store.getHotSegments())));
+    }
+
+    private int scan(int offset, int max, EventFilter filter, List<Event<?>> out) {
+        lastReadAt = System.nanoTime();
+        offset = Math.max(offset, startOffset);
+        int size = getSize();
+        while (offset < size && out.size() < max) {
+            if (offset >= sealedCount) {
+                Event<?> e = events.get(offset - sealedCount);
+                if (filter.test(e)) {
+                    out.add(e);
+                }
+                offset++;
+                continue;
+            }
+            EventBatch batch = findBatch(offset);
+            if (batch == cachedBatch) {
+                for (; batch.contains(offset) && out.size() < max; offset++) {
+                    Event<?> e = cachedEvents.get(offset - batch.getBaseOffset());
+                    if (filter.test(e)) {
+                        out.add(e);
+                    }
+                }
+            } else {
+                offset = batch.select(offset, filter, max - out.size(), out, schemas);
+            }
+        }
+        return offset;
+    }
+
+    private EventBatch findBatch(int offset) {
+        return batches.get(findBatchIndex(offset));
+    }
+
+    private int findBatchIndex(int offset) {
+        int lo = 0;
+        int hi = batches.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            EventBatch batch = batches.get(mid);
+            if (offset < batch.getBaseOffset()) {
+                hi = mid - 1;
+            } else if (offset >= batch.getBaseOffset() + batch.getCount()) {
+                lo = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        throw new IndexOutOfBoundsException("Offset " + offset + " is not stored in partition " + id);
+    }
+
+    /**
+     * Offsets {@code [from, to)} of a partition: the sealed segments overlapping them, then the tail events from
+     * {@code tailBase} on.
+     */
+    public static class Slice {
+        private final int from;
+        private final int to;
+        private final List<EventBatch> sealed;
+        private final int tailBase;
+        private final List<Event<?>> tail;
+        private final SchemaRegistry schemas;
+
+        Slice(int from, int to, List<EventBatch> sealed, int tailBase, List<Event<?>> tail, SchemaRegistry schemas) {
+            this.from = from;
+            this.to = to;
+            this.sealed = sealed;
+            this.tailBase = tailBase;
+            this.tail = tail;
+            this.schemas = schemas;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
+
+        public List<EventBatch> getSealed() {
+            return sealed;
+        }
+
+        public int getTailBase() {
+            return tailBase;
+        }
+
+        public List<Event<?>> getTail() {
+            return tail;
+        }
+
+        /**
+         * @return the registry the sealed segments are decoded with
+         */
+        public SchemaRegistry getSchemas() {
+            return schemas;
+        }
+    }
+
+    private static class ProducerState {
+        private int lastSequence = -1;
+        private DuplicateFilter ids;
+
+        ProducerState(int dedupWindow) {
+            this.ids = new DuplicateFilter(dedupWindow);
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package tributary.core;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shared-nothing execution mode: every partition is owned by one {@link PartitionLoop}, and every append or fetch
+ * for it runs on that loop's thread. Partitions are handed to loops round-robin as they are first used, so a topic
+ * with at least as many partitions as loops keeps every loop busy.
+ *
+ * <p>Closing the executor lets every task already submitted finish; tasks submitted afterwards fail.
+ */
+public class PartitionExecutor {
+    private final PartitionLoop[] loops;
+    private final Map<Partition, PartitionLoop> owners = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    public PartitionExecutor(int threads) {
+        loops = new PartitionLoop[Math.max(1, threads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new PartitionLoop("tributary-loop-" + i);
+        }
+    }
+
+    public PartitionLoop ownerOf(Partition partition) {
+        return owners.computeIfAbsent(partition, p -> loops[nextLoop.getAndIncrement() % loops.length]);
+    }
+
+    /**
+     * Runs the task on the partition's owning loop.
+     */
+    public <T> CompletableFuture<T> submit(Partition partition, Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            ownerOf(partition).execute(() -> {
+                try {
+                    result.complete(task.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public int getThreadCount() {
+        return loops.length;
+    }
+
+    public void close() {
+        for (PartitionLoop loop : loops) {
+            loop.close();
+        }
+    }
+}
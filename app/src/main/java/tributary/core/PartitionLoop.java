@@ -0,0 +1,154 @@
+package tributary.core;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single thread that runs every request for the partitions it owns. Each submitting thread gets its own
+ * {@link SpscQueue} into the loop, so no queue ever has more than one writer. The queue of a thread that has died is
+ * dropped once it is empty.
+ *
+ * <p>Closing the loop rejects new tasks but still runs every task already queued.
+ */
+public class PartitionLoop implements Runnable {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final List<CallerQueue> inbound = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<CallerQueue> callerQueue = ThreadLocal.withInitial(() -> {
+        CallerQueue queue = new CallerQueue(Thread.currentThread());
+        inbound.add(queue);
+        return queue;
+    });
+    private final Thread thread;
+    // callers between checking running and finishing their offer; the loop's final drain waits for them
+    private final AtomicInteger submitting = new AtomicInteger();
+    private volatile boolean running = true;
+    private volatile boolean idle = false;
+    private long executed = 0;
+
+    public PartitionLoop(String name) {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a task from the calling thread, spinning while that thread's queue is full.
+     *
+     * @throws RejectedExecutionException if the loop has been closed
+     */
+    public void execute(Runnable task) {
+        submitting.incrementAndGet();
+        try {
+            if (!running) {
+                throw new RejectedExecutionException("Event loop " + getName() + " is closed");
+            }
+            SpscQueue<Runnable> queue = callerQueue.get().queue;
+            while (!queue.offer(task)) {
+                LockSupport.unpark(thread);
+                Thread.yield();
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            int ran = runQueued();
+            if (ran == 0) {
+                removeAbandonedQueues();
+                idle = true;
+                if (!hasWork()) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+        while (submitting.get() > 0) {
+            Thread.yield();
+        }
+        while (runQueued() > 0) {
+            continue;
+        }
+    }
+
+    private int runQueued() {
+        int ran = 0;
+        for (CallerQueue caller : inbound) {
+            Runnable task;
+            while ((task = caller.queue.poll()) != null) {
+                task.run();
+                ran++;
+            }
+        }
+        executed += ran;
+        return ran;
+    }
+
+    /**
+     * Drops the queues of threads that have died, once everything they queued has run.
+     */
+    private void removeAbandonedQueues() {
+        for (CallerQueue caller : inbound) {
+            Thread owner = caller.owner.get();
+            if ((owner == null || !owner.isAlive()) && caller.queue.isEmpty()) {
+                inbound.remove(caller);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting tasks; the ones already queued still run before the thread exits.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    public String getName() {
+        return thread.getName();
+    }
+
+    /**
+     * @return the submitting threads the loop currently keeps a queue for
+     */
+    public int getInboundQueues() {
+        return inbound.size();
+    }
+
+    /**
+     * Only meaningful when read from the loop itself or after it has gone quiet.
+     */
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    private boolean hasWork() {
+        for (CallerQueue caller : inbound) {
+            if (!caller.queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class CallerQueue {
+        private final WeakReference<Thread> owner;
+        private final SpscQueue<Runnable> queue = new SpscQueue<>(QUEUE_CAPACITY);
+
+        CallerQueue(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+    }
+}
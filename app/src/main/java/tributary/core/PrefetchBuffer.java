@@ -0,0 +1,161 @@
+package tributary.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Read-ahead queue for one partition of one consumer. Fetches run on a shared background pool and only read the
+ * partition; the group offset moves when {@link #poll} hands events out. A byte limit of 0 means no byte limit, as
+ * for {@link CapacityLimit}.
+ */
+public class PrefetchBuffer {
+    private static final long FETCH_TIMEOUT_MS = 1000;
+    private static final ExecutorService FETCHER = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "tributary-prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Partition partition;
+    private final String groupId;
+    private final int maxEvents;
+    private final long maxBytes;
+
+    private final ArrayDeque<Event<?>> buffered = new ArrayDeque<>();
+    private long bufferedBytes = 0;
+    // group offset of the head of the buffer, and the next offset to read ahead from
+    private int deliveredOffset;
+    private int fetchOffset;
+    private boolean fetching = false;
+    private int generation = 0;
+    private boolean closed = false;
+
+    public PrefetchBuffer(Partition partition, String groupId, int maxEvents, long maxBytes) {
+        this.partition = partition;
+        this.groupId = groupId;
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.deliveredOffset = partition.getCurrentIndex(groupId);
+        this.fetchOffset = deliveredOffset;
+    }
+
+    /**
+     * Starts a background read if the buffer has room and no read is in flight.
+     */
+    public synchronized void fill() {
+        int room = maxEvents - buffered.size();
+        if (closed || fetching || room <= 0 || bytesFull()) {
+            return;
+        }
+        fetching = true;
+        int gen = generation;
+        int from = fetchOffset;
+        FETCHER.execute(() -> fetch(gen, from, room));
+    }
+
+    /**
+     * Hands out up to {@code max} buffered events and commits them, waiting for an in-flight read if the buffer is
+     * empty. Falls back to a direct read if the group offset was moved behind the buffer's back.
+     */
+    public synchronized List<Event<?>> poll(int max) {
+        if (partition.getCurrentIndex(groupId) != deliveredOffset) {
+            invalidate();
+        }
+        fill();
+        long deadline = System.currentTimeMillis() + FETCH_TIMEOUT_MS;
+        while (buffered.isEmpty() && fetching) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        List<Event<?>> out = new ArrayList<>();
+        long bytes = 0;
+        while (out.size() < max && !buffered.isEmpty()) {
+            Event<?> e = buffered.poll();
+            bytes += e.getSizeInBytes();
+            out.add(e);
+        }
+        if (out.isEmpty()) {
+            return out;
+        }
+        if (!partition.commitIfAt(groupId, deliveredOffset, deliveredOffset + out.size())) {
+            invalidate();
+            return partition.consumeEvents(groupId, max, EventFilter.ALL);
+        }
+        deliveredOffset += out.size();
+        bufferedBytes -= bytes;
+        fill();
+        return out;
+    }
+
+    /**
+     * Drops everything buffered and restarts read-ahead from the group's committed offset. Reads already in flight
+     * are discarded when they land.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        buffered.clear();
+        bufferedBytes = 0;
+        deliveredOffset = partition.getCurrentIndex(groupId);
+        fetchOffset = deliveredOffset;
+    }
+
+    /**
+     * Invalidates the buffer for good, once its partition has been assigned elsewhere.
+     */
+    public synchronized void close() {
+        closed = true;
+        invalidate();
+    }
+
+    public synchronized int getBufferedCount() {
+        return buffered.size();
+    }
+
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public Partition getPartition() {
+        return partition;
+    }
+
+    private boolean bytesFull() {
+        return maxBytes > 0 && bufferedBytes >= maxBytes;
+    }
+
+    private void fetch(int gen, int from, int room) {
+        List<Event<?>> read = new ArrayList<>();
+        try {
+            read = partition.readEvents(groupId, from, room);
+        } finally {
+            synchronized (this) {
+                fetching = false;
+                if (gen == generation) {
+                    for (Event<?> e : read) {
+                        if (bytesFull()) {
+                            break;
+                        }
+                        buffered.add(e);
+                        bufferedBytes += e.getSizeInBytes();
+                        fetchOffset++;
+                    }
+                } else {
+                    fill();
+                }
+                notifyAll();
+            }
+        }
+    }
+}
@@ -1,23 +1,335 @@
 package tributary.core;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
 public class Producer<T> {
+    private static final int DEFAULT_DEDUP_WINDOW = 1024;
+
     private String id;
     private MessageAllocation allocation;
     private String type;
+    private boolean idempotent;
+    private Map<String, Integer> nextSequences = new HashMap<>();
+    private int dedupWindow = DEFAULT_DEDUP_WINDOW;
+    private Schema schema;
+    private volatile Quota quota;
+    private volatile double traceSampleRate = 0;
+    private volatile boolean quiet = false;
 
     public Producer(String id, MessageAllocation allocation, String type) {
+        this(id, allocation, type, false);
+    }
+
+    public Producer(String id, MessageAllocation allocation, String type, boolean idempotent) {
         this.id = id;
         this.allocation = allocation;
         this.type = type;
-        System.out.println("Producer " + id + " created with type " + type + " and allocation " + allocation.getName());
+        this.idempotent = idempotent;
+        System.out.println("Producer " + id + " created with type " + type + " and allocation " + allocation.getName()
+                + (idempotent ? " (idempotent)" : ""));
+    }
+
+    public Producer(String id, MessageAllocation allocation, Schema schema, boolean idempotent) {
+        this(id, allocation, schema.getName(), idempotent);
+        this.schema = schema;
+    }
+
+    /**
+     * Quota throttling and capacity reservation, for the topic and then the chosen partition, wait outside the
+     * producer's lock, so a producer slowed down by its quota or blocked on one full partition does not hold up its
+     * other callers or partitions.
+     *
+     * @return whether the event was appended
+     */
+    public boolean produceEvent(Topic<?> topic, Event<?> event) {
+        synchronized (this) {
+            if (!accepts(topic, event)) {
+                System.err.println("Event and producer/topic types are different");
+                return false;
+            }
+            sample(event);
+        }
+        throttle(1, event.getSizeInBytes());
+        if (!topic.reserveCapacity(1, event.getSizeInBytes())) {
+            return false;
+        }
+        try {
+            Map<Partition, List<Event<?>>> routed = route(topic, List.of(event));
+            boolean added = false;
+            for (Map.Entry<Partition, List<Event<?>>> entry : routed.entrySet()) {
+                added = produceTo(entry.getKey(), entry.getValue(), event.getSizeInBytes());
+            }
+            return added;
+        } finally {
+            topic.releaseCapacity(1, event.getSizeInBytes());
+        }
+    }
+
+    public void produceEvents(Topic<?> topic, List<Event<?>> events) {
+        long bytes = 0;
+        synchronized (this) {
+            for (Event<?> event : events) {
+                if (!accepts(topic, event)) {
+                    System.err.println("Event and producer/topic types are different");
+                    return;
+                }
+            }
+            for (Event<?> event : events) {
+                sample(event);
+                bytes += event.getSizeInBytes();
+            }
+        }
+        throttle(events.size(), bytes);
+        if (!topic.reserveCapacity(events.size(), bytes)) {
+            return;
+        }
+        try {
+            for (Map.Entry<Partition, List<Event<?>>> entry : route(topic, events).entrySet()) {
+                long partitionBytes = 0;
+                for (Event<?> event : entry.getValue()) {
+                    partitionBytes += event.getSizeInBytes();
+                }
+                produceTo(entry.getKey(), entry.getValue(), partitionBytes);
+            }
+        } finally {
+            topic.releaseCapacity(events.size(), bytes);
+        }
+    }
+
+    /**
+     * Places events on partitions without holding the producer's lock. An idempotent producer sends a retried event
+     * back to the partition it was stamped for.
+     */
+    private Map<Partition, List<Event<?>>> route(Topic<?> topic, List<Event<?>> events) {
+        if (!idempotent) {
+            return allocation.route(topic, events);
+        }
+        Map<Partition, List<Event<?>>> routed = new LinkedHashMap<>();
+        for (Event<?> event : events) {
+            Partition p = partitionFor(topic, event);
+            if (p != null) {
+                routed.computeIfAbsent(p, k -> new ArrayList<>()).add(event);
+            }
+        }
+        return routed;
     }
 
-    public synchronized void produceEvent(Topic<?> topic, Event<?> event) {
-        if (event.getType().equals(type) && topic.getType().equals(type)) {
-            allocation.allocateMessage(topic, event);
-        } else {
+    /**
+     * Reserves room on the partition, then appends under the producer's lock, which keeps an idempotent producer's
+     * sequence numbers in append order.
+     *
+     * @return whether every event was appended
+     */
+    private boolean produceTo(Partition p, List<Event<?>> events, long bytes) {
+        if (!p.reserveCapacity(events.size(), bytes)) {
+            return false;
+        }
+        try {
+            synchronized (this) {
+                if (idempotent || events.size() == 1) {
+                    boolean added = true;
+                    for (Event<?> event : events) {
+                        if (idempotent) {
+                            stamp(p, event);
+                        }
+                        added &= append(p, event);
+                    }
+                    return added;
+                }
+                if (!p.addEvents(events)) {
+                    return false;
+                }
+                if (!quiet) {
+                    System.out.println(events.size() + " events added to " + p.getId());
+                }
+                return true;
+            }
+        } finally {
+            p.releaseCapacity(events.size(), bytes);
+        }
+    }
+
+    /**
+     * Holds the event back until {@code deliverAtMs}, then produces it as if it had just been sent. Type mismatches
+     * are reported now rather than when the event falls due.
+     */
+    public void produceDelayed(Topic<?> topic, Event<?> event, long deliverAtMs, DelayScheduler scheduler) {
+        if (!accepts(topic, event)) {
             System.err.println("Event and producer/topic types are different");
+            return;
+        }
+        System.out.println("Event " + event.getId() + " scheduled for " + deliverAtMs);
+        scheduler.schedule(deliverAtMs, () -> produceEvent(topic, event));
+    }
+
+    /**
+     * Records were type-checked field by field when their schema built them, so for schema-typed producers a
+     * matching schema id is the whole check.
+     */
+    private boolean accepts(Topic<?> topic, Event<?> event) {
+        if (schema == null) {
+            return event.getType().equals(type) && topic.getType().equals(type);
         }
+        Schema topicSchema = topic.getSchema();
+        Object value = event.getValue();
+        return topicSchema != null && topicSchema.getId() == schema.getId() && value instanceof RecordValue
+                && ((RecordValue) value).getSchema().getId() == schema.getId();
+    }
+
+    private Partition partitionFor(Topic<?> topic, Event<?> event) {
+        Header header = event.getHeaders();
+        if (id.equals(header.getProducerId())) {
+            return topic.getPartition(header.getPartitionId());
+        }
+        Partition p = allocation.selectPartition(topic, event);
+        if (p == null) {
+            System.err.println("No partition available for event " + event.getId());
+        }
+        return p;
+    }
+
+    /**
+     * Stamps the event with this producer's next sequence number for its partition. Re-sending an event that was
+     * already stamped by this producer reuses its partition and sequence so the partition can drop the retry.
+     */
+    private synchronized void stamp(Partition p, Event<?> event) {
+        Header header = event.getHeaders();
+        if (!id.equals(header.getProducerId())) {
+            int sequence = nextSequences.merge(p.getId(), 1, Integer::sum) - 1;
+            header.stamp(id, p.getId(), sequence);
+        }
+    }
+
+    private boolean append(Partition p, Event<?> event) {
+        boolean added = idempotent ? p.addEvent(event, id, event.getHeaders().getSequence(), dedupWindow)
+                : p.addEvent(event);
+        if (added && !quiet) {
+            System.out.println("Event " + event.getId() + " added to " + p.getId());
+        }
+        return added;
+    }
+
+    /**
+     * Event-loop variant of {@link #produceEvent}: checks, quotas, partition choice and capacity, including the wait
+     * for room on a BLOCK partition, run on the calling thread, and only the append is handed to the partition's
+     * owning loop. Waiting there would stall the loop that runs the commits freeing that room. An idempotent
+     * producer's sequence number is stamped on that loop right before the append, so appends queued by different
+     * threads still reach the partition in sequence order.
+     *
+     * @return completes with whether the partition accepted the event
+     */
+    public CompletableFuture<Boolean> submitEvent(Topic<?> topic, Event<?> event, PartitionExecutor executor) {
+        synchronized (this) {
+            if (!accepts(topic, event)) {
+                System.err.println("Event and producer/topic types are different");
+                return CompletableFuture.completedFuture(false);
+            }
+            sample(event);
+        }
+        throttle(1, event.getSizeInBytes());
+        if (!topic.reserveCapacity(1, event.getSizeInBytes())) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Partition p;
+        synchronized (this) {
+            p = idempotent ? partitionFor(topic, event) : allocation.selectPartition(topic, event);
+        }
+        if (p == null || !p.reserveCapacity(1, event.getSizeInBytes())) {
+            topic.releaseCapacity(1, event.getSizeInBytes());
+            return CompletableFuture.completedFuture(false);
+        }
+        return executor.submit(p, () -> {
+            if (idempotent) {
+                stamp(p, event);
+            }
+            return append(p, event);
+        })
+                .whenComplete((added, failure) -> {
+                    p.releaseCapacity(1, event.getSizeInBytes());
+                    topic.releaseCapacity(1, event.getSizeInBytes());
+                });
+    }
+
+    /**
+     * How many more events the topic will currently accept before its capacity limits push back. Batching producers
+     * can use this to shrink or delay batches instead of blocking or being rejected.
+     */
+    public long getRemainingCapacity(Topic<?> topic) {
+        return topic.getRemainingCapacity();
+    }
+
+    private void throttle(int events, long bytes) {
+        Quota q = quota;
+        if (q != null) {
+            long throttleMs = q.throttle(events, bytes);
+            if (throttleMs > 0) {
+                System.out.println("Producer " + id + " throttled for " + throttleMs + " ms");
+            }
+        }
+    }
+
+    /**
+     * Limits this producer's rate; a null quota removes the limit.
+     */
+    public void setQuota(Quota quota) {
+        this.quota = quota;
+    }
+
+    public Quota getQuota() {
+        return quota;
+    }
+
+    /**
+     * Gives roughly {@code rate} of this producer's events a random trace id, logged with their latencies when
+     * consumed. Events that already carry a trace id keep it.
+     */
+    public void setTraceSampleRate(double rate) {
+        this.traceSampleRate = rate;
+    }
+
+    /**
+     * Stops printing a line for every appended event or batch; errors are still reported.
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    public double getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    private void sample(Event<?> event) {
+        double rate = traceSampleRate;
+        Header header = event.getHeaders();
+        if (rate > 0 && header.getTraceId() == 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            header.setTraceId(ThreadLocalRandom.current().nextLong() | 1);
+        }
+    }
+
+    public void setDedupWindow(int dedupWindow) {
+        this.dedupWindow = dedupWindow;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public MessageAllocation getAllocation() {
+        return allocation;
+    }
+
+    public boolean isIdempotent() {
+        return idempotent;
     }
 
     public String getId() {
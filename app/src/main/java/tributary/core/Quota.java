@@ -0,0 +1,76 @@
+package tributary.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Events/sec and bytes/sec limits for one producer or consumer group. Callers over their quota are slowed down by
+ * the throttle time rather than rejected, and the time spent throttled is accumulated for reporting.
+ */
+public class Quota {
+    private final double eventsPerSecond;
+    private final double bytesPerSecond;
+    private final TokenBucket events;
+    private final TokenBucket bytes;
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    /**
+     * @param eventsPerSecond the event rate, or 0 for no event limit
+     * @param bytesPerSecond  the estimated byte rate, or 0 for no byte limit
+     */
+    public Quota(double eventsPerSecond, double bytesPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        // a full bucket allows one second's worth at once
+        this.events = eventsPerSecond > 0 ? new TokenBucket(eventsPerSecond, (long) eventsPerSecond) : null;
+        this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, (long) bytesPerSecond) : null;
+    }
+
+    /**
+     * Charges the quota and waits out any throttle time on the calling thread.
+     *
+     * @return the throttle time in milliseconds
+     */
+    public long throttle(int eventCount, long byteCount) {
+        long delay = 0;
+        if (events != null) {
+            delay = events.acquire(eventCount);
+        }
+        if (bytes != null) {
+            delay = Math.max(delay, bytes.acquire(byteCount));
+        }
+        if (delay <= 0) {
+            return 0;
+        }
+        throttledNanos.addAndGet(delay);
+        throttledCount.incrementAndGet();
+        try {
+            Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return delay / 1_000_000;
+    }
+
+    public long getThrottleTimeMs() {
+        return throttledNanos.get() / 1_000_000;
+    }
+
+    public long getThrottleCount() {
+        return throttledCount.get();
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return (eventsPerSecond > 0 ? (long) eventsPerSecond + " events/s" : "unlimited events") + ", "
+                + (bytesPerSecond > 0 ? (long) bytesPerSecond + " bytes/s" : "unlimited bytes");
+    }
+}
@@ -1,22 +1,34 @@
 package tributary.core;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class RandomMessage implements MessageAllocation {
     @Override
-    public synchronized void allocateMessage(Topic<?> topic, Event<?> event) {
-        if (!event.getType().equals(topic.getType())) {
-            System.err.println("Event and topic types are different");
-            return;
+    public Map<Partition, List<Event<?>>> route(Topic<?> topic, List<Event<?>> events) {
+        Map<Partition, List<Event<?>>> routed = new LinkedHashMap<>();
+        if (events.isEmpty()) {
+            return routed;
         }
+        // The whole batch sticks to one partition so it is appended (and compressed) as a unit
+        Partition p = selectPartition(topic, events.get(0));
+        if (p == null) {
+            System.err.println("Topic " + topic.getId() + " has no partitions");
+            return routed;
+        }
+        routed.put(p, events);
+        return routed;
+    }
 
+    @Override
+    public Partition selectPartition(Topic<?> topic, Event<?> event) {
         List<Partition> partitions = topic.getPartitions();
-        int length = partitions.size();
-        Random random = new Random();
-        Partition p = partitions.get(random.nextInt(length));
-        p.addEvent(event);
-        System.out.println("Event " + event.getId() + " added to " + p.getId());
+        if (partitions.isEmpty()) {
+            return null;
+        }
+        return partitions.get(new Random().nextInt(partitions.size()));
     }
 
     @Override
@@ -0,0 +1,111 @@
+package tributary.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary codec for one schema. The per-field readers and writers are chosen once when the schema is built, so
+ * encoding a record is a straight loop with no type dispatch on the values.
+ */
+public class RecordCodec {
+    private final Schema schema;
+    private final FieldCodec[] fields;
+
+    RecordCodec(Schema schema) {
+        this.schema = schema;
+        this.fields = new FieldCodec[schema.getFieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = codecFor(schema.getFieldType(i));
+        }
+    }
+
+    public void encode(DataOutputStream out, RecordValue record) throws IOException {
+        // one bit per field marks nulls
+        long nulls = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (record.get(i) == null) {
+                nulls |= 1L << i;
+            }
+        }
+        out.writeLong(nulls);
+        for (int i = 0; i < fields.length; i++) {
+            Object value = record.get(i);
+            if (value != null) {
+                fields[i].write(out, value);
+            }
+        }
+    }
+
+    public RecordValue decode(DataInputStream in) throws IOException {
+        long nulls = in.readLong();
+        Object[] values = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            if ((nulls & (1L << i)) == 0) {
+                values[i] = fields[i].read(in);
+            }
+        }
+        return new RecordValue(schema, values);
+    }
+
+    private interface FieldCodec {
+        void write(DataOutputStream out, Object value) throws IOException;
+
+        Object read(DataInputStream in) throws IOException;
+    }
+
+    private static FieldCodec codecFor(FieldType type) {
+        switch (type) {
+        case INTEGER:
+            return new FieldCodec() {
+                public void write(DataOutputStream out, Object value) throws IOException {
+                    out.writeInt((Integer) value);
+                }
+
+                public Object read(DataInputStream in) throws IOException {
+                    return in.readInt();
+                }
+            };
+        case LONG:
+            return new FieldCodec() {
+                public void write(DataOutputStream out, Object value) throws IOException {
+                    out.writeLong((Long) value);
+                }
+
+                public Object read(DataInputStream in) throws IOException {
+                    return in.readLong();
+                }
+            };
+        case DOUBLE:
+            return new FieldCodec() {
+                public void write(DataOutputStream out, Object value) throws IOException {
+                    out.writeDouble((Double) value);
+                }
+
+                public Object read(DataInputStream in) throws IOException {
+                    return in.readDouble();
+                }
+            };
+        case BOOLEAN:
+            return new FieldCodec() {
+                public void write(DataOutputStream out, Object value) throws IOException {
+                    out.writeBoolean((Boolean) value);
+                }
+
+                public Object read(DataInputStream in) throws IOException {
+                    return in.readBoolean();
+                }
+            };
+        default:
+            return new FieldCodec() {
+                public void write(DataOutputStream out, Object value) throws IOException {
+                    EventSerializer.writeString(out, (String) value);
+                }
+
+                public Object read(DataInputStream in) throws IOException {
+                    return EventSerializer.readString(in);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package tributary.core;
+
+import java.util.Arrays;
+
+/**
+ * Event value of a schema-typed topic. Values are stored by field position; build records with
+ * {@link Schema#record}.
+ */
+public class RecordValue {
+    private final Schema schema;
+    private final Object[] values;
+
+    RecordValue(Schema schema, Object[] values) {
+        this.schema = schema;
+        this.values = values;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public Object get(int index) {
+        return values[index];
+    }
+
+    public Object get(String field) {
+        int index = schema.indexOf(field);
+        if (index < 0) {
+            throw new IllegalArgumentException("Schema " + schema.getName() + " has no field " + field);
+        }
+        return values[index];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RecordValue)) {
+            return false;
+        }
+        RecordValue other = (RecordValue) o;
+        return schema.getId() == other.schema.getId() && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * schema.getId() + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(schema.getFieldNames().get(i)).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
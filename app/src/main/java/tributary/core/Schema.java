@@ -0,0 +1,95 @@
+package tributary.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named record layout: an ordered list of typed fields. The id is a fingerprint of the name and fields, so the same
+ * schema gets the same id in every process and encoded records stay readable after a restore.
+ */
+public class Schema {
+    // RecordCodec marks null fields in one long
+    public static final int MAX_FIELDS = 64;
+
+    private final String name;
+    private final List<String> fieldNames;
+    private final FieldType[] fieldTypes;
+    private final int id;
+    private final RecordCodec codec;
+
+    public Schema(String name, Map<String, FieldType> fields) {
+        if (fields.size() > MAX_FIELDS) {
+            throw new IllegalArgumentException("Schema " + name + " has more than " + MAX_FIELDS + " fields");
+        }
+        this.name = name;
+        this.fieldNames = Collections.unmodifiableList(new ArrayList<>(fields.keySet()));
+        this.fieldTypes = fields.values().toArray(new FieldType[0]);
+        this.id = fingerprint();
+        this.codec = new RecordCodec(this);
+    }
+
+    /**
+     * Builds a record, checking each value against its field type. This is the only place record values are
+     * type-checked; everything downstream trusts the record's schema.
+     */
+    public RecordValue record(Object... values) {
+        if (values.length != fieldTypes.length) {
+            throw new IllegalArgumentException("Schema " + name + " has " + fieldTypes.length + " fields, got "
+                    + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && !fieldTypes[i].getJavaType().isInstance(values[i])) {
+                throw new IllegalArgumentException("Field " + fieldNames.get(i) + " of " + name + " must be "
+                        + fieldTypes[i] + ", got " + values[i].getClass().getSimpleName());
+            }
+        }
+        return new RecordValue(this, values.clone());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getFieldCount() {
+        return fieldTypes.length;
+    }
+
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    public FieldType getFieldType(int index) {
+        return fieldTypes[index];
+    }
+
+    public int indexOf(String field) {
+        return fieldNames.indexOf(field);
+    }
+
+    public RecordCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (int i = 0; i < fieldTypes.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(fieldNames.get(i)).append(':').append(fieldTypes[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    private int fingerprint() {
+        int hash = 0x811c9dc5;
+        for (char c : toString().toCharArray()) {
+            hash = (hash ^ c) * 0x01000193;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,45 @@
+package tributary.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Schemas a Tributary knows by name, and by id for {@link EventSerializer}, since a stored record carries only its
+ * schema's id. Each Tributary has its own registry, handed to every partition of its topics for decoding.
+ */
+public class SchemaRegistry {
+    private final Map<String, Schema> byName = new ConcurrentHashMap<>();
+    private final Map<Integer, Schema> byId = new ConcurrentHashMap<>();
+
+    /**
+     * @return false if a different schema is already registered under the same name
+     */
+    public boolean register(Schema schema) {
+        Schema existing = byName.putIfAbsent(schema.getName(), schema);
+        if (existing != null && existing.getId() != schema.getId()) {
+            System.err.println("Schema " + schema.getName() + " is already registered as " + existing);
+            return false;
+        }
+        Schema clash = byId.putIfAbsent(schema.getId(), schema);
+        if (clash != null && !clash.toString().equals(schema.toString())) {
+            byName.remove(schema.getName(), schema);
+            System.err.println("Schema " + schema + " collides with " + clash);
+            return false;
+        }
+        return true;
+    }
+
+    public Schema get(String name) {
+        return byName.get(name);
+    }
+
+    public List<Schema> getSchemas() {
+        return new ArrayList<>(byName.values());
+    }
+
+    public Schema lookup(int id) {
+        return byId.get(id);
+    }
+}
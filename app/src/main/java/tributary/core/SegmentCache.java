@@ -0,0 +1,94 @@
+package tributary.core;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of segment bytes read back from disk, bounded by entry count. Segments are loaded outside the cache's
+ * lock, so readers of different segments load in parallel, while readers of a segment already loading wait for that
+ * load instead of repeating it.
+ */
+public class SegmentCache {
+    private int maxEntries;
+    private Map<Object, byte[]> entries;
+    private Map<Object, CompletableFuture<byte[]>> loading = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+
+    public SegmentCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Object, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, byte[]> eldest) {
+                return size() > SegmentCache.this.maxEntries;
+            }
+        };
+    }
+
+    public byte[] get(Object key, Supplier<byte[]> loader) {
+        CompletableFuture<byte[]> load;
+        boolean owner;
+        synchronized (this) {
+            byte[] bytes = entries.get(key);
+            if (bytes != null) {
+                hits++;
+                return bytes;
+            }
+            load = loading.get(key);
+            owner = load == null;
+            if (owner) {
+                misses++;
+                load = new CompletableFuture<>();
+                loading.put(key, load);
+            } else {
+                hits++;
+            }
+        }
+        if (owner) {
+            return load(key, loader, load);
+        }
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private byte[] load(Object key, Supplier<byte[]> loader, CompletableFuture<byte[]> load) {
+        byte[] bytes;
+        try {
+            bytes = loader.get();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading.remove(key, load);
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            // a load invalidated while in flight is handed to its waiters but not cached
+            if (loading.remove(key, load) && maxEntries > 0) {
+                entries.put(key, bytes);
+            }
+        }
+        load.complete(bytes);
+        return bytes;
+    }
+
+    public synchronized void invalidate(Object key) {
+        entries.remove(key);
+        loading.remove(key);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,70 @@
+package tributary.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread. Each side only writes its own
+ * index (with a release store) and re-reads the other side's index only when its cached copy says the queue is
+ * full or empty.
+ */
+public class SpscQueue<T> {
+    private final Object[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // producer-side copy of head, consumer-side copy of tail
+    private long cachedHead = 0;
+    private long cachedTail = 0;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public SpscQueue(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    public boolean offer(T item) {
+        long t = tail.get();
+        if (t - cachedHead >= buffer.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = item;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * @return the oldest item, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h >= cachedTail) {
+            cachedTail = tail.get();
+            if (h >= cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        T item = (T) buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+}
@@ -0,0 +1,92 @@
+package tributary.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Cold tier for a topic's partitions. Sealed segments beyond the newest {@code hotSegments} of a partition are written
+ * as compressed segment files under {@code directory} and dropped from the heap; reads go through a shared LRU cache.
+ */
+public class TieredStorage {
+    private Path directory;
+    private int hotSegments;
+    private SegmentCache cache;
+
+    public TieredStorage(Path directory, int hotSegments, int cachedSegments) {
+        this.directory = directory;
+        this.hotSegments = hotSegments;
+        this.cache = new SegmentCache(cachedSegments);
+    }
+
+    /**
+     * Writes the batch to {@code <directory>/<partitionId>/<baseOffset>.seg} and returns where to read it from.
+     */
+    public BatchSource archive(String partitionId, EventBatch batch) throws IOException {
+        Path dir = directory.resolve(partitionId);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(batch.getBaseOffset() + ".seg");
+        int headerSize;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            headerSize = batch.writeTo(out);
+        }
+        return new FileSegment(file, headerSize, batch.getStoredSize(), batch.getChecksum());
+    }
+
+    /**
+     * Deletes the file {@link #archive} wrote for a batch that was never swapped in.
+     */
+    public void discard(String partitionId, EventBatch batch) throws IOException {
+        Files.deleteIfExists(directory.resolve(partitionId).resolve(batch.getBaseOffset() + ".seg"));
+    }
+
+    public int getHotSegments() {
+        return hotSegments;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public SegmentCache getCache() {
+        return cache;
+    }
+
+    /**
+     * A segment file's data, checked against the batch checksum whenever it is loaded into the cache.
+     */
+    private class FileSegment implements BatchSource {
+        private Path file;
+        private long position;
+        private int length;
+        private long checksum;
+
+        FileSegment(Path file, long position, int length, long checksum) {
+            this.file = file;
+            this.position = position;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public byte[] read() {
+            return cache.get(file, () -> {
+                try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+                    byte[] bytes = new byte[length];
+                    raf.seek(position);
+                    raf.readFully(bytes);
+                    if (EventBatch.checksum(bytes) != checksum) {
+                        throw new IOException("Segment " + file + " is corrupt: checksum mismatch");
+                    }
+                    return bytes;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package tributary.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel. Each level has {@code wheelSize} buckets of one tick; deadlines beyond a level's span go
+ * to a coarser overflow level created on demand, and cascade back down as the clock reaches them. Scheduling and
+ * expiring an item are O(1) whatever the number pending. Items may expire up to one tick early. Advancing the clock
+ * jumps straight between non-empty buckets, so a long gap costs no more than a short one.
+ */
+public class TimingWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<ArrayDeque<Entry<T>>> buckets;
+    private long currentTime;
+    private TimingWheel<T> overflow;
+    private int pending = 0;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+        this.currentTime = startMs - startMs % tickMs;
+    }
+
+    /**
+     * @return false if the deadline has already passed and the item was not scheduled
+     */
+    public synchronized boolean schedule(long deadlineMs, T item) {
+        if (!place(new Entry<>(deadlineMs, item))) {
+            return false;
+        }
+        pending++;
+        return true;
+    }
+
+    /**
+     * Moves the clock forward to {@code nowMs}.
+     *
+     * @return the items that fell due
+     */
+    public synchronized List<T> advanceClock(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        if (pending == 0) {
+            align(nowMs);
+            return expired;
+        }
+        List<Entry<T>> cascaded = new ArrayList<>();
+        for (long next = nextTick(); next <= nowMs; next = nextTick()) {
+            drain(next, cascaded);
+            for (Entry<T> entry : cascaded) {
+                if (!place(entry)) {
+                    expired.add(entry.item);
+                }
+            }
+            cascaded.clear();
+        }
+        align(nowMs);
+        pending -= expired.size();
+        return expired;
+    }
+
+    /**
+     * @return the tick at which the next item falls due or has to cascade down, which is no later than its deadline,
+     *         or {@link Long#MAX_VALUE} if nothing is pending
+     */
+    public synchronized long nextExpiry() {
+        return pending == 0 ? Long.MAX_VALUE : nextTick();
+    }
+
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    public synchronized long getCurrentTime() {
+        return currentTime;
+    }
+
+    private long nextTick() {
+        long next = Long.MAX_VALUE;
+        for (int i = 1; i < wheelSize; i++) {
+            long time = currentTime + i * tickMs;
+            if (!buckets.get((int) ((time / tickMs) % wheelSize)).isEmpty()) {
+                next = time;
+                break;
+            }
+        }
+        return overflow == null ? next : Math.min(next, overflow.nextTick());
+    }
+
+    private boolean place(Entry<T> entry) {
+        if (entry.deadline < currentTime + tickMs) {
+            return false;
+        }
+        if (entry.deadline < currentTime + interval) {
+            buckets.get((int) ((entry.deadline / tickMs) % wheelSize)).add(entry);
+            return true;
+        }
+        if (overflow == null) {
+            overflow = new TimingWheel<>(interval, wheelSize, currentTime);
+        }
+        return overflow.place(entry);
+    }
+
+    /**
+     * Empties the bucket for tick {@code time} into {@code out}, pulling down the overflow bucket whenever the
+     * clock crosses one of its ticks.
+     */
+    private void drain(long time, List<Entry<T>> out) {
+        currentTime = time;
+        ArrayDeque<Entry<T>> bucket = buckets.get((int) ((time / tickMs) % wheelSize));
+        out.addAll(bucket);
+        bucket.clear();
+        if (overflow != null && time % overflow.tickMs == 0) {
+            overflow.drain(time, out);
+        }
+    }
+
+    private void align(long nowMs) {
+        if (nowMs >= currentTime + tickMs) {
+            currentTime = nowMs - nowMs % tickMs;
+        }
+        if (overflow != null) {
+            overflow.align(nowMs);
+        }
+    }
+
+    private static class Entry<T> {
+        private final long deadline;
+        private final T item;
+
+        Entry(long deadline, T item) {
+            this.deadline = deadline;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package tributary.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its virtual-scheduling form: the only state is the time at which the bucket would be
+ * empty, advanced with a CAS. The bucket holds {@code (now - that time)} worth of tokens, capped at the burst.
+ * Acquiring never fails; it returns how long the caller should wait for the tokens it just took.
+ */
+public class TokenBucket {
+    private final double nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong emptyAt;
+
+    /**
+     * @param ratePerSecond tokens refilled per second
+     * @param burst         tokens that can be taken at once from a full bucket
+     */
+    public TokenBucket(double ratePerSecond, long burst) {
+        this.nanosPerToken = 1_000_000_000d / ratePerSecond;
+        this.burstNanos = (long) (Math.max(1, burst) * nanosPerToken);
+        this.emptyAt = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * Takes {@code tokens} from the bucket, going into debt if there are not enough.
+     *
+     * @return the nanoseconds until the debt is paid off, 0 if the tokens were available
+     */
+    public long acquire(long tokens) {
+        long cost = (long) (tokens * nanosPerToken);
+        while (true) {
+            long now = System.nanoTime();
+            long empty = emptyAt.get();
+            long next = Math.max(empty, now - burstNanos) + cost;
+            if (emptyAt.compareAndSet(empty, next)) {
+                return Math.max(0, next - now);
+            }
+        }
+    }
+}
@@ -1,12 +1,33 @@
 package tributary.core;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class Topic<T> {
     private String id;
     private String type;
-    private List<Partition> partitions = new ArrayList<>();
+    private List<Partition> partitions = new CopyOnWriteArrayList<>();
+    private volatile CompressionCodec codec;
+    private volatile int batchSize;
+    private List<ConsumerGroup> groups = new CopyOnWriteArrayList<>();
+    private volatile CapacityLimit limit;
+    private TieredStorage tiered;
+    private HashRing ring = new HashRing();
+    private Schema schema;
+    private volatile MaterializedView view;
+    private final LatencyStats latency;
+    private MemoryManager memory;
+    private SchemaRegistry schemas = new SchemaRegistry();
+
+    // events and bytes admitted by reserveCapacity but not yet appended
+    private final Object capacityLock = new Object();
+    private long reservedEvents = 0;
+    private long reservedBytes = 0;
+    private final Queue<Thread> capacityWaiters = new ConcurrentLinkedQueue<>();
 
     public List<Partition> getPartitions() {
         return partitions;
@@ -15,16 +36,129 @@ public class Topic<T> {
     public Topic(String id, String type) {
         this.id = id;
         this.type = type;
+        this.latency = new LatencyStats("topic " + id);
         System.out.println("Topic " + id + " created with type " + type);
     }
 
+    public Topic(String id, Schema schema) {
+        this(id, schema.getName());
+        this.schema = schema;
+    }
+
+    /**
+     * @return the record schema of a schema-typed topic, or null for the built-in string/integer types
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
     public String getId() {
         return id;
     }
 
-    public void createPartition(String id) {
-        partitions.add(new Partition(id));
+    public synchronized void createPartition(String id) {
+        addPartition(id);
+        ring.addPartition(id);
+    }
+
+    /**
+     * Adds a partition that takes over a consistent-hashing share of the existing partitions' keys. Its events are
+     * held back from each group until that group has consumed everything the partitions it took keys from held at
+     * this point, so per-key order is kept across the move.
+     */
+    public synchronized void expandPartitions(String id) {
+        Partition partition = addPartition(id);
+        for (String donor : ring.addPartition(id)) {
+            Partition source = getPartition(donor);
+            partition.addFence(source, source.getSize());
+        }
+        rebalanceGroups();
+    }
+
+    /**
+     * Moves about half of a hot partition's keys to a new partition, fenced behind the hot partition's current end.
+     */
+    public synchronized void splitPartition(String hotId, String newId) {
+        Partition hot = getPartition(hotId);
+        if (hot == null) {
+            System.err.println("Partition " + hotId + " does not exist in Topic: " + id);
+            return;
+        }
+        Partition partition = addPartition(newId);
+        partition.addFence(hot, hot.getSize());
+        ring.split(hotId, newId);
+        System.out.println("Partition '" + hotId + "' split into '" + newId + "'");
+        rebalanceGroups();
+    }
+
+    /**
+     * Starts keeping a latest-value-per-key view of this topic, built from what the partitions already hold.
+     *
+     * @return the topic's view; calling again returns the same one
+     */
+    public synchronized MaterializedView materialize() {
+        if (view == null) {
+            view = new MaterializedView(id);
+            for (Partition partition : partitions) {
+                partition.addAppendListener(view);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * @return the topic's view, or null if it has not been materialized
+     */
+    public MaterializedView getView() {
+        return view;
+    }
+
+    /**
+     * @return how long events took from production to being appended to this topic
+     */
+    public LatencyStats getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the ring mapping keys to this topic's partitions
+     */
+    public HashRing getHashRing() {
+        return ring;
+    }
+
+    public Partition getPartitionForKey(String key) {
+        String partitionId = ring.partitionFor(key);
+        return partitionId == null ? null : getPartition(partitionId);
+    }
+
+    private Partition addPartition(String id) {
+        Partition partition = new Partition(id);
+        partition.setCompression(codec, batchSize);
+        partition.setTieredStorage(tiered);
+        partition.setSchemaRegistry(schemas);
+        for (ConsumerGroup group : groups) {
+            partition.registerGroup(group.getId());
+        }
+        partition.addAppendListener((p, offset, event) -> latency.recordAppend(event));
+        partition.setBacklogListener(this::signalCapacity);
+        if (view != null) {
+            partition.addAppendListener(view);
+        }
+        if (memory != null) {
+            memory.register(this.id, partition);
+        }
+        partitions.add(partition);
         System.out.println("Partition '" + id + "' created in Topic: " + this.id);
+        return partition;
+    }
+
+    private void rebalanceGroups() {
+        for (ConsumerGroup group : groups) {
+            if (!group.getConsumers().isEmpty()) {
+                group.rebalance();
+            }
+        }
     }
 
     public Partition getPartition(String partitionId) {
@@ -42,6 +176,10 @@ public class Topic<T> {
 
         for (Partition partition : partitions) {
             System.out.println("Partition IDs: " + partition.getId());
+            if (codec != null) {
+                System.out.println("Stored Bytes: " + partition.getStoredBytes() + " (" + codec.getName()
+                        + ", ratio " + String.format("%.2f", partition.getCompressionRatio()) + ")");
+            }
             System.out.println("Events:");
             for (Event<?> event : partition.getEvents()) {
                 event.print();
@@ -49,6 +187,221 @@ public class Topic<T> {
         }
     }
 
+    public void setCompression(CompressionCodec codec, int batchSize) {
+        this.codec = codec;
+        this.batchSize = batchSize;
+        for (Partition partition : partitions) {
+            partition.setCompression(codec, batchSize);
+        }
+        System.out.println("Topic " + id + " compression set to " + (codec == null ? "none" : codec.getName()));
+    }
+
+    /**
+     * @param schemas the owning Tributary's registry, which record values in sealed batches are decoded with
+     */
+    public synchronized void setSchemaRegistry(SchemaRegistry schemas) {
+        this.schemas = schemas;
+        for (Partition partition : partitions) {
+            partition.setSchemaRegistry(schemas);
+        }
+    }
+
+    public synchronized void subscribe(ConsumerGroup group) {
+        groups.add(group);
+        for (Partition partition : partitions) {
+            partition.registerGroup(group.getId());
+        }
+    }
+
+    public List<ConsumerGroup> getConsumerGroups() {
+        return groups;
+    }
+
+    public void setCapacityLimit(CapacityLimit limit) {
+        this.limit = limit;
+        System.out.println("Topic " + id + " capacity set to " + limit);
+    }
+
+    public CapacityLimit getCapacityLimit() {
+        return limit;
+    }
+
+    public int getBacklogEvents() {
+        int total = 0;
+        for (Partition partition : partitions) {
+            total += partition.getBacklogEvents();
+        }
+        return total;
+    }
+
+    public long getBacklogBytes() {
+        long total = 0;
+        for (Partition partition : partitions) {
+            total += partition.getBacklogBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Remaining events the topic accepts: the topic limit, capped by what its partitions still have room for.
+     */
+    public long getRemainingCapacity() {
+        long partitionRoom = 0;
+        for (Partition partition : partitions) {
+            long room = partition.getRemainingCapacity();
+            partitionRoom = room == Long.MAX_VALUE ? Long.MAX_VALUE : partitionRoom + room;
+            if (partitionRoom == Long.MAX_VALUE) {
+                break;
+            }
+        }
+        if (limit == null) {
+            return partitionRoom;
+        }
+        long reserved;
+        synchronized (capacityLock) {
+            reserved = reservedEvents;
+        }
+        return Math.min(partitionRoom, limit.remainingEvents(getBacklogEvents() + reserved));
+    }
+
+    /**
+     * Applies the topic-wide capacity limit before events are allocated to partitions. Admitted events hold their
+     * room until the producer calls {@link #releaseCapacity}, so concurrent producers cannot both take the last of
+     * it. A blocked producer sleeps until a consumer commit frees backlog.
+     *
+     * @return false if the limit's overflow policy rejected the events
+     */
+    public boolean reserveCapacity(int events, long bytes) {
+        CapacityLimit limit = this.limit;
+        if (limit == null) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limit.getBlockTimeoutMs());
+        Thread self = Thread.currentThread();
+        while (true) {
+            // registered before the check, so a commit landing between the check and the park still wakes us
+            capacityWaiters.add(self);
+            try {
+                synchronized (capacityLock) {
+                    if (limit.fits(getBacklogEvents() + reservedEvents, getBacklogBytes() + reservedBytes, events,
+                            bytes)) {
+                        reservedEvents += events;
+                        reservedBytes += bytes;
+                        return true;
+                    }
+                    if (limit.getPolicy() == OverflowPolicy.DROP_OLDEST) {
+                        if (!dropOldest()) {
+                            System.err.println("Topic " + id + " cannot fit " + events + " events");
+                            return false;
+                        }
+                        continue;
+                    }
+                    if (limit.getPolicy() != OverflowPolicy.BLOCK) {
+                        System.err.println("Topic " + id + " full: " + limit);
+                        return false;
+                    }
+                }
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    System.err.println("Topic " + id + " full: timed out waiting for capacity");
+                    return false;
+                }
+                LockSupport.parkNanos(this, left);
+                if (self.isInterrupted()) {
+                    return false;
+                }
+            } finally {
+                capacityWaiters.remove(self);
+            }
+        }
+    }
+
+    /**
+     * Returns room taken by {@link #reserveCapacity} once the events have been appended, or have failed to be.
+     */
+    public void releaseCapacity(int events, long bytes) {
+        synchronized (capacityLock) {
+            reservedEvents = Math.max(0, reservedEvents - events);
+            reservedBytes = Math.max(0, reservedBytes - bytes);
+        }
+        signalCapacity();
+    }
+
+    /**
+     * Wakes producers blocked on the capacity limit. Called with a partition locked, so it takes no locks itself.
+     */
+    private void signalCapacity() {
+        for (Thread waiter : capacityWaiters) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private boolean dropOldest() {
+        Partition largest = null;
+        for (Partition partition : partitions) {
+            if (largest == null || partition.getBacklogEvents() > largest.getBacklogEvents()) {
+                largest = partition;
+            }
+        }
+        return largest != null && largest.dropOldest();
+    }
+
+    /**
+     * Enables the cold tier. Tiering works on sealed segments, so a topic without compression is switched to deflate
+     * batches of {@code segmentSize} events.
+     */
+    public void setTieredStorage(TieredStorage tiered, int segmentSize) {
+        if (codec == null) {
+            setCompression(new DeflateCodec(), segmentSize);
+        }
+        this.tiered = tiered;
+        for (Partition partition : partitions) {
+            partition.setTieredStorage(tiered);
+        }
+        System.out.println("Topic " + id + " tiered to " + tiered.getDirectory() + " keeping "
+                + tiered.getHotSegments() + " hot segments per partition");
+    }
+
+    /**
+     * Puts this topic's partitions, current and future, under a shared heap budget.
+     */
+    public synchronized void setMemoryManager(MemoryManager memory) {
+        this.memory = memory;
+        for (Partition partition : partitions) {
+            memory.register(id, partition);
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public TieredStorage getTieredStorage() {
+        return tiered;
+    }
+
+    public CompressionCodec getCompression() {
+        return codec;
+    }
+
+    public long getStoredBytes() {
+        long total = 0;
+        for (Partition partition : partitions) {
+            total += partition.getStoredBytes();
+        }
+        return total;
+    }
+
+    public double getCompressionRatio() {
+        long stored = 0;
+        long uncompressed = 0;
+        for (Partition partition : partitions) {
+            stored += partition.getStoredBytes();
+            uncompressed += partition.getUncompressedBytes();
+        }
+        return stored == 0 ? 1.0 : (double) uncompressed / stored;
+    }
+
     public String getType() {
         return type;
     }
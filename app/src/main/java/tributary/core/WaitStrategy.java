@@ -0,0 +1,39 @@
+package tributary.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on an {@link IngestRing} that is empty (consumer side) or full (producer side). Spinning gives
+ * the lowest latency and burns a core; parking costs up to a park interval of latency and no CPU.
+ */
+public enum WaitStrategy {
+    BUSY_SPIN, YIELD, PARK;
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    /**
+     * @param attempt how many times in a row the caller has already waited
+     */
+    public void idle(int attempt) {
+        switch (this) {
+        case BUSY_SPIN:
+            Thread.onSpinWait();
+            break;
+        case YIELD:
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+            break;
+        default:
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            break;
+        }
+    }
+}
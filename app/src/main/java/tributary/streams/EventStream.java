@@ -0,0 +1,80 @@
+package tributary.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import tributary.core.Event;
+import tributary.core.MessageAllocation;
+import tributary.core.RandomMessage;
+
+/**
+ * An immutable description of a pipeline reading one topic. Each operator returns a new stream, so a stream can be
+ * branched into several pipelines.
+ */
+public class EventStream {
+    private StreamsBuilder builder;
+    private String sourceTopicId;
+    private List<Function<Processor, Processor>> stages;
+
+    EventStream(StreamsBuilder builder, String sourceTopicId, List<Function<Processor, Processor>> stages) {
+        this.builder = builder;
+        this.sourceTopicId = sourceTopicId;
+        this.stages = stages;
+    }
+
+    public EventStream map(Function<Event<?>, Event<?>> mapper) {
+        return with(next -> new Processor(next) {
+            @Override
+            void process(Event<?> event) {
+                forward(mapper.apply(event));
+            }
+        });
+    }
+
+    public EventStream filter(Predicate<Event<?>> predicate) {
+        return with(next -> new Processor(next) {
+            @Override
+            void process(Event<?> event) {
+                if (predicate.test(event)) {
+                    forward(event);
+                }
+            }
+        });
+    }
+
+    /**
+     * Re-keys events. Records are not repartitioned, so downstream aggregates are per source partition.
+     */
+    public EventStream keyBy(Function<Event<?>, String> keySelector) {
+        return with(next -> new Processor(next) {
+            @Override
+            void process(Event<?> event) {
+                forward(event.withKey(keySelector.apply(event)));
+            }
+        });
+    }
+
+    public WindowedStream windowedBy(TimeWindows windows) {
+        return windowedBy(windows, TimestampExtractor.PROCESSING_TIME);
+    }
+
+    public WindowedStream windowedBy(TimeWindows windows, TimestampExtractor extractor) {
+        return new WindowedStream(this, windows, extractor);
+    }
+
+    public void to(String topicId) {
+        to(topicId, new RandomMessage());
+    }
+
+    public void to(String topicId, MessageAllocation allocation) {
+        builder.addPipeline(new Pipeline(sourceTopicId, topicId, allocation, stages));
+    }
+
+    EventStream with(Function<Processor, Processor> stage) {
+        List<Function<Processor, Processor>> next = new ArrayList<>(stages);
+        next.add(stage);
+        return new EventStream(builder, sourceTopicId, next);
+    }
+}
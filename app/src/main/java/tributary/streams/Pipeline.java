@@ -0,0 +1,51 @@
+package tributary.streams;
+
+import java.util.List;
+import java.util.function.Function;
+
+import tributary.core.Event;
+import tributary.core.MessageAllocation;
+
+class Pipeline {
+    private String sourceTopicId;
+    private String sinkTopicId;
+    private MessageAllocation allocation;
+    private List<Function<Processor, Processor>> stages;
+
+    Pipeline(String sourceTopicId, String sinkTopicId, MessageAllocation allocation,
+            List<Function<Processor, Processor>> stages) {
+        this.sourceTopicId = sourceTopicId;
+        this.sinkTopicId = sinkTopicId;
+        this.allocation = allocation;
+        this.stages = stages;
+    }
+
+    /**
+     * Fuses the stages into one processor chain ending in {@code output}. Called once per partition task so stateful
+     * operators get their own state.
+     */
+    Processor instantiate(List<Event<?>> output) {
+        Processor chain = new Processor(null) {
+            @Override
+            void process(Event<?> event) {
+                output.add(event);
+            }
+        };
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            chain = stages.get(i).apply(chain);
+        }
+        return chain;
+    }
+
+    String getSourceTopicId() {
+        return sourceTopicId;
+    }
+
+    String getSinkTopicId() {
+        return sinkTopicId;
+    }
+
+    MessageAllocation getAllocation() {
+        return allocation;
+    }
+}
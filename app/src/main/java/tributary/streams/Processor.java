@@ -0,0 +1,36 @@
+package tributary.streams;
+
+import tributary.core.Event;
+
+/**
+ * One fused operator. Operators call their downstream directly, so a whole pipeline runs as one call chain per
+ * record with no intermediate buffering between stages.
+ */
+abstract class Processor {
+    private Processor next;
+
+    Processor(Processor next) {
+        this.next = next;
+    }
+
+    abstract void process(Event<?> event);
+
+    void forward(Event<?> event) {
+        next.process(event);
+    }
+
+    /**
+     * Called after every poll with the wall-clock time so processing-time operators can close windows while idle.
+     */
+    void tick(long now) {
+        if (next != null) {
+            next.tick(now);
+        }
+    }
+
+    void flush() {
+        if (next != null) {
+            next.flush();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package tributary.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tributary.api.Tributary;
+
+public class StreamsBuilder {
+    private List<Pipeline> pipelines = new ArrayList<>();
+
+    public EventStream stream(String topicId) {
+        return new EventStream(this, topicId, new ArrayList<>());
+    }
+
+    public Topology build(Tributary tributary, String applicationId) {
+        return new Topology(tributary, applicationId, new ArrayList<>(pipelines));
+    }
+
+    void addPipeline(Pipeline pipeline) {
+        pipelines.add(pipeline);
+    }
+}
@@ -0,0 +1,38 @@
+package tributary.streams;
+
+public final class TimeWindows {
+    private long sizeMs;
+    private long advanceMs;
+
+    private TimeWindows(long sizeMs, long advanceMs) {
+        if (sizeMs <= 0 || advanceMs <= 0 || advanceMs > sizeMs) {
+            throw new IllegalArgumentException("Window size and advance must be positive and advance <= size");
+        }
+        this.sizeMs = sizeMs;
+        this.advanceMs = advanceMs;
+    }
+
+    public static TimeWindows tumbling(long sizeMs) {
+        return new TimeWindows(sizeMs, sizeMs);
+    }
+
+    public static TimeWindows sliding(long sizeMs, long advanceMs) {
+        return new TimeWindows(sizeMs, advanceMs);
+    }
+
+    public long getSizeMs() {
+        return sizeMs;
+    }
+
+    public long getAdvanceMs() {
+        return advanceMs;
+    }
+
+    /**
+     * Start of the earliest window containing the timestamp; windows start every {@code advanceMs} from there.
+     */
+    long firstWindowStart(long timestamp) {
+        long lastStart = timestamp - Math.floorMod(timestamp, advanceMs);
+        return lastStart - (sizeMs - 1) / advanceMs * advanceMs;
+    }
+}
@@ -0,0 +1,9 @@
+package tributary.streams;
+
+import tributary.core.Event;
+
+public interface TimestampExtractor {
+    public static final TimestampExtractor PROCESSING_TIME = e -> System.currentTimeMillis();
+
+    public long extract(Event<?> event);
+}
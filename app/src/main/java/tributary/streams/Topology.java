@@ -0,0 +1,243 @@
+package tributary.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tributary.api.Tributary;
+import tributary.core.Consumer;
+import tributary.core.Event;
+import tributary.core.Partition;
+import tributary.core.RoundRobinStrategy;
+import tributary.core.Topic;
+
+/**
+ * Runs the pipelines of a {@link StreamsBuilder}. Each pipeline gets its own consumer group with one consumer per
+ * source partition, and every partition is processed by its own task so partitions run in parallel.
+ *
+ * <p>A task commits its source offset only once the records derived from a poll have been produced to the sink, so
+ * a crash in between re-reads them: delivery to the sink is at least once. Records held in an open window are the
+ * exception, as window state is not kept anywhere else. When the source topic gains partitions, through an expand or
+ * a split, the next poll adds consumers for them, flushes the pipeline's tasks and builds new ones from the
+ * rebalanced assignment.
+ */
+public class Topology {
+    private static final int DEFAULT_MAX_POLL_EVENTS = 500;
+
+    private Tributary tributary;
+    private String applicationId;
+    private List<Pipeline> pipelines;
+    private List<StreamTask> tasks = new ArrayList<>();
+    // source partition count each pipeline's tasks were built for
+    private int[] sourcePartitions;
+    private ExecutorService executor;
+    private int maxPollEvents = DEFAULT_MAX_POLL_EVENTS;
+    private volatile boolean running;
+    private Thread runner;
+
+    Topology(Tributary tributary, String applicationId, List<Pipeline> pipelines) {
+        this.tributary = tributary;
+        this.applicationId = applicationId;
+        this.pipelines = pipelines;
+    }
+
+    public synchronized void initialise() {
+        if (executor != null) {
+            return;
+        }
+        sourcePartitions = new int[pipelines.size()];
+        for (int i = 0; i < pipelines.size(); i++) {
+            Pipeline pipeline = pipelines.get(i);
+            Topic<?> source = tributary.getTopic(pipeline.getSourceTopicId());
+            Topic<?> sink = tributary.getTopic(pipeline.getSinkTopicId());
+            if (source == null || sink == null) {
+                throw new IllegalStateException("Topics for pipeline " + pipeline.getSourceTopicId() + " -> "
+                        + pipeline.getSinkTopicId() + " do not exist");
+            }
+
+            String groupId = applicationId + "-" + i;
+            String producerId = groupId + "-producer";
+            tributary.createConsumerGroup(groupId, source.getId(), new RoundRobinStrategy());
+            tributary.createProducer(producerId, sink.getType(), pipeline.getAllocation());
+            addTasks(i, source.getPartitions().size());
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, Math.min(tasks.size(),
+                Runtime.getRuntime().availableProcessors())), r -> {
+                    Thread t = new Thread(r, applicationId + "-stream-task");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Gives pipeline {@code index} a consumer per source partition and a task per assigned partition.
+     */
+    private void addTasks(int index, int partitions) {
+        Pipeline pipeline = pipelines.get(index);
+        String groupId = applicationId + "-" + index;
+        for (int j = sourcePartitions[index]; j < partitions; j++) {
+            tributary.createConsumer(groupId + "-" + j, groupId);
+        }
+        sourcePartitions[index] = partitions;
+        for (int j = 0; j < partitions; j++) {
+            Consumer consumer = tributary.getConsumer(groupId + "-" + j);
+            for (Partition partition : consumer.getPartitions()) {
+                tasks.add(new StreamTask(index, consumer, groupId, partition.getId(), groupId + "-producer",
+                        pipeline.getSinkTopicId(), pipeline));
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the tasks of every pipeline whose source topic gained partitions since they were built.
+     */
+    private synchronized List<StreamTask> refreshTasks() {
+        initialise();
+        for (int i = 0; i < pipelines.size(); i++) {
+            int partitions = tributary.getTopic(pipelines.get(i).getSourceTopicId()).getPartitions().size();
+            if (partitions == sourcePartitions[i]) {
+                continue;
+            }
+            List<StreamTask> kept = new ArrayList<>();
+            for (StreamTask task : tasks) {
+                if (task.pipelineIndex == i) {
+                    task.flush();
+                } else {
+                    kept.add(task);
+                }
+            }
+            tasks = kept;
+            addTasks(i, partitions);
+        }
+        return new ArrayList<>(tasks);
+    }
+
+    /**
+     * Polls every partition once in parallel and pushes the records through their pipelines.
+     *
+     * @return the number of source events processed
+     */
+    public int runOnce() {
+        List<Future<Integer>> results = new ArrayList<>();
+        for (StreamTask task : refreshTasks()) {
+            results.add(executor.submit(() -> task.poll(maxPollEvents)));
+        }
+        int processed = 0;
+        for (Future<Integer> result : results) {
+            try {
+                processed += result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return processed;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Stream task failed", e.getCause());
+            }
+        }
+        return processed;
+    }
+
+    public synchronized void start(long pollIntervalMs) {
+        initialise();
+        running = true;
+        runner = new Thread(() -> {
+            while (running) {
+                if (runOnce() == 0) {
+                    try {
+                        Thread.sleep(pollIntervalMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, applicationId + "-runner");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    /**
+     * Stops the topology, emitting any windows that are still open.
+     */
+    public synchronized void close() {
+        running = false;
+        if (runner != null) {
+            runner.interrupt();
+            try {
+                runner.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (StreamTask task : tasks) {
+            task.flush();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public void setMaxPollEvents(int maxPollEvents) {
+        this.maxPollEvents = maxPollEvents;
+    }
+
+    private class StreamTask {
+        private final int pipelineIndex;
+        private Consumer consumer;
+        private String groupId;
+        private String partitionId;
+        private String producerId;
+        private String sinkTopicId;
+        private List<Event<?>> output = new ArrayList<>();
+        private Processor chain;
+
+        StreamTask(int pipelineIndex, Consumer consumer, String groupId, String partitionId, String producerId,
+                String sinkTopicId, Pipeline pipeline) {
+            this.pipelineIndex = pipelineIndex;
+            this.consumer = consumer;
+            this.groupId = groupId;
+            this.partitionId = partitionId;
+            this.producerId = producerId;
+            this.sinkTopicId = sinkTopicId;
+            this.chain = pipeline.instantiate(output);
+        }
+
+        /**
+         * Reads without moving the group offset, and commits past the events read once their output is produced.
+         */
+        synchronized int poll(int maxEvents) {
+            Partition partition = consumer.getPartition(partitionId);
+            if (partition == null) {
+                return 0;
+            }
+            int from;
+            List<Event<?>> events;
+            synchronized (partition) {
+                from = Math.max(partition.getCurrentIndex(groupId), partition.getStartOffset());
+                events = partition.readEvents(groupId, from, maxEvents);
+            }
+            for (Event<?> event : events) {
+                chain.process(event);
+            }
+            chain.tick(System.currentTimeMillis());
+            send();
+            if (!events.isEmpty()) {
+                consumer.commit(partitionId, from + events.size());
+            }
+            return events.size();
+        }
+
+        synchronized void flush() {
+            chain.flush();
+            send();
+        }
+
+        private void send() {
+            if (!output.isEmpty()) {
+                tributary.produceEvents(producerId, sinkTopicId, new ArrayList<>(output));
+                output.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package tributary.streams;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import tributary.core.Event;
+
+/**
+ * Incremental window aggregation. Only the aggregate of each open (window, key) pair is held, and a window is emitted
+ * and dropped as soon as stream time passes its end, so state is bounded by the number of open windows times keys.
+ */
+class WindowProcessor<A> extends Processor {
+    private TimeWindows windows;
+    private TimestampExtractor extractor;
+    private Supplier<A> initializer;
+    private BiFunction<A, Event<?>, A> aggregator;
+    private WindowResultMapper<A> mapper;
+    private TreeMap<Long, Map<String, A>> open = new TreeMap<>();
+    private long streamTime = Long.MIN_VALUE;
+
+    WindowProcessor(Processor next, TimeWindows windows, TimestampExtractor extractor, Supplier<A> initializer,
+            BiFunction<A, Event<?>, A> aggregator, WindowResultMapper<A> mapper) {
+        super(next);
+        this.windows = windows;
+        this.extractor = extractor;
+        this.initializer = initializer;
+        this.aggregator = aggregator;
+        this.mapper = mapper;
+    }
+
+    @Override
+    void process(Event<?> event) {
+        long timestamp = extractor.extract(event);
+        if (timestamp + windows.getSizeMs() <= streamTime) {
+            // Every window this record belongs to has already been emitted
+            return;
+        }
+        for (long start = windows.firstWindowStart(timestamp); start <= timestamp; start += windows.getAdvanceMs()) {
+            long end = start + windows.getSizeMs();
+            if (end <= timestamp || end <= streamTime) {
+                continue;
+            }
+            Map<String, A> byKey = open.computeIfAbsent(start, s -> new HashMap<>());
+            A current = byKey.get(event.getKey());
+            byKey.put(event.getKey(), aggregator.apply(current == null ? initializer.get() : current, event));
+        }
+        advance(timestamp);
+    }
+
+    @Override
+    void tick(long now) {
+        if (extractor == TimestampExtractor.PROCESSING_TIME) {
+            advance(now);
+        }
+        super.tick(now);
+    }
+
+    private void advance(long time) {
+        if (time > streamTime) {
+            streamTime = time;
+        }
+        Iterator<Map.Entry<Long, Map<String, A>>> it = open.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Map<String, A>> window = it.next();
+            long end = window.getKey() + windows.getSizeMs();
+            if (end > streamTime) {
+                break;
+            }
+            emit(window.getKey(), end, window.getValue());
+            it.remove();
+        }
+    }
+
+    @Override
+    void flush() {
+        for (Map.Entry<Long, Map<String, A>> window : open.entrySet()) {
+            emit(window.getKey(), window.getKey() + windows.getSizeMs(), window.getValue());
+        }
+        open.clear();
+        super.flush();
+    }
+
+    int openWindowCount() {
+        return open.size();
+    }
+
+    private void emit(long start, long end, Map<String, A> byKey) {
+        for (Map.Entry<String, A> entry : byKey.entrySet()) {
+            forward(mapper.toEvent(entry.getKey(), start, end, entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package tributary.streams;
+
+import tributary.core.Event;
+
+public interface WindowResultMapper<A> {
+    public Event<?> toEvent(String key, long windowStart, long windowEnd, A aggregate);
+}
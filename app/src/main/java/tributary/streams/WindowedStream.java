@@ -0,0 +1,23 @@
+package tributary.streams;
+
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import tributary.core.Event;
+
+public class WindowedStream {
+    private EventStream stream;
+    private TimeWindows windows;
+    private TimestampExtractor extractor;
+
+    WindowedStream(EventStream stream, TimeWindows windows, TimestampExtractor extractor) {
+        this.stream = stream;
+        this.windows = windows;
+        this.extractor = extractor;
+    }
+
+    public <A> EventStream aggregate(Supplier<A> initializer, BiFunction<A, Event<?>, A> aggregator,
+            WindowResultMapper<A> mapper) {
+        return stream.with(next -> new WindowProcessor<A>(next, windows, extractor, initializer, aggregator, mapper));
+    }
+}
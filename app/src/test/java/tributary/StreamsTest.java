@@ -0,0 +1,151 @@
+package tributary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import tributary.api.Tributary;
+import tributary.core.Event;
+import tributary.core.ManualMessage;
+import tributary.core.Partition;
+import tributary.streams.StreamsBuilder;
+import tributary.streams.TimeWindows;
+import tributary.streams.Topology;
+
+public class StreamsTest {
+    private final PrintStream originalOut = System.out;
+    private final PrintStream originalErr = System.err;
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setUpStreams() {
+        System.setOut(new PrintStream(outContent));
+        System.setErr(new PrintStream(errContent));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+    }
+
+    private Tributary initialise() {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("in", "integer");
+        tributary.createPartition("p1", "in");
+        tributary.createPartition("p2", "in");
+        tributary.createTopic("out", "integer");
+        tributary.createPartition("o1", "out");
+        tributary.createProducer("prod1", "integer", new ManualMessage());
+        return tributary;
+    }
+
+    @Test
+    public void mapFilterTopicToTopicTest() {
+        Tributary tributary = initialise();
+        for (int i = 0; i < 10; i++) {
+            tributary.produceEvent("prod1", "in", new Event<Integer>("e" + i, "integer", i < 5 ? "p1" : "p2", i));
+        }
+
+        StreamsBuilder builder = new StreamsBuilder();
+        builder.stream("in")
+                .filter(e -> (Integer) e.getValue() % 2 == 0)
+                .map(e -> new Event<Integer>(e.getId(), "integer", e.getKey(), (Integer) e.getValue() * 10))
+                .to("out");
+        Topology topology = builder.build(tributary, "app");
+
+        assertEquals(10, topology.runOnce());
+        assertEquals(0, topology.runOnce());
+        topology.close();
+
+        Partition out = tributary.getPartition("out", "o1");
+        assertEquals(5, out.getSize());
+        int sum = 0;
+        for (Event<?> e : out.getEvents()) {
+            sum += (Integer) e.getValue();
+        }
+        assertEquals(200, sum);
+    }
+
+    @Test
+    public void sourceExpansionTest() {
+        Tributary tributary = initialise();
+        StreamsBuilder builder = new StreamsBuilder();
+        builder.stream("in").to("out");
+        Topology topology = builder.build(tributary, "grow");
+        tributary.produceEvent("prod1", "in", new Event<Integer>("e0", "integer", "p1", 0));
+        assertEquals(1, topology.runOnce());
+
+        // offsets are committed after the sink produce, so the group is at the end of p1 once the poll returns
+        assertEquals(1, tributary.getPartition("in", "p1").getCurrentIndex("grow-0"));
+
+        // the new partition gets a consumer and a task on the next poll
+        tributary.expandPartitions("in", "p3");
+        tributary.produceEvent("prod1", "in", new Event<Integer>("e1", "integer", "p3", 1));
+        tributary.produceEvent("prod1", "in", new Event<Integer>("e2", "integer", "p1", 2));
+        assertEquals(2, topology.runOnce());
+        assertEquals(0, topology.runOnce());
+        topology.close();
+        assertEquals(3, tributary.getPartition("out", "o1").getSize());
+    }
+
+    @Test
+    public void tumblingWindowAggregateTest() {
+        Tributary tributary = initialise();
+        for (int i = 0; i < 30; i++) {
+            tributary.produceEvent("prod1", "in", new Event<Integer>("e" + i, "integer", "p1", i));
+        }
+
+        StreamsBuilder builder = new StreamsBuilder();
+        builder.stream("in")
+                .keyBy(e -> "all")
+                .windowedBy(TimeWindows.tumbling(10), e -> (Integer) e.getValue())
+                .aggregate(() -> 0, (count, e) -> count + 1,
+                        (key, start, end, count) -> new Event<Integer>(key + "@" + start, "integer", key, count))
+                .to("out");
+        Topology topology = builder.build(tributary, "counts");
+
+        topology.runOnce();
+        Partition out = tributary.getPartition("out", "o1");
+        assertEquals(2, out.getSize());
+
+        topology.close();
+        List<Event<?>> windows = out.getEvents();
+        assertEquals(3, windows.size());
+        assertEquals("all@0", windows.get(0).getId());
+        assertEquals(10, windows.get(0).getValue());
+        assertEquals("all@20", windows.get(2).getId());
+    }
+
+    @Test
+    public void slidingWindowTest() {
+        Tributary tributary = initialise();
+        for (int i = 0; i < 10; i++) {
+            tributary.produceEvent("prod1", "in", new Event<Integer>("e" + i, "integer", "p1", i));
+        }
+
+        StreamsBuilder builder = new StreamsBuilder();
+        builder.stream("in")
+                .windowedBy(TimeWindows.sliding(10, 5), e -> (Integer) e.getValue())
+                .aggregate(() -> 0, (sum, e) -> sum + (Integer) e.getValue(),
+                        (key, start, end, sum) -> new Event<Integer>("w" + start, "integer", key, sum))
+                .to("out");
+        Topology topology = builder.build(tributary, "sums");
+        topology.runOnce();
+        topology.close();
+
+        List<Event<?>> windows = tributary.getPartition("out", "o1").getEvents();
+        assertEquals(3, windows.size());
+        assertEquals("w-5", windows.get(0).getId());
+        assertEquals(10, windows.get(0).getValue());
+        assertEquals(45, windows.get(1).getValue());
+        assertTrue(windows.get(2).getId().equals("w5"));
+        assertEquals(35, windows.get(2).getValue());
+    }
+}
@@ -3,7 +3,10 @@ package tributary;
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 import java.io.*;
+import tributary.cli.PerfProfile;
+import tributary.cli.PerfReport;
 import tributary.cli.TributaryCLI;
+import tributary.cli.TributaryPerf;
 
 public class TributaryCLITest {
     private final PrintStream originalOut = System.out;
@@ -62,4 +65,45 @@ public class TributaryCLITest {
         assertTrue(outContent.toString().contains("Producer prod1 created with type string and allocation Random"));
     }
 
+    @Test
+    public void testInvalidRangeFilter() {
+        tributaryCLI.processCommand("create topic t1 string");
+        tributaryCLI.processCommand("create partition p1 t1");
+        tributaryCLI.processCommand("create consumergroup g1 t1 range");
+        tributaryCLI.processCommand("create consumer c1 g1");
+        tributaryCLI.processCommand("consume events c1 p1 1 range=5");
+        tributaryCLI.processCommand("consume events c1 p1 1 range=a:b");
+        assertEquals(2, errContent.toString().split("Invalid filter", -1).length - 1);
+    }
+
+    @Test
+    public void testInvalidBatchSize() {
+        tributaryCLI.processCommand("create topic t1 string");
+        tributaryCLI.processCommand("set compression t1 deflate many");
+        assertTrue(errContent.toString().contains("invalid batch size: many"));
+    }
+
+    @Test
+    public void testPerfRun() throws InterruptedException {
+        PerfProfile profile = new PerfProfile().setClients(2, 2, 2).setRate(2000, true).setDuration(200, 100)
+                .setKeys("zipf", 50);
+        PerfReport report = new TributaryPerf(profile).run();
+
+        assertEquals(2, report.getRows().size());
+        PerfReport.Row summary = report.getSummary();
+        assertTrue(summary.getProduced() > 0);
+        assertEquals(summary.getProduced(), summary.getConsumed());
+        String[] csv = report.toCsv().split("\n");
+        assertTrue(csv[0].startsWith("elapsed_s,produced,consumed"));
+        assertEquals(4, csv.length);
+        // the run is quiet without taking over System.out, so its report rows still reach it
+        assertFalse(outContent.toString().contains(" added to "));
+        assertTrue(outContent.toString().contains("total "));
+    }
+
+    @Test
+    public void testPerfUsage() throws IOException, InterruptedException {
+        TributaryPerf.main(new String[] {"--bogus"});
+        assertTrue(outContent.toString().contains("Usage: TributaryPerf"));
+    }
 }
@@ -2,22 +2,72 @@ package tributary;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
+import tributary.api.SnapshotRecovery;
 import tributary.api.Tributary;
+import tributary.api.TributaryAsync;
+import tributary.api.TributaryException;
+import tributary.core.BatchSource;
+import tributary.core.CapacityLimit;
 import tributary.core.Consumer;
+import tributary.core.DeflateCodec;
+import tributary.core.DuplicateFilter;
 import tributary.core.Event;
+import tributary.core.EventBatch;
+import tributary.core.EventFilter;
+import tributary.core.Header;
+import tributary.core.LatencyStats;
+import tributary.core.FieldType;
+import tributary.core.KeyHashMessage;
+import tributary.core.KeyOrderedProcessor;
+import tributary.core.LatencyHistogram;
 import tributary.core.ManualMessage;
+import tributary.core.MaterializedView;
+import tributary.core.MergedReader;
+import tributary.core.NoCompression;
+import tributary.core.OverflowPolicy;
 import tributary.core.Partition;
+import tributary.core.PrefetchBuffer;
 import tributary.core.RandomMessage;
 import tributary.core.RangeStrategy;
+import tributary.core.RecordValue;
 import tributary.core.RoundRobinStrategy;
+import tributary.core.Schema;
+import tributary.core.SchemaRegistry;
+import tributary.core.SpscQueue;
+import tributary.core.TieredStorage;
+import tributary.core.TimingWheel;
+import tributary.core.TokenBucket;
+import tributary.core.WaitStrategy;
 
 public class TributaryTest {
     private final PrintStream originalOut = System.out;
@@ -75,6 +125,20 @@ public class TributaryTest {
         assertTrue(actualOutput.contains("Producer prod1 created with type string and allocation Random"));
     }
 
+    @Test
+    public void randomProducerWithoutPartitionsTest() {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("t1", "string");
+        tributary.createProducer("prod1", "string", new RandomMessage());
+        tributary.createProducer("prod2", "string", new RandomMessage(), true);
+
+        tributary.produceEvent("prod1", "t1", new Event<String>("e1", "string", "k", "v"));
+        tributary.produceEvent("prod2", "t1", new Event<String>("e2", "string", "k", "v"));
+        tributary.produceEvents("prod1", "t1", List.of(new Event<String>("e3", "string", "k", "v")));
+        assertTrue(errContent.toString().contains("Topic t1 has no partitions"));
+        assertTrue(errContent.toString().contains("No partition available for event e2"));
+    }
+
     @Test
     public void testSuccessfulConsumerGroupCreation() {
         Tributary tributary = new Tributary();
@@ -312,4 +376,1070 @@ public class TributaryTest {
         actualOutput = errContent.toString().trim();
         assertTrue(actualOutput.contains("Partition with id p5 does not exist"));
     }
+
+    @Test
+    public void compressionTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setTopicCompression("t1", new DeflateCodec(), 4);
+
+        List<Event<?>> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(new Event<String>("event" + i, "string", "p1", "repeated payload repeated payload"));
+        }
+        tributary.produceEvents("prod1", "t1", batch);
+        Event<String> single = new Event<String>("single", "string", "p1", "tail");
+        tributary.produceEvent("prod1", "t1", single);
+
+        Partition p1 = tributary.getPartition("t1", "p1");
+        assertEquals(11, p1.getSize());
+        assertEquals(1, p1.getPendingCount());
+        assertTrue(p1.getStoredBytes() > 0);
+        assertTrue(p1.getCompressionRatio() > 1.0);
+
+        tributary.consumeEvents("c1", "p1", 11);
+        List<Event<?>> consumed = tributary.getConsumer("c1").getConsumedEvents();
+        assertEquals(11, consumed.size());
+        assertEquals("event0", consumed.get(0).getId());
+        assertEquals("repeated payload repeated payload", consumed.get(9).getValue());
+        assertTrue(consumed.contains(single));
+    }
+
+    @Test
+    public void filteredConsumeTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setTopicCompression("t1", new DeflateCodec(), 4);
+
+        for (int i = 0; i < 10; i++) {
+            String id = (i % 5 == 0 ? "wanted" : "other") + i;
+            tributary.produceEvent("prod1", "t1", new Event<String>(id, "string", "p1", "val" + i));
+        }
+
+        List<Event<?>> delivered = tributary.consumeEvents("c1", "p1", 10, EventFilter.byIdPrefix("wanted"));
+        assertEquals(2, delivered.size());
+        assertEquals("wanted0", delivered.get(0).getId());
+        assertEquals("wanted5", delivered.get(1).getId());
+        assertEquals(10, tributary.getPartition("t1", "p1").getCurrentIndex("g1"));
+
+        delivered = tributary.consumeEvents("c1", "p1", 1, EventFilter.ALL);
+        assertEquals(0, delivered.size());
+    }
+
+    @Test
+    public void idempotentProduceTest() {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("t1", "string");
+        tributary.createPartition("p1", "t1");
+        tributary.createProducer("prod1", "string", new ManualMessage(), true);
+
+        Event<String> e1 = new Event<String>("event1", "string", "p1", "val");
+        tributary.produceEvent("prod1", "t1", e1);
+        // a retry of the same event object reuses its sequence number
+        tributary.produceEvent("prod1", "t1", e1);
+        // a re-created event with a duplicate id is caught by the id window
+        tributary.produceEvent("prod1", "t1", new Event<String>("event1", "string", "p1", "val"));
+        tributary.produceEvent("prod1", "t1", new Event<String>("event2", "string", "p1", "val"));
+
+        Partition p1 = tributary.getPartition("t1", "p1");
+        assertEquals(2, p1.getSize());
+        assertEquals(0, e1.getHeaders().getSequence());
+        assertEquals(2, p1.getEvents().get(1).getHeaders().getSequence());
+        assertTrue(errContent.toString().contains("Duplicate event event1 rejected"));
+    }
+
+    @Test
+    public void duplicateFilterWindowTest() {
+        DuplicateFilter filter = new DuplicateFilter(4);
+        for (int i = 0; i < 4; i++) {
+            filter.add("id" + i);
+        }
+        assertTrue(filter.isDuplicate("id0"));
+        assertFalse(filter.isDuplicate("id4"));
+
+        filter.add("id4");
+        assertFalse(filter.isDuplicate("id0"));
+        assertTrue(filter.isDuplicate("id1"));
+        assertTrue(filter.isDuplicate("id4"));
+    }
+
+    @Test
+    public void boundedPartitionTest(@TempDir Path dir) throws IOException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setPartitionCapacity("t1", "p1", new CapacityLimit(2, 0, OverflowPolicy.FAIL, 0));
+
+        for (int i = 0; i < 3; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("event" + i, "string", "p1", "val"));
+        }
+        Partition p1 = tributary.getPartition("t1", "p1");
+        assertEquals(2, p1.getSize());
+        assertEquals(0, p1.getRemainingCapacity());
+        assertTrue(errContent.toString().contains("Partition p1 full"));
+
+        // consuming frees backlog capacity
+        tributary.consumeEvents("c1", "p1", 1);
+        tributary.produceEvent("prod1", "t1", new Event<String>("event3", "string", "p1", "val"));
+        assertEquals(3, p1.getSize());
+        assertEquals(2, p1.getBacklogEvents());
+
+        tributary.setPartitionCapacity("t1", "p1", new CapacityLimit(2, 0, OverflowPolicy.DROP_OLDEST, 0));
+        tributary.produceEvent("prod1", "t1", new Event<String>("event4", "string", "p1", "val"));
+        assertEquals(4, p1.getSize());
+        assertEquals(2, p1.getCurrentIndex("g1"));
+        assertEquals(2, p1.getStartOffset());
+        assertEquals(2, p1.getEvents().size());
+        assertEquals("event3", p1.getEvent(2).getId());
+        assertEquals(null, p1.getEvent(1));
+
+        // a snapshot keeps the log start, so offsets survive a restore
+        tributary.saveSnapshot(dir);
+        Partition restored = Tributary.restoreSnapshot(dir).getPartition("t1", "p1");
+        assertEquals(4, restored.getSize());
+        assertEquals(2, restored.getStartOffset());
+        assertEquals("event4", restored.getEvent(3).getId());
+    }
+
+    @Test
+    public void blockingTopicCapacityTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setTopicCapacity("t1", new CapacityLimit(1, 0, OverflowPolicy.BLOCK, 2000));
+        tributary.produceEvent("prod1", "t1", new Event<String>("event0", "string", "p1", "val"));
+        assertEquals(0, tributary.getRemainingCapacity("t1"));
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            tributary.consumeEvents("c1", "p1", 1);
+        });
+        consumer.start();
+        tributary.produceEvent("prod1", "t1", new Event<String>("event1", "string", "p1", "val"));
+        consumer.join();
+        assertEquals(2, tributary.getPartition("t1", "p1").getSize());
+    }
+
+    @Test
+    public void blockingPartitionCapacityTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setPartitionCapacity("t1", "p1", new CapacityLimit(1, 0, OverflowPolicy.BLOCK, 2000));
+        tributary.produceEvent("prod1", "t1", new Event<String>("event0", "string", "p1", "val"));
+
+        Thread blocked = new Thread(() -> tributary.produceEvent("prod1", "t1",
+                new Event<String>("event1", "string", "p1", "val")));
+        blocked.start();
+        Thread.sleep(50);
+        // the producer waits for p1 without holding its lock, so its other partitions keep taking events
+        long start = System.nanoTime();
+        tributary.produceEvent("prod1", "t1", new Event<String>("event2", "string", "p2", "val"));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(1, tributary.getPartition("t1", "p2").getSize());
+        assertTrue(blocked.isAlive());
+
+        tributary.consumeEvents("c1", "p1", 1);
+        blocked.join();
+        assertEquals(2, tributary.getPartition("t1", "p1").getSize());
+    }
+
+    @Test
+    public void blockingPartitionEventLoopTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.enableEventLoops(1);
+        tributary.setPartitionCapacity("t1", "p1", new CapacityLimit(1, 0, OverflowPolicy.BLOCK, 2000));
+        assertTrue(tributary.submitEvent("prod1", "t1", new Event<String>("event0", "string", "p1", "val")).join());
+
+        List<CompletableFuture<Boolean>> appends = new CopyOnWriteArrayList<>();
+        Thread blocked = new Thread(() -> appends.add(tributary.submitEvent("prod1", "t1",
+                new Event<String>("event1", "string", "p1", "val"))));
+        blocked.start();
+        Thread.sleep(50);
+        // the submitter waits for room itself, so the loop that owns p1 is still free to run the poll
+        assertTrue(blocked.isAlive());
+        assertEquals(1, tributary.pollEvents("c1", "p1", 1).size());
+        blocked.join();
+        assertTrue(appends.get(0).join());
+        assertEquals(2, tributary.getPartition("t1", "p1").getSize());
+    }
+
+    @Test
+    public void tieredStorageTest() throws IOException {
+        Path dir = Files.createTempDirectory("tributary-tiered");
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.enableTieredStorage("t1", dir, 5, 1, 2);
+
+        for (int i = 0; i < 22; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("event" + i, "string", "p1", "val" + i));
+        }
+        Partition p1 = tributary.getPartition("t1", "p1");
+        assertEquals(22, p1.getSize());
+        assertEquals(3, p1.getOffloadedSegments());
+        assertTrue(Files.exists(dir.resolve("t1").resolve("p1").resolve("0.seg")));
+
+        tributary.consumeEvents("c1", "p1", 12);
+        tributary.playback("c1", "p1", 3);
+        List<Event<?>> consumed = tributary.getConsumer("c1").getConsumedEvents();
+        assertEquals("event0", consumed.get(0).getId());
+        assertEquals("val11", consumed.get(11).getValue());
+        assertEquals("event3", consumed.get(12).getId());
+
+        // the cache holds the two newest cold segments, so reading offset 0 loads 0.seg again and finds it corrupt
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("t1").resolve("p1").resolve("0.seg").toFile(),
+                "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        }
+        assertThrows(UncheckedIOException.class, () -> p1.getEvent(0));
+    }
+
+    @Test
+    public void snapshotRestoreTest() throws IOException {
+        Path dir = Files.createTempDirectory("tributary-snapshot");
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.createConsumer("c2", "g1");
+        tributary.setTopicCompression("t1", new DeflateCodec(), 3);
+        for (int i = 0; i < 5; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("event" + i, "string", "p1", "val" + i));
+        }
+        tributary.produceEvent("prod1", "t1", new Event<String>("other", "string", "p3", "x"));
+        tributary.consumeEvents("c1", "p1", 2);
+        tributary.saveSnapshot(dir);
+
+        Tributary restored = Tributary.restoreSnapshot(dir);
+        Partition p1 = restored.getPartition("t1", "p1");
+        assertEquals(5, p1.getSize());
+        assertEquals(2, p1.getCurrentIndex("g1"));
+        assertEquals(1, restored.getPartition("t1", "p3").getSize());
+        assertTrue(restored.getConsumer("c2").getPartition("p3") != null);
+
+        restored.consumeEvents("c1", "p1", 1);
+        assertEquals("event2", restored.getConsumer("c1").getConsumedEvents().get(0).getId());
+        restored.produceEvent("prod1", "t1", new Event<String>("event5", "string", "p1", "val5"));
+        assertEquals(6, p1.getSize());
+        assertEquals("val5", p1.getEvent(5).getValue());
+
+        // saving the restored instance over its own snapshot leaves the logs it has mapped untouched
+        restored.saveSnapshot(dir);
+        assertEquals("val1", p1.getEvent(1).getValue());
+        Tributary again = Tributary.restoreSnapshot(dir);
+        assertEquals(6, again.getPartition("t1", "p1").getSize());
+        assertEquals("val5", again.getPartition("t1", "p1").getEvent(5).getValue());
+        try (Stream<Path> entries = Files.list(dir)) {
+            assertEquals(1, entries.filter(p -> p.getFileName().toString().startsWith("data")).count());
+        }
+    }
+
+    @Test
+    public void parallelRecoveryTest() throws IOException {
+        Path dir = Files.createTempDirectory("tributary-recovery");
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.createTopic("t2", "string");
+        tributary.createPartition("q1", "t2");
+        tributary.setTopicCompression("t1", new DeflateCodec(), 2);
+        for (int i = 0; i < 6; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("event" + i, "string", "p1", "val" + i));
+        }
+        tributary.produceEvent("prod1", "t2", new Event<String>("q", "string", "q1", "v"));
+        tributary.saveSnapshot(dir);
+
+        // simulate an unclean shutdown that tore the last segment of p1
+        Path log;
+        try (Stream<Path> files = Files.walk(dir)) {
+            log = files.filter(p -> p.endsWith(Paths.get("t1", "p1.log"))).findFirst().get();
+        }
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 0x7f;
+        Files.write(log, bytes);
+        // and garbled the codec name length of q1's only segment
+        try (Stream<Path> files = Files.walk(dir)) {
+            log = files.filter(p -> p.endsWith(Paths.get("t2", "q1.log"))).findFirst().get();
+        }
+        bytes = Files.readAllBytes(log);
+        bytes[8] = 0x7f;
+        Files.write(log, bytes);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        SnapshotRecovery recovery = Tributary.recoverSnapshot(dir, pool);
+        Tributary restored = recovery.awaitCompletion();
+        pool.shutdown();
+        assertTrue(recovery.isComplete());
+        assertTrue(recovery.isTopicReady("t2"));
+        assertEquals(5, recovery.getTotalPartitions());
+        assertEquals(1.0, recovery.getProgress(), 0.0);
+        assertEquals(2, recovery.getTruncatedSegments());
+        assertEquals(0, restored.getPartition("t2", "q1").getSize());
+        assertEquals(4, restored.getPartition("t1", "p1").getSize());
+        assertEquals("val3", restored.getPartition("t1", "p1").getEvent(3).getValue());
+        assertTrue(restored.getConsumer("c1").getPartition("p1") != null);
+    }
+
+    @Test
+    public void partitionScalingTest(@TempDir Path dir) throws IOException {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("t1", "string");
+        tributary.createPartition("p1", "t1");
+        tributary.createPartition("p2", "t1");
+        tributary.createProducer("prod1", "string", new KeyHashMessage());
+        tributary.createConsumerGroup("g1", "t1", new RoundRobinStrategy());
+        tributary.createConsumer("c1", "g1");
+
+        for (int i = 0; i < 200; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("a" + i, "string", "key" + i, "v"));
+        }
+        Partition p1 = tributary.getPartition("t1", "p1");
+        Partition p2 = tributary.getPartition("t1", "p2");
+        int p1Before = p1.getSize();
+        int p2Before = p2.getSize();
+
+        tributary.splitPartition("t1", "p1", "p3");
+        assertTrue(tributary.getConsumer("c1").getPartition("p3") != null);
+
+        for (int i = 0; i < 200; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("b" + i, "string", "key" + i, "v"));
+        }
+        Partition p3 = tributary.getPartition("t1", "p3");
+        // only keys of the split partition move
+        assertEquals(2 * p2Before, p2.getSize());
+        assertEquals(p1Before, p1.getSize() - p1Before + p3.getSize());
+        assertTrue(p3.getSize() > 0 && p3.getSize() < p1Before);
+
+        // p3 is fenced until the group has drained what p1 held at the split
+        assertEquals(0, tributary.consumeEvents("c1", "p3", 1, EventFilter.ALL).size());
+
+        // a restored snapshot keeps the split keys where they are and the fence in place
+        tributary.saveSnapshot(dir);
+        Tributary restored = Tributary.restoreSnapshot(dir);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(tributary.getTopic("t1").getPartitionForKey("key" + i).getId(),
+                    restored.getTopic("t1").getPartitionForKey("key" + i).getId());
+        }
+        assertEquals(0, restored.consumeEvents("c1", "p3", 1, EventFilter.ALL).size());
+
+        tributary.consumeEvents("c1", "p1", p1Before, EventFilter.ALL);
+        assertEquals(1, tributary.consumeEvents("c1", "p3", 1, EventFilter.ALL).size());
+        restored.consumeEvents("c1", "p1", p1Before, EventFilter.ALL);
+        assertEquals(1, restored.consumeEvents("c1", "p3", 1, EventFilter.ALL).size());
+
+        // restoring a partition again replaces its fences along with its contents
+        Partition restoredP3 = restored.getPartition("t1", "p3");
+        assertEquals(1, restoredP3.getFences().size());
+        restoredP3.restore(new ArrayList<>());
+        assertTrue(restoredP3.getFences().isEmpty());
+    }
+
+    @Test
+    public void prefetchTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setTopicCompression("t1", new DeflateCodec(), 4);
+        for (int i = 0; i < 10; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("e" + i, "string", "p1", "v" + i));
+        }
+        // no byte limit: read-ahead is bounded by the event count alone
+        tributary.setPrefetch("c1", 4, 0);
+        Partition p1 = tributary.getPartition("t1", "p1");
+
+        tributary.consumeEvents("c1", "p1", 3);
+        Consumer c1 = tributary.getConsumer("c1");
+        assertEquals(3, c1.getConsumedEvents().size());
+        assertEquals(3, p1.getCurrentIndex("g1"));
+        assertTrue(c1.getPrefetchBuffer("p1").getBufferedCount() <= 4);
+
+        // a rebalance drops the read-ahead and the new buffer resumes from the committed offset
+        PrefetchBuffer before = c1.getPrefetchBuffer("p1");
+        tributary.createConsumer("c2", "g1");
+        assertTrue(c1.getPrefetchBuffer("p1") != before);
+        assertEquals(0, before.getBufferedCount());
+
+        tributary.consumeEvents("c1", "p1", 4);
+        tributary.consumeEvents("c1", "p1", 4);
+        assertEquals(10, p1.getCurrentIndex("g1"));
+        assertEquals("e3", c1.getConsumedEvents().get(3).getId());
+        assertEquals("e9", c1.getConsumedEvents().get(9).getId());
+    }
+
+    @Test
+    public void boundedHistoryTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        for (int i = 0; i < 10; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("e" + i, "string", "p1", "v" + i));
+        }
+        List<String> handled = new ArrayList<>();
+        tributary.setDeliveryHandler("c1", (consumerId, partitionId, event) -> handled.add(event.getId()));
+        tributary.setConsumerHistory("c1", 3, Long.MAX_VALUE);
+
+        tributary.consumeEvents("c1", "p1", 8);
+        assertEquals(8, handled.size());
+        List<Event<?>> history = tributary.getConsumer("c1").getConsumedEvents();
+        assertEquals(3, history.size());
+        assertEquals("e5", history.get(0).getId());
+        assertEquals("e7", history.get(2).getId());
+
+        // a byte bound smaller than two events keeps only the latest one
+        long oneEvent = history.get(2).getSizeInBytes();
+        tributary.setConsumerHistory("c1", 3, oneEvent + 1);
+        tributary.consumeEvents("c1", "p1", 2);
+        history = tributary.getConsumer("c1").getConsumedEvents();
+        assertEquals(1, history.size());
+        assertEquals("e9", history.get(0).getId());
+    }
+
+    @Test
+    public void delayedProduceTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        long now = System.currentTimeMillis();
+        // far enough out that the background clock cannot reach them during the test
+        tributary.produceAt("prod1", "t1", new Event<String>("late", "string", "p1", "v"), now + 600_000);
+        tributary.produceAt("prod1", "t1", new Event<String>("early", "string", "p1", "v"), now + 60_000);
+        tributary.produceAt("prod1", "t1", new Event<String>("due", "string", "p1", "v"), now - 1);
+
+        Partition p1 = tributary.getPartition("t1", "p1");
+        assertEquals(1, p1.getSize());
+        assertEquals(2, tributary.getPendingDelayed());
+
+        assertEquals(0, tributary.advanceClock(now + 59_000));
+        assertEquals(1, tributary.advanceClock(now + 60_000));
+        assertEquals("early", p1.getEvent(1).getId());
+        assertEquals(1, tributary.advanceClock(now + 600_000));
+        assertEquals("late", p1.getEvent(2).getId());
+        assertEquals(0, tributary.getPendingDelayed());
+        tributary.close();
+    }
+
+    @Test
+    public void timingWheelTest() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(1, 8, 0);
+        for (int i = 1; i <= 1000; i++) {
+            wheel.schedule(i * 7, i);
+        }
+        List<Integer> expired = new ArrayList<>();
+        for (long now = 0; now <= 7000; now += 13) {
+            for (int item : wheel.advanceClock(now)) {
+                // an item never expires before its tick
+                assertTrue(item * 7 <= now);
+                expired.add(item);
+            }
+        }
+        expired.addAll(wheel.advanceClock(7000));
+        assertEquals(1000, expired.size());
+        assertEquals(0, wheel.getPending());
+        assertEquals(Long.MAX_VALUE, wheel.nextExpiry());
+
+        // a far deadline is reached in a few jumps, each no later than the deadline itself
+        wheel.schedule(9000, 1);
+        long next = wheel.nextExpiry();
+        assertTrue(next > 7000 && next <= 9000);
+        assertTrue(wheel.advanceClock(8999).isEmpty());
+        assertEquals(List.of(1), wheel.advanceClock(9000));
+    }
+
+    @Test
+    public void schemaTopicTest() throws IOException {
+        Tributary tributary = new Tributary();
+        Map<String, FieldType> fields = new LinkedHashMap<>();
+        fields.put("user", FieldType.STRING);
+        fields.put("amount", FieldType.DOUBLE);
+        fields.put("count", FieldType.INTEGER);
+        Schema order = tributary.registerSchema("order", fields);
+        tributary.createTopic("orders", "order");
+        tributary.createPartition("p1", "orders");
+        tributary.createProducer("prod1", "order", new ManualMessage());
+        tributary.createProducer("prod2", "string", new ManualMessage());
+        tributary.createConsumerGroup("g1", "orders", new RangeStrategy());
+        tributary.createConsumer("c1", "g1");
+        tributary.setTopicCompression("orders", new DeflateCodec(), 2);
+
+        assertThrows(IllegalArgumentException.class, () -> order.record("alice", 3, 1));
+        for (int i = 0; i < 5; i++) {
+            tributary.produceEvent("prod1", "orders",
+                    new Event<RecordValue>("o" + i, "order", "p1", order.record("user" + i, i * 1.5, null)));
+        }
+        tributary.produceEvent("prod2", "orders", new Event<String>("bad", "string", "p1", "x"));
+        Partition p1 = tributary.getPartition("orders", "p1");
+        assertEquals(5, p1.getSize());
+
+        // records survive the binary codec in compressed batches and snapshots
+        RecordValue third = (RecordValue) p1.getEvent(3).getValue();
+        assertEquals("user3", third.get("user"));
+        assertEquals(4.5, (Double) third.get("amount"), 0.0);
+        assertNull(third.get("count"));
+
+        Path dir = Files.createTempDirectory("tributary-schema");
+        tributary.saveSnapshot(dir);
+        Tributary restored = Tributary.restoreSnapshot(dir);
+        assertEquals(order.getId(), restored.getSchema("order").getId());
+        assertEquals(third, restored.getPartition("orders", "p1").getEvent(3).getValue());
+
+        // registries are per instance: one that never registered the schema cannot decode its records
+        assertNull(new SchemaRegistry().lookup(order.getId()));
+    }
+
+    @Test
+    public void tokenBucketTest() {
+        TokenBucket bucket = new TokenBucket(10, 10);
+        assertEquals(0, bucket.acquire(10));
+        // the bucket is empty, so 5 more tokens are half a second of debt
+        long throttle = bucket.acquire(5);
+        assertTrue(throttle > 400_000_000L && throttle <= 500_000_000L);
+    }
+
+    @Test
+    public void quotaTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setProducerQuota("prod1", 1000, 0);
+        tributary.setGroupQuota("g1", 100, 0);
+
+        long start = System.nanoTime();
+        List<Event<?>> batch = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            batch.add(new Event<String>("e" + i, "string", "p1", "v"));
+        }
+        tributary.produceEvents("prod1", "t1", batch);
+        tributary.produceEvent("prod1", "t1", new Event<String>("last", "string", "p1", "v"));
+        // everything gets through, the 101 events over the burst cost about 100 ms
+        assertEquals(1101, tributary.getPartition("t1", "p1").getSize());
+        assertTrue(System.nanoTime() - start >= 90_000_000L);
+        assertTrue(tributary.getProducerThrottleTime("prod1") >= 90);
+        assertEquals(0, tributary.getProducerThrottleTime("missing"));
+
+        // the group's first fetch fits its burst, the next one waits
+        tributary.consumeEvents("c1", "p1", 100);
+        assertEquals(0, tributary.getGroupThrottleTime("g1"));
+        tributary.consumeEvents("c1", "p1", 50);
+        assertTrue(tributary.getGroupThrottleTime("g1") >= 200);
+    }
+
+    @Test
+    public void latencyHistogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        // within the 1/32 bucket precision
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 32.0);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 32.0);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.add(histogram);
+        merged.record(5);
+        assertEquals(1001, merged.getCount());
+        assertEquals(5, merged.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void spscQueueTest() {
+        SpscQueue<Integer> queue = new SpscQueue<>(3);
+        assertEquals(4, queue.getCapacity());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(4));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i, (int) queue.poll());
+            }
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    public void eventLoopTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.enableEventLoops(2);
+
+        List<CompletableFuture<Boolean>> appends = new CopyOnWriteArrayList<>();
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String partition = "p" + (t + 1);
+            Thread sender = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    appends.add(tributary.submitEvent("prod1", "t1",
+                            new Event<String>(partition + "-" + i, "string", partition, "v")));
+                }
+            });
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (CompletableFuture<Boolean> append : appends) {
+            assertTrue(append.join());
+        }
+        for (int p = 1; p <= 4; p++) {
+            assertEquals(500, tributary.getPartition("t1", "p" + p).getSize());
+        }
+
+        List<Event<?>> polled = tributary.pollEvents("c1", "p2", 300);
+        assertEquals(300, polled.size());
+        assertEquals("p2-299", polled.get(299).getId());
+        assertEquals(300, tributary.getPartition("t1", "p2").getCurrentIndex("g1"));
+    }
+
+    @Test
+    public void idempotentEventLoopTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.createProducer("idem", "string", new ManualMessage(), true);
+        tributary.enableEventLoops(1);
+
+        // sequences are stamped on the owning loop, so appends from several threads never look like duplicates
+        List<CompletableFuture<Boolean>> appends = new CopyOnWriteArrayList<>();
+        List<Thread> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int sender = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    appends.add(tributary.submitEvent("idem", "t1",
+                            new Event<String>(sender + "-" + i, "string", "p1", "v")));
+                }
+            });
+            senders.add(thread);
+            thread.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (CompletableFuture<Boolean> append : appends) {
+            assertTrue(append.join());
+        }
+        assertEquals(8000, tributary.getPartition("t1", "p1").getSize());
+
+        // replacing the loops still runs everything queued on the old ones
+        List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            pending.add(tributary.submitEvent("idem", "t1", new Event<String>("late-" + i, "string", "p2", "v")));
+        }
+        tributary.enableEventLoops(2);
+        for (CompletableFuture<Boolean> append : pending) {
+            assertTrue(append.join());
+        }
+        assertEquals(500, tributary.getPartition("t1", "p2").getSize());
+    }
+
+    @Test
+    public void ingestRingTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.enableIngestRing(64, WaitStrategy.YIELD);
+
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String partition = "p" + (t + 1);
+            Thread publisher = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    tributary.publishEvent("prod1", "t1", new Event<String>(partition + "-" + i, "string", partition,
+                            "v"));
+                }
+            });
+            publishers.add(publisher);
+            publisher.start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        tributary.flushIngest();
+
+        // the ring wrapped many times; every event landed once and in publish order
+        for (int p = 1; p <= 4; p++) {
+            Partition partition = tributary.getPartition("t1", "p" + p);
+            assertEquals(1000, partition.getSize());
+            for (int i = 0; i < 1000; i += 111) {
+                assertEquals("p" + p + "-" + i, partition.getEvent(i).getId());
+            }
+        }
+
+        // a missing producer id is refused up front and cannot stall the ingest thread
+        assertEquals(-1, tributary.publishEvent(null, "t1", new Event<String>("bad", "string", "p1", "v")));
+        tributary.publishEvent("prod1", "t1", new Event<String>("after", "string", "p1", "v"));
+        tributary.flushIngest();
+        assertEquals("after", tributary.getPartition("t1", "p1").getEvent(1000).getId());
+        tributary.close();
+    }
+
+    @Test
+    public void sessionTimeoutTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.createConsumer("c2", "g1");
+        assertEquals(tributary.heartbeat("c1"), tributary.heartbeat("c2"));
+        assertTrue(tributary.heartbeat("c2") > 0);
+        tributary.setSessionTimeout("g1", 100);
+        int generation = tributary.heartbeat("c1");
+        assertTrue(generation > 0);
+
+        // c1 keeps heartbeating, c2 goes quiet and is expired by the coordinator, which starts a new generation
+        long deadline = System.currentTimeMillis() + 3000;
+        while (tributary.heartbeat("c1") == generation && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(tributary.heartbeat("c1") > generation);
+        assertNull(tributary.getConsumer("c2"));
+        assertEquals(-1, tributary.heartbeat("c2"));
+        assertEquals(4, tributary.getConsumer("c1").getPartitions().size());
+        assertTrue(outContent.toString().contains("Consumer c2 session expired in group g1"));
+
+        // the expiry rebalanced the group, so fetches under the old generation are fenced
+        tributary.produceEvent("prod1", "t1", new Event<String>("e1", "string", "p1", "v"));
+        assertTrue(tributary.fetchEvents("c1", "p1", 10, generation).isEmpty());
+        assertTrue(errContent.toString().contains("Fetch by c1 fenced"));
+        int current = tributary.heartbeat("c1");
+        assertTrue(current > generation);
+        assertEquals(1, tributary.fetchEvents("c1", "p1", 10, current).size());
+
+        tributary.deleteConsumer("g2", "c1");
+        assertTrue(errContent.toString().contains("Consumer group g2 does not exist"));
+        assertEquals(current, tributary.heartbeat("c1"));
+    }
+
+    @Test
+    public void materializedViewTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.createProducer("kh", "string", new KeyHashMessage());
+        tributary.produceEvent("kh", "t1", new Event<String>("a1", "string", "a", "1"));
+        tributary.produceEvent("kh", "t1", new Event<String>("b1", "string", "b", "1"));
+        tributary.produceEvent("kh", "t1", new Event<String>("a2", "string", "a", "2"));
+
+        // built from what the topic already holds
+        MaterializedView view = tributary.materializeTopic("t1");
+        assertEquals(2, view.size());
+        assertEquals("a2", tributary.lookupKey("t1", "a").getId());
+        assertNull(tributary.lookupKey("t1", "c"));
+
+        List<String> changes = new ArrayList<>();
+        view.subscribe((key, previous, current) -> changes.add(key + ":" + (previous == null ? "-"
+                : previous.getEvent().getId()) + "->" + current.getEvent().getId()));
+        tributary.produceEvent("kh", "t1", new Event<String>("c1", "string", "c", "1"));
+        tributary.produceEvent("kh", "t1", new Event<String>("b2", "string", "b", "2"));
+        assertEquals(List.of("c:-->c1", "b:b1->b2"), changes);
+
+        MaterializedView.Entry entry = view.get("b");
+        assertEquals("b2", entry.getEvent().getId());
+        assertEquals(entry.getPartitionId(), tributary.getTopic("t1").getPartitionForKey("b").getId());
+        List<String> ids = new ArrayList<>();
+        for (Event<?> e : tributary.scanKeys("t1", "a", "c")) {
+            ids.add(e.getId());
+        }
+        assertEquals(List.of("a2", "b2"), ids);
+    }
+
+    @Test
+    public void asyncApiTest() {
+        Tributary tributary = new Tributary();
+        try (TributaryAsync async = new TributaryAsync(tributary, 4)) {
+            async.createTopic("t1", "string").join();
+            CompletableFuture.allOf(async.createPartition("p1", "t1"), async.createPartition("p2", "t1"),
+                    async.createProducer("prod1", "string", new ManualMessage())).join();
+            async.createConsumerGroup("g1", "t1", new RangeStrategy()).join();
+            async.createConsumer("c1", "g1").join();
+            assertEquals(TributaryException.Reason.ALREADY_EXISTS, reasonOf(async.createTopic("t1", "string")));
+            assertEquals(TributaryException.Reason.INVALID_TYPE, reasonOf(async.createTopic("t2", "float")));
+
+            // many sends outstanding at once, all on the facade's four threads
+            List<CompletableFuture<Void>> sends = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                sends.add(async.produce("prod1", "t1", new Event<String>("e" + i, "string", "p1", "v")));
+            }
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).join();
+            Partition p1 = tributary.getPartition("t1", "p1");
+            assertEquals(1000, p1.getSize());
+            // pipelined sends from one producer are appended in call order
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("e" + i, p1.getEvent(i).getId());
+            }
+            assertEquals(TributaryException.Reason.UNKNOWN_PRODUCER,
+                    reasonOf(async.produce("missing", "t1", new Event<String>("x", "string", "p1", "v"))));
+            assertEquals(TributaryException.Reason.REJECTED,
+                    reasonOf(async.produce("prod1", "t1", new Event<String>("x", "string", "p9", "v"))));
+
+            assertEquals(10, async.poll("c1", "p1", 10).join().size());
+            async.commit("c1", "p1", 990).join();
+            List<Event<?>> consumed = async.consume("c1", "p1", 100).join();
+            assertEquals(10, consumed.size());
+            assertEquals("e990", consumed.get(0).getId());
+            assertEquals(TributaryException.Reason.UNKNOWN_PARTITION, reasonOf(async.poll("c1", "p7", 1)));
+            assertEquals(TributaryException.Reason.UNKNOWN_CONSUMER, reasonOf(async.consume("c9", "p1", 1)));
+        }
+    }
+
+    private static TributaryException.Reason reasonOf(CompletableFuture<?> future) {
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        return ((TributaryException) e.getCause()).getReason();
+    }
+
+    @Test
+    public void latencyTracingTest() {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setTopicCompression("t1", new DeflateCodec(), 4);
+        tributary.setTraceSampling("prod1", 1.0);
+        for (int i = 0; i < 10; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("e" + i, "string", "p1", "v" + i));
+        }
+        assertEquals(10, tributary.getTopicLatency("t1").getProduceToAppend().getCount());
+
+        // timestamps and trace ids survive the trip through a compressed batch
+        Header header = tributary.getPartition("t1", "p1").getEvent(0).getHeaders();
+        assertTrue(header.getAppendedAt() >= header.getProducedAt());
+        assertTrue(header.getTraceId() != 0);
+        assertEquals(LocalDate.now(), header.getDate());
+
+        tributary.consumeEvents("c1", "p1", 10);
+        LatencyStats group = tributary.getGroupLatency("g1");
+        assertEquals(10, group.getAppendToConsume().getCount());
+        assertEquals(10, group.getEndToEnd().getCount());
+        assertTrue(group.getEndToEnd().getMax() >= group.getAppendToConsume().getMax());
+        assertTrue(outContent.toString().contains("Trace " + Long.toHexString(header.getTraceId()) + " event e0"));
+        assertTrue(group.toString().contains("end-to-end: count 10"));
+        assertNull(tributary.getGroupLatency("missing"));
+    }
+
+    @Test
+    public void memoryBudgetSpillTest(@TempDir Path dir) throws IOException, InterruptedException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        tributary.setMemoryBudget(20_000, dir, 10);
+        for (int i = 0; i < 1000; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("e" + i, "string", i % 2 == 0 ? "p1" : "p2",
+                    "val" + i));
+        }
+
+        // the background spiller brings usage back under budget, keeping each partition's hot tail
+        long deadline = System.currentTimeMillis() + 3000;
+        while (tributary.getHeapBytes() > 20_000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(tributary.getHeapBytes() <= 20_000);
+        assertTrue(tributary.getSpilledBytes() > 0);
+        assertTrue(Files.list(dir.resolve("t1").resolve("p1")).findAny().isPresent());
+        Partition p1 = tributary.getPartition("t1", "p1");
+        assertEquals(500, p1.getSize());
+        assertTrue(p1.getPendingCount() >= 10);
+
+        // spilled events are read back from disk in order
+        List<Event<?>> read = tributary.consumeEvents("c1", "p1", 300, EventFilter.ALL);
+        assertEquals(300, read.size());
+        assertEquals("e0", read.get(0).getId());
+        assertEquals("e598", read.get(299).getId());
+        tributary.playback("c1", "p1", 100);
+        assertEquals("e200", p1.getEvent(100).getId());
+        assertEquals("e998", p1.getEvent(499).getId());
+        tributary.close();
+    }
+
+    @Test
+    public void discardedSpillTest(@TempDir Path dir) throws IOException {
+        Tributary tributary = new Tributary();
+        initialise(tributary);
+        Partition p1 = tributary.getPartition("t1", "p1");
+        for (int i = 0; i < 20; i++) {
+            tributary.produceEvent("prod1", "t1", new Event<String>("e" + i, "string", "p1", "val" + i));
+        }
+
+        // the tail is sealed while the spill writes, so its segment is discarded and its file must go too
+        TieredStorage store = new TieredStorage(dir, 0, 1) {
+            @Override
+            public BatchSource archive(String partitionId, EventBatch batch) throws IOException {
+                p1.setCompression(new NoCompression(), 1);
+                return super.archive(partitionId, batch);
+            }
+        };
+        assertEquals(0, p1.spill(store, "p1", 5));
+        try (Stream<Path> files = Files.list(dir.resolve("p1"))) {
+            assertEquals(0, files.count());
+        }
+        assertEquals(20, p1.getSize());
+        assertEquals("e0", p1.getEvent(0).getId());
+    }
+
+    @Test
+    public void bulkReplayTest() {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("bulk", "string");
+        tributary.createPartition("b0", "bulk");
+        tributary.setTopicCompression("bulk", new DeflateCodec(), 64);
+        tributary.createProducer("kh", "string", new KeyHashMessage());
+        tributary.createConsumerGroup("g2", "bulk", new RangeStrategy());
+        tributary.createConsumer("c2", "g2");
+        for (int i = 0; i < 10_000; i++) {
+            tributary.produceEvent("kh", "bulk", new Event<String>("e" + i, "string", "k" + i % 16, "" + i));
+        }
+        tributary.pollEvents("c2", "b0", 5);
+        Partition b0 = tributary.getPartition("bulk", "b0");
+
+        // a range starting inside a sealed segment and running into the unsealed tail, which starts at 9984
+        AtomicLong seen = new AtomicLong();
+        assertEquals(9890, tributary.bulkReplay("c2", "b0", 100, 9990, (c, p, e) -> seen.incrementAndGet(), false));
+        assertEquals(9890, seen.get());
+
+        Map<String, List<Integer>> byKey = new ConcurrentHashMap<>();
+        assertEquals(10_000, tributary.bulkReplay("c2", "b0", 0, 20_000, (c, p, e) -> byKey
+                .computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(Integer.parseInt((String) e.getValue())),
+                true));
+        assertEquals(16, byKey.size());
+        for (List<Integer> values : byKey.values()) {
+            assertEquals(625, values.size());
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue(values.get(i - 1) < values.get(i));
+            }
+        }
+        assertEquals(5, b0.getCurrentIndex("g2"));
+    }
+
+    @Test
+    public void mergedReadTest() {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("m", "string");
+        for (int i = 0; i < 3; i++) {
+            tributary.createPartition("m" + i, "m");
+        }
+        tributary.createProducer("manual", "string", new ManualMessage());
+        tributary.createConsumerGroup("gm", "m", new RangeStrategy());
+        // an hour's max delay, so an idle partition holds the merge back however slowly the test runs
+        tributary.enableMergedRead("gm", 4, 3_600_000);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            String partition = "m" + (i < 8 ? i % 3 : i % 2 * 2);
+            tributary.produceEvent("manual", "m", new Event<String>("e" + i, "string", partition, "v"));
+            expected.add("e" + i);
+        }
+
+        // m1 runs out first, holding later events back until its watermark passes them
+        List<String> merged = new ArrayList<>();
+        for (Event<?> e : tributary.pollMerged("gm", 100)) {
+            merged.add(e.getId());
+        }
+        assertTrue(merged.size() < 30);
+        MergedReader reader = tributary.getTopic("m").getConsumerGroups().get(0).getMergedReader();
+        assertTrue(reader.getBuffered() <= 3 * 4);
+
+        // with no delay allowed an idle partition's watermark is the current time, so the rest drains at once
+        tributary.enableMergedRead("gm", 4, 0);
+        reader = tributary.getTopic("m").getConsumerGroups().get(0).getMergedReader();
+        for (Event<?> e : tributary.pollMerged("gm", 100)) {
+            merged.add(e.getId());
+        }
+        assertEquals(expected, merged);
+        assertEquals(0, reader.getLateEvents());
+        for (Partition p : tributary.getTopic("m").getPartitions()) {
+            assertEquals(p.getSize(), p.getCurrentIndex("gm"));
+        }
+    }
+
+    @Test
+    public void keyOrderedProcessingTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("w", "string");
+        tributary.createPartition("w0", "w");
+        tributary.createProducer("kh", "string", new KeyHashMessage());
+        tributary.createConsumerGroup("gw", "w", new RangeStrategy());
+        tributary.createConsumer("cw", "gw");
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, List<Integer>> byKey = new ConcurrentHashMap<>();
+        tributary.setDeliveryHandler("cw", (c, p, e) -> {
+            int value = Integer.parseInt((String) e.getValue());
+            if (value == 5) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byKey.computeIfAbsent(e.getKey(), k -> new CopyOnWriteArrayList<>()).add(value);
+        });
+        tributary.setParallelProcessing("cw", 4, 10_000);
+        for (int i = 0; i < 2000; i++) {
+            tributary.produceEvent("kh", "w", new Event<String>("e" + i, "string", "k" + i % 8, "" + i));
+        }
+        assertEquals(2000, tributary.processEvents("cw", "w0", 5000));
+
+        // keys on other workers carry on past the stuck event, but the offset cannot. k1 shares k5's worker, so
+        // only its event 1 gets through there, and the other three workers finish all 500 of theirs.
+        KeyOrderedProcessor processor = tributary.getConsumer("cw").getProcessor("w0");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (processor.getProcessed() < 1501 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1501, processor.getProcessed());
+        assertEquals(5, processor.getCommitted());
+        assertEquals(5, tributary.getPartition("w", "w0").getCurrentIndex("gw"));
+
+        release.countDown();
+        assertTrue(processor.awaitIdle(5000));
+        assertEquals(2000, tributary.getPartition("w", "w0").getCurrentIndex("gw"));
+        assertEquals(8, byKey.size());
+        for (List<Integer> values : byKey.values()) {
+            assertEquals(250, values.size());
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue(values.get(i - 1) < values.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void keyOrderedRetryTest() throws InterruptedException {
+        Tributary tributary = new Tributary();
+        tributary.createTopic("w", "string");
+        tributary.createPartition("w0", "w");
+        tributary.createProducer("kh", "string", new KeyHashMessage());
+        tributary.createConsumerGroup("gw", "w", new RangeStrategy());
+        tributary.createConsumer("cw", "gw");
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, List<Integer>> byKey = new ConcurrentHashMap<>();
+        tributary.setDeliveryHandler("cw", (c, p, e) -> {
+            int value = Integer.parseInt((String) e.getValue());
+            if (value == 3 && attempts.incrementAndGet() <= 2) {
+                throw new IllegalStateException("transient");
+            }
+            if (value == 40) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byKey.computeIfAbsent(e.getKey(), k -> new CopyOnWriteArrayList<>()).add(value);
+        });
+        tributary.setParallelProcessing("cw", 2, 100);
+        for (int i = 0; i < 20; i++) {
+            tributary.produceEvent("kh", "w", new Event<String>("e" + i, "string", "k" + i % 2, "" + i));
+        }
+
+        // the failing event is retried in place, so its key stays in order and the offset still reaches the end
+        KeyOrderedProcessor processor = tributary.getConsumer("cw").getProcessor("w0");
+        assertEquals(20, processor.dispatch(100));
+        assertTrue(processor.awaitIdle(5000));
+        assertEquals(2, processor.getFailed());
+        assertEquals(20, processor.getCommitted());
+        assertEquals(List.of(1, 3, 5, 7, 9, 11, 13, 15, 17, 19), byKey.get("k1"));
+
+        // once closed, events still running or queued commit nothing
+        for (int i = 40; i < 44; i++) {
+            tributary.produceEvent("kh", "w", new Event<String>("e" + i, "string", "k0", "" + i));
+        }
+        assertEquals(4, processor.dispatch(100));
+        tributary.setParallelProcessing("cw", 0, 0);
+        release.countDown();
+        assertTrue(processor.awaitIdle(5000));
+        assertEquals(20, tributary.getPartition("w", "w0").getCurrentIndex("gw"));
+        assertEquals(0, processor.dispatch(100));
+    }
 }